@@ -0,0 +1,82 @@
+package com.sya.benchmark;
+
+import com.sya.code.CacheMessageListener;
+import com.sya.code.ClusterCache;
+import com.sya.code.ClusterCacheManager;
+import com.sya.code.InMemoryRedisConnectionFactory;
+import com.sya.config.ClusterCacheProperties;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 15:40
+ * @description：在一个jvm内模拟多个共用同一个内存版redis的缓存节点 第0个节点是被测节点
+ *               其余节点只用于接收变更通知 衡量通知扇出的开销
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class BenchmarkCluster {
+
+	private final InMemoryRedisConnectionFactory connectionFactory = new InMemoryRedisConnectionFactory();
+
+	private final List<ClusterCacheManager> managers = new ArrayList<>();
+
+	/**
+	 * @param nodes 节点数量 至少为1
+	 * @param customizer 在默认基准配置之上修改配置
+	 */
+	public BenchmarkCluster(int nodes, Consumer<ClusterCacheProperties> customizer) {
+		for (int i = 0; i < Math.max(nodes, 1); i++) {
+			ClusterCacheProperties properties = defaultProperties();
+			customizer.accept(properties);
+			RedisTemplate<String, Object> redisTemplate = connectionFactory.newRedisTemplate();
+			ClusterCacheManager manager = new ClusterCacheManager(properties, redisTemplate);
+			connectionFactory.addListener(new CacheMessageListener(redisTemplate, manager));
+			managers.add(manager);
+		}
+	}
+
+	public BenchmarkCluster(int nodes) {
+		this(nodes, properties -> { });
+	}
+
+	public ClusterCacheManager node(int index) {
+		return managers.get(index);
+	}
+
+	/**
+	 * 被测节点上的cache
+	 */
+	public ClusterCache cache(String name) {
+		return (ClusterCache) node(0).getCache(name);
+	}
+
+	public InMemoryRedisConnectionFactory getConnectionFactory() {
+		return connectionFactory;
+	}
+
+	public void shutdown() {
+		for (ClusterCacheManager manager : managers) {
+			manager.destroy();
+		}
+	}
+
+	/**
+	 * 基准测试的默认配置 1级缓存足够大且不过期 变更通知同步发送 使通知的开销计入被测方法
+	 */
+	private static ClusterCacheProperties defaultProperties() {
+		ClusterCacheProperties properties = new ClusterCacheProperties();
+		properties.setCachePrefix("bench");
+		properties.getRedis().setDefaultExpiration(600);
+		properties.getRedis().setPublishFlushInterval(0);
+		properties.getCacheDefault().setExpireAfterAccess(0);
+		properties.getCacheDefault().setExpireAfterWrite(600);
+		properties.getCacheDefault().setInitialCapacity(1024);
+		properties.getCacheDefault().setMaximumSize(100_000);
+		return properties;
+	}
+}
@@ -0,0 +1,62 @@
+package com.sya.benchmark;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 15:45
+ * @description：基准测试使用的缓存值 模拟业务中常见的带集合和日期的对象
+ * @modified By：
+ * @version: 1.0.0$
+ */
+@Data
+public class SamplePayload implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private Long id;
+
+	private String name;
+
+	private Date createTime;
+
+	private List<Item> items;
+
+	@Data
+	public static class Item implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private Long id;
+
+		private String title;
+
+		private Integer quantity;
+	}
+
+	/**
+	 * @param id 编号
+	 * @param itemCount 明细数量 用于调节对象大小
+	 */
+	public static SamplePayload of(long id, int itemCount) {
+		SamplePayload payload = new SamplePayload();
+		payload.setId(id);
+		payload.setName("payload-" + id);
+		payload.setCreateTime(new Date(1_600_000_000_000L + id));
+		List<Item> items = new ArrayList<>(itemCount);
+		for (int i = 0; i < itemCount; i++) {
+			Item item = new Item();
+			item.setId((long) i);
+			item.setTitle("item-" + i);
+			item.setQuantity(i % 10);
+			items.add(item);
+		}
+		payload.setItems(items);
+		return payload;
+	}
+}
@@ -0,0 +1,83 @@
+package com.sya.code;
+
+import com.sya.benchmark.BenchmarkCluster;
+import com.sya.benchmark.SamplePayload;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 16:00
+ * @description：并发下get(key, valueLoader)的基准测试 少量热点key被不断删除
+ *               读线程在同一个key上竞争加载 衡量单飞加载和等待的开销
+ * @modified By：
+ * @version: 1.0.0$
+ */
+@State(Scope.Group)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+
+	@Param({"16"})
+	private int keyCount;
+
+	/** valueLoader消耗的cpu，单位为Blackhole.consumeCPU的token*/
+	@Param({"10000"})
+	private long loadCost;
+
+	private BenchmarkCluster cluster;
+
+	private ClusterCache cache;
+
+	private Callable<SamplePayload> loader;
+
+	@Setup
+	public void setup() {
+		cluster = new BenchmarkCluster(1);
+		cache = cluster.cache("bench-load");
+		SamplePayload payload = SamplePayload.of(1, 10);
+		loader = () -> {
+			Blackhole.consumeCPU(loadCost);
+			return payload;
+		};
+	}
+
+	@TearDown
+	public void tearDown() {
+		cluster.shutdown();
+	}
+
+	@Benchmark
+	@Group("contended")
+	@GroupThreads(7)
+	public Object get() {
+		return cache.get(ThreadLocalRandom.current().nextInt(keyCount), loader);
+	}
+
+	@Benchmark
+	@Group("contended")
+	@GroupThreads(1)
+	public void evict() {
+		cache.evict(ThreadLocalRandom.current().nextInt(keyCount));
+	}
+}
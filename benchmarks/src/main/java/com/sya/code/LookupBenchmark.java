@@ -0,0 +1,166 @@
+package com.sya.code;
+
+import com.sya.benchmark.BenchmarkCluster;
+import com.sya.benchmark.SamplePayload;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 15:50
+ * @description：ClusterCache取值和key构造的基准测试 放在com.sya.code包下以便调用lookup和getKey
+ * @modified By：
+ * @version: 1.0.0$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupBenchmark {
+
+	@Param({"1024"})
+	private int keyCount;
+
+	@Param({"10"})
+	private int itemCount;
+
+	/** 开启热点key识别时每次访问多一次频率统计*/
+	@Param({"false", "true"})
+	private boolean hotKeyEnable;
+
+	private BenchmarkCluster cluster;
+
+	private ClusterCache cache;
+
+	private ClusterCache versionedCache;
+
+	private BenchmarkCluster offHeapCluster;
+
+	/** caffeine只保留1个key 其余的key只在堆外*/
+	private ClusterCache offHeapCache;
+
+	private Long[] keys;
+
+	private final StringRedisSerializer stringSerializer = new StringRedisSerializer();
+
+	@State(Scope.Thread)
+	public static class KeyCursor {
+
+		private int index;
+
+		Long next(Long[] keys) {
+			index = (index + 1) & (keys.length - 1);
+			return keys[index];
+		}
+	}
+
+	@Setup
+	public void setup() {
+		if (Integer.bitCount(keyCount) != 1) {
+			throw new IllegalArgumentException("keyCount必须是2的幂");
+		}
+		cluster = new BenchmarkCluster(1, properties -> properties.getHotKey().setEnable(hotKeyEnable));
+		cache = cluster.cache("bench-lookup");
+		keys = new Long[keyCount];
+		for (int i = 0; i < keyCount; i++) {
+			keys[i] = (long) i;
+			cache.put(keys[i], SamplePayload.of(i, itemCount));
+		}
+		BenchmarkCluster versioned = new BenchmarkCluster(1, properties -> properties.getRedis().setNamespaceVersionEnable(true));
+		versionedCache = versioned.cache("bench-versioned");
+		versioned.shutdown();
+		offHeapCluster = new BenchmarkCluster(1, properties -> {
+			properties.getOffHeap().setEnable(true);
+			properties.getCacheDefault().setMaximumSize(1);
+		});
+		offHeapCache = offHeapCluster.cache("bench-offheap");
+		for (int i = 0; i < keyCount; i++) {
+			offHeapCache.put(keys[i], SamplePayload.of(i, itemCount));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		cluster.shutdown();
+		offHeapCluster.shutdown();
+	}
+
+	/**
+	 * 1级缓存命中
+	 */
+	@Benchmark
+	public Object l1Hit(KeyCursor cursor) {
+		return cache.lookup(cursor.next(keys));
+	}
+
+	/**
+	 * 1级缓存未命中 从redis取值并反序列化后写回1级缓存 包含清除1级缓存的开销
+	 */
+	@Benchmark
+	public Object l1MissL2Hit(KeyCursor cursor) {
+		Long key = cursor.next(keys);
+		cache.clearLocal(key);
+		return cache.lookup(key);
+	}
+
+	/**
+	 * caffeine未命中 从堆外复制并反序列化后写回caffeine
+	 */
+	@Benchmark
+	public Object l1MissOffHeapHit(KeyCursor cursor) {
+		return offHeapCache.lookup(cursor.next(keys));
+	}
+
+	/**
+	 * redis key的构造
+	 */
+	@Benchmark
+	public String getKey(KeyCursor cursor) {
+		return cache.getKey(cursor.next(keys));
+	}
+
+	/**
+	 * 改为预先计算前缀字节之前的做法 拼接字符串后再序列化 作为对比基准
+	 */
+	@Benchmark
+	public byte[] serializedKey(KeyCursor cursor) {
+		return stringSerializer.serialize(cache.getKey(cursor.next(keys)));
+	}
+
+	/**
+	 * 直接编码为redis key的字节
+	 */
+	@Benchmark
+	public byte[] rawKey(KeyCursor cursor) {
+		return cache.rawKey(cursor.next(keys));
+	}
+
+	/**
+	 * 启用命名空间版本号时redis key的构造
+	 */
+	@Benchmark
+	public String getVersionedKey(KeyCursor cursor) {
+		return versionedCache.getKey(cursor.next(keys));
+	}
+
+	@Benchmark
+	public byte[] rawVersionedKey(KeyCursor cursor) {
+		return versionedCache.rawKey(cursor.next(keys));
+	}
+}
@@ -0,0 +1,85 @@
+package com.sya.code;
+
+import com.sya.config.ClusterCacheAutoConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 17:50
+ * @description：缓存变更通知编码的基准测试 二进制编码与之前带类名的jackson编码对比
+ *               使用 -prof gc 对比 gc.alloc.rate.norm
+ * @modified By：
+ * @version: 1.0.0$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageCodecBenchmark {
+
+	/** 一次通知包含的消息条数*/
+	@Param({"1", "100"})
+	private int messageCount;
+
+	private RedisSerializer<Object> jackson;
+
+	private CacheMessageCodec codec;
+
+	private String nodeId = "7c0e7e4b-5a41-4a0e-9a7e-3e4a1f0f6a2b";
+
+	private List<CacheMessage> messages;
+
+	private byte[] jacksonBytes;
+
+	private byte[] binaryBytes;
+
+	@Setup
+	public void setup() {
+		jackson = ClusterCacheAutoConfiguration.jackson2JsonRedisSerializer();
+		codec = new CacheMessageCodec(jackson);
+		messages = new ArrayList<>(messageCount);
+		for (int i = 0; i < messageCount; i++) {
+			messages.add(new CacheMessage("cache15m", "user:" + i));
+		}
+		jacksonBytes = jackson.serialize(new CacheMessageBatch(nodeId, messages));
+		binaryBytes = codec.encode(nodeId, messages);
+		System.out.printf("%n通知字节数 jackson:%d binary:%d%n", jacksonBytes.length, binaryBytes.length);
+	}
+
+	@Benchmark
+	public byte[] jacksonEncode() {
+		return jackson.serialize(new CacheMessageBatch(nodeId, messages));
+	}
+
+	@Benchmark
+	public Object jacksonDecode() {
+		return jackson.deserialize(jacksonBytes);
+	}
+
+	@Benchmark
+	public byte[] binaryEncode() {
+		return codec.encode(nodeId, messages);
+	}
+
+	@Benchmark
+	public Object binaryDecode() {
+		return codec.decode(binaryBytes, null);
+	}
+}
@@ -0,0 +1,75 @@
+package com.sya.code;
+
+import com.sya.benchmark.BenchmarkCluster;
+import com.sya.benchmark.SamplePayload;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 16:10
+ * @description：put的基准测试 变更通知同步投递给集群中的其他节点 衡量写入加通知扇出的开销
+ *               同一个jvm内的节点共用静态的cache注册表 其他节点清除的是同一个1级缓存 只计入开销不影响结果
+ * @modified By：
+ * @version: 1.0.0$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PutBenchmark {
+
+	/** 集群节点数量 包含被测节点*/
+	@Param({"1", "4"})
+	private int nodes;
+
+	@Param({"1024"})
+	private int keyCount;
+
+	private BenchmarkCluster cluster;
+
+	private ClusterCache cache;
+
+	private SamplePayload payload;
+
+	@State(Scope.Thread)
+	public static class KeyCursor {
+
+		private long index;
+
+		long next(int keyCount) {
+			return index++ % keyCount;
+		}
+	}
+
+	@Setup
+	public void setup() {
+		cluster = new BenchmarkCluster(nodes);
+		cache = cluster.cache("bench-put");
+		payload = SamplePayload.of(1, 10);
+	}
+
+	@TearDown
+	public void tearDown() {
+		cluster.shutdown();
+	}
+
+	@Benchmark
+	public void put(KeyCursor cursor) {
+		cache.put(cursor.next(keyCount), payload);
+	}
+}
@@ -0,0 +1,139 @@
+package com.sya.config;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.parser.Feature;
+import com.sya.benchmark.SamplePayload;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 16:20
+ * @description：缓存值序列化方式的基准测试 Jackson2JsonRedisSerializer、FastJsonRedisSerializer
+ *               与CodecRedisSerializer（kryo编码，超过阈值时LZ4压缩）对比
+ * @modified By：
+ * @version: 1.0.0$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializerBenchmark {
+
+	/** 缓存值的明细数量 用于调节对象大小*/
+	@Param({"1", "100"})
+	private int itemCount;
+
+	private RedisSerializer<Object> jackson;
+
+	private RedisSerializer<Object> fastJson;
+
+	private RedisSerializer<Object> kryo;
+
+	private RedisSerializer<Object> kryoLz4;
+
+	private SamplePayload payload;
+
+	private byte[] jacksonBytes;
+
+	private byte[] fastJsonBytes;
+
+	private byte[] kryoBytes;
+
+	private byte[] kryoLz4Bytes;
+
+	@Setup
+	public void setup() {
+		jackson = ClusterCacheAutoConfiguration.jackson2JsonRedisSerializer();
+		fastJson = new FastJsonRedisSerializer<>(Object.class);
+		payload = SamplePayload.of(1, itemCount);
+		jacksonBytes = jackson.serialize(payload);
+		fastJsonBytes = fastJson.serialize(payload);
+		JacksonValueCodec legacyCodec = new JacksonValueCodec(ClusterCacheAutoConfiguration.cacheObjectMapper());
+		KryoValueCodec kryoCodec = new KryoValueCodec(Arrays.asList(SamplePayload.class.getName(), SamplePayload.Item.class.getName()));
+		kryo = new CodecRedisSerializer(kryoCodec, Collections.emptyList(), legacyCodec, 0);
+		kryoLz4 = new CodecRedisSerializer(kryoCodec, Collections.emptyList(), legacyCodec, 256);
+		kryoBytes = kryo.serialize(payload);
+		kryoLz4Bytes = kryoLz4.serialize(payload);
+		if (!payload.equals(kryo.deserialize(kryoBytes)) || !payload.equals(kryoLz4.deserialize(kryoLz4Bytes))) {
+			throw new IllegalStateException("kryo编码结果不一致");
+		}
+		System.out.printf("%n编码后字节数 jackson:%d fastjson:%d kryo:%d kryo+lz4:%d%n",
+				jacksonBytes.length, fastJsonBytes.length, kryoBytes.length, kryoLz4Bytes.length);
+	}
+
+	@Benchmark
+	public byte[] jacksonSerialize() {
+		return jackson.serialize(payload);
+	}
+
+	@Benchmark
+	public Object jacksonDeserialize() {
+		return jackson.deserialize(jacksonBytes);
+	}
+
+	@Benchmark
+	public Object jacksonRoundTrip() {
+		return jackson.deserialize(jackson.serialize(payload));
+	}
+
+	@Benchmark
+	public byte[] fastJsonSerialize() {
+		return fastJson.serialize(payload);
+	}
+
+	@Benchmark
+	public Object fastJsonDeserialize() {
+		return fastJson.deserialize(fastJsonBytes);
+	}
+
+	/**
+	 * 改为直接解析字节之前的实现 先转换为String再解析 作为对比基准
+	 */
+	@Benchmark
+	public Object fastJsonStringDeserialize() {
+		return JSON.parseObject(new String(fastJsonBytes, StandardCharsets.UTF_8), Object.class, Feature.IgnoreAutoType);
+	}
+
+	@Benchmark
+	public Object fastJsonRoundTrip() {
+		return fastJson.deserialize(fastJson.serialize(payload));
+	}
+
+	@Benchmark
+	public byte[] kryoSerialize() {
+		return kryo.serialize(payload);
+	}
+
+	@Benchmark
+	public Object kryoDeserialize() {
+		return kryo.deserialize(kryoBytes);
+	}
+
+	@Benchmark
+	public Object kryoRoundTrip() {
+		return kryo.deserialize(kryo.serialize(payload));
+	}
+
+	@Benchmark
+	public Object kryoLz4RoundTrip() {
+		return kryoLz4.deserialize(kryoLz4.serialize(payload));
+	}
+}
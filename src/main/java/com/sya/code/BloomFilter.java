@@ -0,0 +1,117 @@
+package com.sya.code;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 21:40
+ * @description：并发的布隆过滤器 位数组使用AtomicLongArray CAS置位 不需要加锁
+ *               key按字符串形式计算哈希 与redis key中的key部分一致 可以通过SCAN重建
+ *               大小在创建时按预计元素个数和误判率确定 之后不再增长
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class BloomFilter {
+
+	private final AtomicLongArray bits;
+
+	private final long bitCount;
+
+	private final int hashCount;
+
+	/** 已经置为1的位数 用于估算当前的误判率*/
+	private final LongAdder bitsSet = new LongAdder();
+
+	/**
+	 * @param expectedInsertions 预计元素个数
+	 * @param fpp 元素个数达到预计值时的误判率
+	 */
+	public BloomFilter(long expectedInsertions, double fpp) {
+		long n = Math.max(1, expectedInsertions);
+		double p = Math.min(Math.max(fpp, 1e-9), 0.5);
+		long bits = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+		int words = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + 63) >>> 6));
+		this.bits = new AtomicLongArray(words);
+		this.bitCount = (long) words << 6;
+		this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+	}
+
+	public void put(Object key) {
+		long hash = hash(String.valueOf(key));
+		long h1 = hash;
+		long h2 = mix(hash ^ 0x9E3779B97F4A7C15L);
+		for (int i = 0; i < hashCount; i++) {
+			long index = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+			if (set(index)) {
+				bitsSet.increment();
+			}
+		}
+	}
+
+	public boolean mightContain(Object key) {
+		long hash = hash(String.valueOf(key));
+		long h1 = hash;
+		long h2 = mix(hash ^ 0x9E3779B97F4A7C15L);
+		for (int i = 0; i < hashCount; i++) {
+			long index = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+			if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 按已经置位的比例估算的当前误判率
+	 */
+	public double expectedFpp() {
+		return Math.pow((double) bitsSet.sum() / bitCount, hashCount);
+	}
+
+	/**
+	 * 按已经置位的比例估算的元素个数
+	 */
+	public long approximateElementCount() {
+		double fraction = (double) bitsSet.sum() / bitCount;
+		return Math.round(-Math.log1p(-Math.min(fraction, 0.999999)) * bitCount / hashCount);
+	}
+
+	public long getBitCount() {
+		return bitCount;
+	}
+
+	public int getHashCount() {
+		return hashCount;
+	}
+
+	/**
+	 * @return 该位原来是0
+	 */
+	private boolean set(long index) {
+		int word = (int) (index >>> 6);
+		long mask = 1L << index;
+		long current;
+		do {
+			current = bits.get(word);
+			if ((current & mask) != 0) {
+				return false;
+			}
+		} while (!bits.compareAndSet(word, current, current | mask));
+		return true;
+	}
+
+	private static long hash(String value) {
+		long hash = 0xCBF29CE484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			hash = (hash ^ value.charAt(i)) * 0x100000001B3L;
+		}
+		return mix(hash);
+	}
+
+	private static long mix(long hash) {
+		hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+		hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return hash ^ (hash >>> 33);
+	}
+}
@@ -0,0 +1,174 @@
+package com.sya.code;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 21:50
+ * @description：一个ClusterCache中可能存在的key 用于在访问redis之前排除一定不存在的key
+ *               写入和收到变更通知时加入 删除时不移除（只会多出误判 不会漏掉存在的key）
+ *               通过SCAN重建：重建期间的写入同时加入新旧两个过滤器 完成后替换 重建同时清掉已经删除的key
+ *               第一次重建完成之前不排除任何key 可能丢失了变更通知时暂停 之后开始的重建完成后才恢复
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class CacheBloomFilter {
+
+	private final long expectedInsertions;
+
+	private final double fpp;
+
+	private volatile BloomFilter filter;
+
+	/** 正在重建的过滤器 没有重建时为null*/
+	private volatile BloomFilter rebuilding;
+
+	/** 第一次重建完成之前过滤器不完整*/
+	private volatile boolean ready;
+
+	private final AtomicBoolean rebuildRunning = new AtomicBoolean();
+
+	private volatile long lastRebuildTime;
+
+	/** 每次暂停加1 重建开始前的暂停不能由这次重建恢复*/
+	private final AtomicLong epoch = new AtomicLong();
+
+	/** 正在进行的重建开始时的epoch*/
+	private volatile long rebuildEpoch;
+
+	/** 已经释放 不再重建和排除key*/
+	private volatile boolean released;
+
+	/** 过滤器判断不存在 没有访问redis的次数*/
+	private final LongAdder shortCircuitCount = new LongAdder();
+
+	/** 过滤器判断可能存在的次数*/
+	private final LongAdder positiveCount = new LongAdder();
+
+	/** 过滤器判断可能存在但是redis中没有的次数*/
+	private final LongAdder falsePositiveCount = new LongAdder();
+
+	public CacheBloomFilter(long expectedInsertions, double fpp) {
+		this.expectedInsertions = expectedInsertions;
+		this.fpp = fpp;
+		this.filter = new BloomFilter(expectedInsertions, fpp);
+	}
+
+	public void put(Object key) {
+		filter.put(key);
+		BloomFilter next = rebuilding;
+		if (next != null) {
+			next.put(key);
+		}
+	}
+
+	/**
+	 * @return false表示一定不存在
+	 */
+	public boolean mightContain(Object key) {
+		if (!ready) {
+			return true;
+		}
+		if (filter.mightContain(key)) {
+			positiveCount.increment();
+			return true;
+		}
+		shortCircuitCount.increment();
+		return false;
+	}
+
+	/**
+	 * 过滤器判断可能存在 但是redis中没有
+	 */
+	public void recordFalsePositive() {
+		if (ready) {
+			falsePositiveCount.increment();
+		}
+	}
+
+	/**
+	 * 估算的误判率超过配置的2倍 并且距离上次重建超过minInterval
+	 * @param minInterval 两次重建的最小间隔 单位毫秒
+	 */
+	public boolean needsRebuild(long now, long minInterval) {
+		return ready && !rebuildRunning.get() && now - lastRebuildTime >= minInterval && filter.expectedFpp() > fpp * 2;
+	}
+
+	/**
+	 * 可能漏掉了其他节点写入的key 在之后开始的重建完成之前不排除任何key
+	 */
+	public void suspend() {
+		epoch.incrementAndGet();
+		ready = false;
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * @return 已经在重建时返回false
+	 */
+	public boolean startRebuild() {
+		if (released || !rebuildRunning.compareAndSet(false, true)) {
+			return false;
+		}
+		rebuildEpoch = epoch.get();
+		rebuilding = new BloomFilter(expectedInsertions, fpp);
+		return true;
+	}
+
+	/**
+	 * 重建时加入SCAN到的key
+	 */
+	public void putRebuilt(Object key) {
+		rebuilding.put(key);
+	}
+
+	/**
+	 * @param success 失败时继续使用原来的过滤器
+	 */
+	public void finishRebuild(boolean success) {
+		if (success && !released) {
+			filter = rebuilding;
+			// 重建期间暂停过 SCAN可能漏掉了暂停前后的写入 需要再重建一次
+			ready = rebuildEpoch == epoch.get();
+		}
+		rebuilding = null;
+		lastRebuildTime = System.currentTimeMillis();
+		rebuildRunning.set(false);
+	}
+
+	/**
+	 * cache实例被淘汰时释放过滤器占用的内存 之后不再排除任何key 也不再重建
+	 */
+	public void release() {
+		released = true;
+		suspend();
+		filter = new BloomFilter(1, fpp);
+	}
+
+	/**
+	 * 统计信息 observedFpp为判断可能存在的key中redis没有的比例 包括已经删除的key
+	 */
+	public Map<String, Object> getStats() {
+		BloomFilter current = filter;
+		long positives = positiveCount.sum();
+		long falsePositives = falsePositiveCount.sum();
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("ready", ready);
+		stats.put("bitCount", current.getBitCount());
+		stats.put("hashCount", current.getHashCount());
+		stats.put("approximateElementCount", current.approximateElementCount());
+		stats.put("expectedFpp", current.expectedFpp());
+		stats.put("observedFpp", positives == 0 ? 0D : (double) falsePositives / positives);
+		stats.put("shortCircuitCount", shortCircuitCount.sum());
+		stats.put("positiveCount", positives);
+		stats.put("falsePositiveCount", falsePositives);
+		return stats;
+	}
+}
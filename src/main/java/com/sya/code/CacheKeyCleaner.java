@@ -0,0 +1,169 @@
+package com.sya.code;
+
+import com.sya.config.ClusterCacheProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ *
+ * 按匹配模式删除redis中的缓存数据
+ * 使用SCAN游标分批遍历代替KEYS，每批使用UNLINK删除（redis4以下退化为DEL），不会长时间阻塞redis
+ * redis集群中SCAN只能在单个节点上执行，依次遍历每个主节点，前缀带有hash tag时只遍历该slot所在的节点
+ * 删除交给{@link RedisBatchExecutor} 按slot分组后在各节点上并行执行
+ *
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 11:05
+ * @description：redis缓存数据批量清理
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class CacheKeyCleaner {
+
+	private final Logger logger = LoggerFactory.getLogger(CacheKeyCleaner.class);
+
+	private RedisTemplate<String, Object> redisTemplate;
+
+	private RedisBatchExecutor batchExecutor;
+
+	/**
+	 * 执行删除的线程池 删除不在调用线程上执行
+	 */
+	private Executor executor;
+
+	/**
+	 * 每次SCAN的COUNT
+	 */
+	private int scanCount;
+
+	/**
+	 * 每次UNLINK的key个数
+	 */
+	private int deleteBatchSize;
+
+	public CacheKeyCleaner(RedisTemplate<String, Object> redisTemplate, RedisBatchExecutor batchExecutor,
+						   Executor executor, ClusterCacheProperties clusterCacheProperties) {
+		this.redisTemplate = redisTemplate;
+		this.batchExecutor = batchExecutor;
+		this.executor = executor;
+		this.scanCount = Math.max(1, clusterCacheProperties.getRedis().getScanCount());
+		this.deleteBatchSize = Math.max(1, clusterCacheProperties.getRedis().getDeleteBatchSize());
+	}
+
+	/**
+	 * 在后台线程删除以keyPrefix开头的所有key
+	 * @param keyPrefix redis key前缀 不需要转义
+	 * @return {@link CompletableFuture} 删除的key个数 线程池已满时以RejectedExecutionException异常完成
+	 */
+	public CompletableFuture<Long> deleteByPrefixAsync(String keyPrefix) {
+		try {
+			return CompletableFuture.supplyAsync(() -> deleteByPrefix(keyPrefix), executor);
+		} catch (RejectedExecutionException e) {
+			CompletableFuture<Long> future = new CompletableFuture<>();
+			future.completeExceptionally(e);
+			return future;
+		}
+	}
+
+	/**
+	 * 在当前线程删除以keyPrefix开头的所有key
+	 * @param keyPrefix redis key前缀 不需要转义
+	 * @return 删除的key个数
+	 */
+	public long deleteByPrefix(String keyPrefix) {
+		long[] count = new long[1];
+		List<byte[]> batch = new ArrayList<>(deleteBatchSize);
+		forEachKey(keyPrefix, key -> {
+			batch.add(key);
+			if (batch.size() >= deleteBatchSize) {
+				count[0] += batchExecutor.del(batch);
+				batch.clear();
+			}
+		});
+		if (!batch.isEmpty()) {
+			count[0] += batchExecutor.del(batch);
+		}
+		logger.info("清除redis缓存数据, pattern : {}*, 共{}个", keyPrefix, count[0]);
+		return count[0];
+	}
+
+	/**
+	 * 在当前线程遍历以keyPrefix开头的所有key 集群中依次遍历需要的主节点
+	 * 遍历期间变更的key可能遗漏或重复
+	 * @param keyPrefix redis key前缀 不需要转义
+	 * @param action 处理每个序列化后的key
+	 */
+	public void forEachKey(String keyPrefix, Consumer<byte[]> action) {
+		String pattern = escape(keyPrefix).concat("*");
+		ScanOptions options = ScanOptions.scanOptions().match(pattern).count(scanCount).build();
+		redisTemplate.execute((RedisCallback<Void>) connection -> {
+			if (!(connection instanceof RedisClusterConnection)) {
+				consumeScanned(connection.scan(options), pattern, action);
+				return null;
+			}
+			RedisClusterConnection clusterConnection = (RedisClusterConnection) connection;
+			for (RedisClusterNode node : scanNodes(clusterConnection, keyPrefix)) {
+				consumeScanned(clusterConnection.scan(node, options), pattern, action);
+			}
+			return null;
+		});
+	}
+
+	private void consumeScanned(Cursor<byte[]> cursor, String pattern, Consumer<byte[]> action) {
+		try (Cursor<byte[]> keys = cursor) {
+			while (keys.hasNext()) {
+				action.accept(keys.next());
+			}
+		} catch (IOException e) {
+			logger.warn("关闭SCAN游标失败, pattern : {}", pattern, e);
+		}
+	}
+
+	/**
+	 * 需要SCAN的集群节点 前缀带有hash tag时所有key在同一个slot 只需要该slot所在的主节点
+	 */
+	private Iterable<RedisClusterNode> scanNodes(RedisClusterConnection connection, String keyPrefix) {
+		int open = keyPrefix.indexOf('{');
+		int close = open < 0 ? -1 : keyPrefix.indexOf('}', open + 1);
+		if (close > open + 1) {
+			return Collections.singletonList(connection.clusterGetNodeForSlot(ClusterSlotHashUtil.calculateSlot(keyPrefix)));
+		}
+		List<RedisClusterNode> masters = new ArrayList<>();
+		for (RedisClusterNode node : connection.clusterGetNodes()) {
+			if (node.isMaster()) {
+				masters.add(node);
+			}
+		}
+		return masters;
+	}
+
+	/**
+	 * 转义glob模式中的特殊字符
+	 */
+	static String escape(String keyPrefix) {
+		StringBuilder builder = new StringBuilder(keyPrefix.length() + 8);
+		for (int i = 0; i < keyPrefix.length(); i++) {
+			char c = keyPrefix.charAt(i);
+			if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\') {
+				builder.append('\\');
+			}
+			builder.append(c);
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,212 @@
+package com.sya.code;
+
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 18:20
+ * @description：redis key的编码 每个ClusterCache预先计算好"前缀:名称:"的UTF-8字节 只追加具体key的编码
+ *               Long/Integer/String/UUID直接写入字节 除了最终的key字节数组外不产生其他对象
+ *               开启hash tag时名称写为{名称} 同一个cache的key落在redis集群的同一个slot 可以使用多key命令
+ *               编码结果与 StringRedisSerializer 序列化 toString(key) 的结果完全相同
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class CacheKeyEncoder {
+
+	private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+	private static final int UUID_LENGTH = 36;
+
+	/** 不含版本号的前缀 例如 prefix:name: 或 prefix:{name}:*/
+	private final String base;
+
+	/** 是否在前缀中加入命名空间版本号*/
+	private final boolean versioned;
+
+	private volatile Prefix prefix;
+
+	/**
+	 * @param cachePrefix 缓存key的前缀 可以为空
+	 * @param name 缓存的名称
+	 * @param hashTag 是否把名称作为redis集群的hash tag
+	 * @param versioned 是否启用命名空间版本号
+	 */
+	public CacheKeyEncoder(String cachePrefix, String name, boolean hashTag, boolean versioned) {
+		String keyName = hashTag ? "{".concat(name).concat("}") : name;
+		this.base = (StringUtils.isEmpty(cachePrefix) ? "" : cachePrefix.concat(":")).concat(keyName).concat(":");
+		this.versioned = versioned;
+		this.prefix = new Prefix(0, versioned ? base.concat("v0:") : base);
+	}
+
+	/**
+	 * 指定版本号的key前缀
+	 * @param generation 命名空间版本号 没有启用时忽略
+	 */
+	public String getPrefix(long generation) {
+		return prefix(generation).text;
+	}
+
+	/**
+	 * key的字符串形式 用于日志、租约等不在热点路径上的场景
+	 */
+	public String toString(Object key, long generation) {
+		return getPrefix(generation).concat(key.toString());
+	}
+
+	/**
+	 * 编码redis key
+	 * @param key 具体 cache中的key
+	 * @param generation 命名空间版本号 没有启用时忽略
+	 * @return UTF-8编码的完整key
+	 */
+	public byte[] encode(Object key, long generation) {
+		byte[] bytes = prefix(generation).bytes;
+		if (key instanceof String) {
+			return encodeString(bytes, (String) key);
+		}
+		if (key instanceof Long) {
+			return encodeLong(bytes, (Long) key);
+		}
+		if (key instanceof Integer) {
+			return encodeLong(bytes, (Integer) key);
+		}
+		if (key instanceof UUID) {
+			return encodeUuid(bytes, (UUID) key);
+		}
+		return encodeString(bytes, key.toString());
+	}
+
+	private Prefix prefix(long generation) {
+		Prefix current = this.prefix;
+		if (!versioned || current.generation == generation) {
+			return current;
+		}
+		Prefix updated = new Prefix(generation, base.concat("v").concat(String.valueOf(generation)).concat(":"));
+		this.prefix = updated;
+		return updated;
+	}
+
+	private static byte[] encodeLong(byte[] prefix, long value) {
+		boolean negative = value < 0;
+		// 在负数范围内计算 兼容Long.MIN_VALUE
+		long remaining = negative ? value : -value;
+		int digits = 1;
+		for (long v = remaining; v <= -10; v /= 10) {
+			digits++;
+		}
+		byte[] bytes = Arrays.copyOf(prefix, prefix.length + digits + (negative ? 1 : 0));
+		int position = bytes.length;
+		do {
+			bytes[--position] = (byte) ('0' - remaining % 10);
+			remaining /= 10;
+		} while (remaining != 0);
+		if (negative) {
+			bytes[--position] = '-';
+		}
+		return bytes;
+	}
+
+	private static byte[] encodeUuid(byte[] prefix, UUID value) {
+		byte[] bytes = Arrays.copyOf(prefix, prefix.length + UUID_LENGTH);
+		long most = value.getMostSignificantBits();
+		long least = value.getLeastSignificantBits();
+		int position = prefix.length;
+		hex(bytes, position, most >>> 32, 8);
+		bytes[position + 8] = '-';
+		hex(bytes, position + 9, most >>> 16, 4);
+		bytes[position + 13] = '-';
+		hex(bytes, position + 14, most, 4);
+		bytes[position + 18] = '-';
+		hex(bytes, position + 19, least >>> 48, 4);
+		bytes[position + 23] = '-';
+		hex(bytes, position + 24, least, 12);
+		return bytes;
+	}
+
+	private static void hex(byte[] bytes, int position, long value, int digits) {
+		for (int i = position + digits - 1; i >= position; i--) {
+			bytes[i] = HEX[(int) (value & 0xF)];
+			value >>>= 4;
+		}
+	}
+
+	/**
+	 * 与 String.getBytes(UTF_8) 结果相同 不成对的代理字符编码为'?'
+	 */
+	private static byte[] encodeString(byte[] prefix, String value) {
+		int length = value.length();
+		int size = 0;
+		boolean ascii = true;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				size++;
+				continue;
+			}
+			ascii = false;
+			if (c < 0x800) {
+				size += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				size += 4;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				size++;
+			} else {
+				size += 3;
+			}
+		}
+		byte[] bytes = Arrays.copyOf(prefix, prefix.length + size);
+		int position = prefix.length;
+		if (ascii) {
+			for (int i = 0; i < length; i++) {
+				bytes[position++] = (byte) value.charAt(i);
+			}
+			return bytes;
+		}
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				bytes[position++] = (byte) c;
+			} else if (c < 0x800) {
+				bytes[position++] = (byte) (0xC0 | (c >> 6));
+				bytes[position++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				bytes[position++] = (byte) (0xF0 | (codePoint >> 18));
+				bytes[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				bytes[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				bytes[position++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				bytes[position++] = '?';
+			} else {
+				bytes[position++] = (byte) (0xE0 | (c >> 12));
+				bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				bytes[position++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * 某个版本号的前缀 整体替换保证版本号和字节一致
+	 */
+	private static final class Prefix {
+
+		private final long generation;
+
+		private final String text;
+
+		private final byte[] bytes;
+
+		private Prefix(long generation, String text) {
+			this.generation = generation;
+			this.text = text;
+			this.bytes = text.getBytes(StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -24,11 +24,24 @@ public class CacheMessage implements Serializable {
 	 * 缓存key
 	 */
 	private Object key;
+	/**
+	 * 命名空间版本号 只有启用命名空间版本号的cache清除时才有值
+	 */
+	private Long generation;
+	/**
+	 * 通知创建的时间戳 接收方据此统计通知的传播耗时 0表示没有（旧版本节点发送的通知）
+	 */
+	private long timestamp;
+	/**
+	 * 发送节点标识 只有json格式的通知才有值，接收方据此忽略自己发送的通知 旧版本节点忽略该字段
+	 */
+	private String nodeId;
 
 	public CacheMessage(String cacheName, Object key) {
 		super();
 		this.cacheName = cacheName;
 		this.key = key;
+		this.timestamp = System.currentTimeMillis();
 	}
 
 }
@@ -0,0 +1,35 @@
+package com.sya.code;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 10:12
+ * @description：合并后的通知事件消息体  一次发送包含多条去重后的CacheMessage
+ * @modified By：
+ * @version: 1.0.0$
+ */
+@Data
+@NoArgsConstructor
+public class CacheMessageBatch implements Serializable {
+
+	private static final long serialVersionUID = -1L;
+	/**
+	 * 发送节点的标识 即发送方ClusterCacheManager的nodeId
+	 */
+	private String nodeId;
+	/**
+	 * 去重后的通知消息
+	 */
+	private List<CacheMessage> messages;
+
+	public CacheMessageBatch(String nodeId, List<CacheMessage> messages) {
+		super();
+		this.nodeId = nodeId;
+		this.messages = messages;
+	}
+
+}
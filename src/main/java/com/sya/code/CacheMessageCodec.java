@@ -0,0 +1,489 @@
+package com.sya.code;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 17:30
+ * @description：缓存变更通知的二进制编码 直接读写byte[] 不经过json和String
+ *               格式：魔数(1字节) + 版本(1字节) + nodeId + 条数(varint) + 每条消息 + 创建时间
+ *               每条消息：标志(1字节，0x01有cacheName 0x02有generation) [+ cacheName] + key [+ generation(8字节)]
+ *               key：类型(1字节) + 内容，String/Long/Integer/UUID/基本类型包装类/枚举/SimpleKey直接编码，其他类型使用缓存值的序列化器
+ *               某条消息的key无法解码时该消息改为清除所在cache的1级缓存 不影响同一批的其他消息
+ *               无法识别key的类型时之后的内容无法解析 改为清除所有1级缓存
+ *               字符串：长度(varint) + UTF-8字节
+ *               创建时间：最早的时间戳(8字节) + 每条消息与它的差值+1(varint，0表示没有) 位于末尾 旧版本解码时忽略
+ *               编码使用每个线程复用的缓冲区 只在最后复制一次
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class CacheMessageCodec {
+
+	private final Logger logger = LoggerFactory.getLogger(CacheMessageCodec.class);
+
+	private static final byte MAGIC = (byte) 0xCB;
+
+	private static final byte VERSION = 1;
+
+	private static final int FLAG_CACHE_NAME = 0x01;
+
+	private static final int FLAG_GENERATION = 0x02;
+
+	private static final byte KEY_NULL = 0;
+
+	private static final byte KEY_STRING = 1;
+
+	private static final byte KEY_LONG = 2;
+
+	private static final byte KEY_INTEGER = 3;
+
+	private static final byte KEY_SERIALIZED = 4;
+
+	private static final byte KEY_UUID = 5;
+
+	private static final byte KEY_SHORT = 6;
+
+	private static final byte KEY_BYTE = 7;
+
+	private static final byte KEY_BOOLEAN = 8;
+
+	private static final byte KEY_CHARACTER = 9;
+
+	private static final byte KEY_DOUBLE = 10;
+
+	private static final byte KEY_FLOAT = 11;
+
+	private static final byte KEY_ENUM = 12;
+
+	/** 多个参数的方法默认使用的key 依次编码每个参数*/
+	private static final byte KEY_SIMPLE_KEY = 13;
+
+	/** 无法解码的key 该消息改为清除整个cache*/
+	private static final Object UNDECODABLE = new Object();
+
+	private static final Field SIMPLE_KEY_PARAMS = ReflectionUtils.findField(SimpleKey.class, "params");
+
+	static {
+		if (SIMPLE_KEY_PARAMS != null) {
+			ReflectionUtils.makeAccessible(SIMPLE_KEY_PARAMS);
+		}
+	}
+
+	/** 复用的缓冲区超过该大小时不再保留 避免偶尔的大批量通知长期占用内存*/
+	private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+	private static final ThreadLocal<Output> OUTPUT = ThreadLocal.withInitial(Output::new);
+
+	/** 其他类型key的序列化器*/
+	private final RedisSerializer<Object> keySerializer;
+
+	public CacheMessageCodec(RedisSerializer<Object> keySerializer) {
+		this.keySerializer = keySerializer;
+	}
+
+	/**
+	 * 是否是二进制格式的通知 旧版本发送的是json
+	 */
+	public static boolean isBinary(byte[] body) {
+		return body != null && body.length > 1 && body[0] == MAGIC;
+	}
+
+	public byte[] encode(String nodeId, List<CacheMessage> messages) {
+		Output output = OUTPUT.get();
+		output.reset();
+		try {
+			output.writeByte(MAGIC);
+			output.writeByte(VERSION);
+			output.writeString(nodeId);
+			output.writeVarInt(messages.size());
+			for (CacheMessage message : messages) {
+				int flags = (message.getCacheName() != null ? FLAG_CACHE_NAME : 0)
+						| (message.getGeneration() != null ? FLAG_GENERATION : 0);
+				output.writeByte(flags);
+				if (message.getCacheName() != null) {
+					output.writeString(message.getCacheName());
+				}
+				writeKey(output, message.getKey());
+				if (message.getGeneration() != null) {
+					output.writeLong(message.getGeneration());
+				}
+			}
+			writeTimestamps(output, messages);
+			return output.toBytes();
+		} finally {
+			if (output.buffer.length > MAX_RETAINED_BUFFER) {
+				OUTPUT.remove();
+			}
+		}
+	}
+
+	/**
+	 * @param body 二进制格式的通知
+	 * @param skipNodeId 发送节点是该节点时不解析消息 返回null
+	 * @return {@link CacheMessageBatch}
+	 */
+	public CacheMessageBatch decode(byte[] body, String skipNodeId) {
+		Input input = new Input(body);
+		try {
+			input.readByte();
+			byte version = input.readByte();
+			if (version != VERSION) {
+				throw new SerializationException("不能识别的缓存变更通知版本: " + version);
+			}
+			String nodeId = input.readString();
+			if (nodeId != null && nodeId.equals(skipNodeId)) {
+				return null;
+			}
+			int size = input.readVarInt();
+			List<CacheMessage> messages = new ArrayList<>(size);
+			String cacheName = null;
+			for (int i = 0; i < size; i++) {
+				int flags = input.readByte();
+				// 同一批通知大多属于同一个cache 与上一条相同时复用 不再创建String
+				cacheName = (flags & FLAG_CACHE_NAME) != 0 ? input.readString(cacheName) : null;
+				Object key;
+				try {
+					key = readKey(input);
+				} catch (SerializationException e) {
+					// 不知道key的长度 之后的消息都无法解析 不知道涉及哪些cache 只能清除所有1级缓存
+					logger.warn("缓存变更通知中有无法识别的key，清除所有本地缓存，发送节点：{}", nodeId, e);
+					messages.add(new CacheMessage(null, null));
+					return new CacheMessageBatch(nodeId, messages);
+				}
+				if (key == UNDECODABLE) {
+					// key为null时清除整个cache
+					logger.warn("缓存变更通知中的key无法解码，清除本地缓存：{}", cacheName);
+					key = null;
+				}
+				CacheMessage message = new CacheMessage(cacheName, key);
+				if ((flags & FLAG_GENERATION) != 0) {
+					message.setGeneration(input.readLong());
+				}
+				messages.add(message);
+			}
+			readTimestamps(input, messages);
+			return new CacheMessageBatch(nodeId, messages);
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new SerializationException("缓存变更通知不完整", e);
+		}
+	}
+
+	private void writeTimestamps(Output output, List<CacheMessage> messages) {
+		long base = Long.MAX_VALUE;
+		for (CacheMessage message : messages) {
+			if (message.getTimestamp() > 0) {
+				base = Math.min(base, message.getTimestamp());
+			}
+		}
+		if (base == Long.MAX_VALUE) {
+			return;
+		}
+		output.writeLong(base);
+		for (CacheMessage message : messages) {
+			long timestamp = message.getTimestamp();
+			output.writeVarInt(timestamp > 0 ? (int) Math.min(Integer.MAX_VALUE - 1, timestamp - base) + 1 : 0);
+		}
+	}
+
+	/**
+	 * 没有创建时间的通知（旧版本节点发送）时间戳为0
+	 */
+	private void readTimestamps(Input input, List<CacheMessage> messages) {
+		if (!input.hasRemaining()) {
+			for (CacheMessage message : messages) {
+				message.setTimestamp(0);
+			}
+			return;
+		}
+		long base = input.readLong();
+		for (CacheMessage message : messages) {
+			int delta = input.readVarInt();
+			message.setTimestamp(delta > 0 ? base + delta - 1 : 0);
+		}
+	}
+
+	private void writeKey(Output output, Object key) {
+		if (key == null) {
+			output.writeByte(KEY_NULL);
+		} else if (key instanceof String) {
+			output.writeByte(KEY_STRING);
+			output.writeString((String) key);
+		} else if (key instanceof Long) {
+			output.writeByte(KEY_LONG);
+			output.writeLong((Long) key);
+		} else if (key instanceof Integer) {
+			output.writeByte(KEY_INTEGER);
+			output.writeVarInt((Integer) key);
+		} else if (key instanceof UUID) {
+			output.writeByte(KEY_UUID);
+			output.writeLong(((UUID) key).getMostSignificantBits());
+			output.writeLong(((UUID) key).getLeastSignificantBits());
+		} else if (key instanceof Short) {
+			output.writeByte(KEY_SHORT);
+			output.writeVarInt((Short) key);
+		} else if (key instanceof Byte) {
+			output.writeByte(KEY_BYTE);
+			output.writeByte((Byte) key);
+		} else if (key instanceof Boolean) {
+			output.writeByte(KEY_BOOLEAN);
+			output.writeByte((Boolean) key ? 1 : 0);
+		} else if (key instanceof Character) {
+			output.writeByte(KEY_CHARACTER);
+			output.writeVarInt((Character) key);
+		} else if (key instanceof Double) {
+			output.writeByte(KEY_DOUBLE);
+			output.writeLong(Double.doubleToRawLongBits((Double) key));
+		} else if (key instanceof Float) {
+			output.writeByte(KEY_FLOAT);
+			output.writeVarInt(Float.floatToRawIntBits((Float) key));
+		} else if (key instanceof Enum) {
+			output.writeByte(KEY_ENUM);
+			output.writeString(((Enum<?>) key).getDeclaringClass().getName());
+			output.writeString(((Enum<?>) key).name());
+		} else if (key instanceof SimpleKey && SIMPLE_KEY_PARAMS != null) {
+			Object[] params = (Object[]) ReflectionUtils.getField(SIMPLE_KEY_PARAMS, key);
+			output.writeByte(KEY_SIMPLE_KEY);
+			output.writeVarInt(params.length);
+			for (Object param : params) {
+				writeKey(output, param);
+			}
+		} else {
+			byte[] bytes = keySerializer.serialize(key);
+			output.writeByte(KEY_SERIALIZED);
+			output.writeVarInt(bytes.length);
+			output.writeBytes(bytes);
+		}
+	}
+
+	private Object readKey(Input input) {
+		byte type = input.readByte();
+		switch (type) {
+			case KEY_NULL:
+				return null;
+			case KEY_STRING:
+				return input.readString();
+			case KEY_LONG:
+				return input.readLong();
+			case KEY_INTEGER:
+				return input.readVarInt();
+			case KEY_UUID:
+				return new UUID(input.readLong(), input.readLong());
+			case KEY_SHORT:
+				return (short) input.readVarInt();
+			case KEY_BYTE:
+				return input.readByte();
+			case KEY_BOOLEAN:
+				return input.readByte() != 0;
+			case KEY_CHARACTER:
+				return (char) input.readVarInt();
+			case KEY_DOUBLE:
+				return Double.longBitsToDouble(input.readLong());
+			case KEY_FLOAT:
+				return Float.intBitsToFloat(input.readVarInt());
+			case KEY_ENUM:
+				return readEnum(input.readString(), input.readString());
+			case KEY_SIMPLE_KEY:
+				Object[] params = new Object[input.readVarInt()];
+				boolean decodable = true;
+				for (int i = 0; i < params.length; i++) {
+					params[i] = readKey(input);
+					decodable &= params[i] != UNDECODABLE;
+				}
+				return !decodable ? UNDECODABLE : params.length == 0 ? SimpleKey.EMPTY : new SimpleKey(params);
+			case KEY_SERIALIZED:
+				byte[] bytes = input.readBytes(input.readVarInt());
+				try {
+					return keySerializer.deserialize(bytes);
+				} catch (RuntimeException e) {
+					logger.debug("缓存变更通知中的key无法反序列化", e);
+					return UNDECODABLE;
+				}
+			default:
+				throw new SerializationException("不能识别的缓存key类型: " + type);
+		}
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private Object readEnum(String className, String name) {
+		try {
+			Class enumType = ClassUtils.forName(className, ClassUtils.getDefaultClassLoader());
+			return Enum.valueOf(enumType, name);
+		} catch (ClassNotFoundException | LinkageError | IllegalArgumentException e) {
+			logger.debug("缓存变更通知中的枚举key无法解析: {}.{}", className, name, e);
+			return UNDECODABLE;
+		}
+	}
+
+	/**
+	 * 可增长的输出缓冲区
+	 */
+	private static final class Output {
+
+		private byte[] buffer = new byte[256];
+
+		private int position;
+
+		void reset() {
+			position = 0;
+		}
+
+		byte[] toBytes() {
+			return Arrays.copyOf(buffer, position);
+		}
+
+		private void ensure(int length) {
+			if (position + length > buffer.length) {
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, position + length));
+			}
+		}
+
+		void writeByte(int value) {
+			ensure(1);
+			buffer[position++] = (byte) value;
+		}
+
+		void writeBytes(byte[] bytes) {
+			ensure(bytes.length);
+			System.arraycopy(bytes, 0, buffer, position, bytes.length);
+			position += bytes.length;
+		}
+
+		void writeVarInt(int value) {
+			ensure(5);
+			while ((value & ~0x7F) != 0) {
+				buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			buffer[position++] = (byte) value;
+		}
+
+		void writeLong(long value) {
+			ensure(8);
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				buffer[position++] = (byte) (value >>> shift);
+			}
+		}
+
+		/**
+		 * ascii字符直接写入 其他字符才编码为UTF-8字节数组
+		 */
+		void writeString(String value) {
+			int length = value.length();
+			for (int i = 0; i < length; i++) {
+				if (value.charAt(i) >= 0x80) {
+					byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+					writeVarInt(bytes.length);
+					writeBytes(bytes);
+					return;
+				}
+			}
+			writeVarInt(length);
+			ensure(length);
+			for (int i = 0; i < length; i++) {
+				buffer[position++] = (byte) value.charAt(i);
+			}
+		}
+	}
+
+	/**
+	 * 直接在通知的字节数组上读取
+	 */
+	private static final class Input {
+
+		private final byte[] buffer;
+
+		private int position;
+
+		Input(byte[] buffer) {
+			this.buffer = buffer;
+		}
+
+		byte readByte() {
+			return buffer[position++];
+		}
+
+		boolean hasRemaining() {
+			return position < buffer.length;
+		}
+
+		byte[] readBytes(int length) {
+			if (length < 0 || position + length > buffer.length) {
+				throw new ArrayIndexOutOfBoundsException(position + length);
+			}
+			byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+			position += length;
+			return bytes;
+		}
+
+		int readVarInt() {
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				byte b = buffer[position++];
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new SerializationException("varint格式错误");
+		}
+
+		long readLong() {
+			long value = 0;
+			for (int i = 0; i < 8; i++) {
+				value = (value << 8) | (buffer[position++] & 0xFF);
+			}
+			return value;
+		}
+
+		/**
+		 * @param previous 内容相同时直接返回该字符串
+		 */
+		String readString(String previous) {
+			int length = readVarInt();
+			if (previous != null && matches(previous, length)) {
+				position += length;
+				return previous;
+			}
+			return readString(length);
+		}
+
+		String readString() {
+			return readString(readVarInt());
+		}
+
+		private boolean matches(String value, int length) {
+			if (value.length() != length || position + length > buffer.length) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				char c = value.charAt(i);
+				if (c >= 0x80 || c != buffer[position + i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private String readString(int length) {
+			if (length < 0 || position + length > buffer.length) {
+				throw new ArrayIndexOutOfBoundsException(position + length);
+			}
+			String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+			position += length;
+			return value;
+		}
+	}
+}
@@ -1,12 +1,11 @@
 package com.sya.code;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.parser.ParserConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.connection.MessageListener;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
 import java.nio.charset.StandardCharsets;
 
@@ -25,11 +24,14 @@ public class CacheMessageListener implements MessageListener {
 	
 	private ClusterCacheManager clusterCacheManager;
 
+	private CacheMessageCodec messageCodec;
+
 
 	public CacheMessageListener(RedisTemplate<String, Object> redisTemplate,
                                 ClusterCacheManager clusterCacheManager) {
 		this.redisTemplate = redisTemplate;
 		this.clusterCacheManager = clusterCacheManager;
+		this.messageCodec = new CacheMessageCodec((RedisSerializer<Object>) redisTemplate.getValueSerializer());
 	}
 
 	/**
@@ -40,9 +42,28 @@ public class CacheMessageListener implements MessageListener {
 	 */
 	@Override
 	public void onMessage(Message message, byte[] pattern) {
-		logger.info("收到redis清除缓存消息, 开始清除本地缓存,   {}", message);
-		CacheMessage cacheMessage = JSON.parseObject(message.toString(), CacheMessage.class);
-		clusterCacheManager.clearLocal(cacheMessage.getCacheName(), cacheMessage.getKey());
+		byte[] raw = message.getBody();
+		logger.debug("收到redis清除缓存消息, 开始清除本地缓存, {}字节", raw == null ? 0 : raw.length);
+		if (CacheMessageCodec.isBinary(raw)) {
+			// 自己发送的通知 本地缓存已是最新 不需要清除 解码时直接跳过
+			onBatch(messageCodec.decode(raw, clusterCacheManager.getNodeId()));
+			return;
+		}
+		// 旧版本节点发送的json格式通知
+		Object body = redisTemplate.getValueSerializer().deserialize(raw);
+		if (body instanceof CacheMessageBatch) {
+			onBatch((CacheMessageBatch) body);
+		} else if (body instanceof CacheMessage) {
+			CacheMessage cacheMessage = (CacheMessage) body;
+			if (clusterCacheManager.getNodeId().equals(cacheMessage.getNodeId())) {
+				return;
+			}
+			if (cacheMessage.getGeneration() != null) {
+				clusterCacheManager.updateGeneration(cacheMessage.getCacheName(), cacheMessage.getGeneration());
+			}
+			clusterCacheManager.clearLocal(cacheMessage.getCacheName(), cacheMessage.getKey());
+			clusterCacheManager.recordInvalidationReceived(cacheMessage);
+		}
 		/***
 		 * 以下这种方式 规避乱码
 		 */
@@ -53,4 +74,26 @@ public class CacheMessageListener implements MessageListener {
 //		clusterCacheManager.clearLocal(cacheName, key);
 
 	}
+
+	/**
+	 * 处理一批通知 发布订阅和stream共用
+	 */
+	void onBatch(CacheMessageBatch batch) {
+		if (batch == null || clusterCacheManager.getNodeId().equals(batch.getNodeId())) {
+			return;
+		}
+		for (CacheMessage cacheMessage : batch.getMessages()) {
+			try {
+				if (cacheMessage.getGeneration() != null) {
+					clusterCacheManager.updateGeneration(cacheMessage.getCacheName(), cacheMessage.getGeneration());
+				}
+				clusterCacheManager.clearLocal(cacheMessage.getCacheName(), cacheMessage.getKey());
+				clusterCacheManager.recordInvalidationReceived(cacheMessage);
+			} catch (RuntimeException e) {
+				// 一条消息处理失败不影响同一批的其他消息 改为清除该cache的1级缓存
+				logger.error("处理缓存变更通知失败，清除本地缓存：{}", cacheMessage.getCacheName(), e);
+				clusterCacheManager.clearLocal(cacheMessage.getCacheName(), null);
+			}
+		}
+	}
 }
@@ -0,0 +1,451 @@
+package com.sya.code;
+
+import com.sya.config.ClusterCacheProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ *
+ * 缓存变更通知的发送者  每个ClusterCacheManager一个
+ * 变更消息先进入队列，在 publishFlushInterval 时间窗口内或者积累到 publishBatchSize 条时
+ * 去重合并后发送：messageFormat为binary时以二进制编码合并成一条发送，减少 redis PUBLISH 次数；
+ * 为json（默认）时与旧版本相同 每条通知单独发送一次json，在同一个pipeline中发送
+ * messageTransport为stream时写入redis stream 由 CacheMessageStreamConsumer 读取
+ *
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 10:12
+ * @description：合并发送缓存变更通知
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class CacheMessagePublisher {
+
+	private final Logger logger = LoggerFactory.getLogger(CacheMessagePublisher.class);
+
+	/**
+	 * stream中每条消息只有一个字段 值为编码后的通知
+	 */
+	static final String STREAM_FIELD = "m";
+
+	/**
+	 * 清除所有cache的通知在 streamKey:caches 中的字段
+	 */
+	static final String ALL_CACHES = "*";
+
+	/**
+	 * 写入stream并记录每个cache最近一次变更的消息id 接收方发现消息被裁剪时据此只清除期间有变更的cache
+	 * ARGV[1]为最大条数 ARGV[2]为通知 之后为cacheName
+	 */
+	private static final RedisScript<String> STREAM_PUBLISH_SCRIPT = new DefaultRedisScript<>(
+			"local id = redis.call('XADD', KEYS[1], 'MAXLEN', '~', ARGV[1], '*', '" + STREAM_FIELD + "', ARGV[2]) "
+					+ "for i = 3, #ARGV do redis.call('HSET', KEYS[2], ARGV[i], id) end "
+					+ "return id", String.class);
+
+	private RedisTemplate<String, Object> redisTemplate;
+
+	/**
+	 * 本节点标识 随每条通知发送 接收方据此忽略自己发送的通知
+	 */
+	private String nodeId;
+
+	/**
+	 * redis 事件topic
+	 */
+	private String topic;
+
+	/**
+	 * topic序列化后的字节
+	 */
+	private byte[] rawTopic;
+
+	/**
+	 * 使用stream发送时的key 为null时使用topic
+	 */
+	private List<String> streamKeys;
+
+	private byte[] streamMaxLength;
+
+	/**
+	 * 通知的二进制编码
+	 */
+	private CacheMessageCodec messageCodec;
+
+	/**
+	 * 是否使用二进制格式发送 否则使用旧版本节点可以解析的json格式
+	 */
+	private boolean binaryFormat;
+
+	/**
+	 * 单次合并发送的最大消息数
+	 */
+	private int batchSize;
+
+	/**
+	 * 待发送的消息  为null时表示不合并 立即发送
+	 */
+	private BlockingQueue<CacheMessage> queue;
+
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * 返回true时单个key的变更由redis的CLIENT TRACKING推送 不再发送 为null时全部发送
+	 */
+	private volatile BooleanSupplier keyMessagesCovered;
+
+	/**
+	 * 是否已经提交了一次因队列积压触发的发送
+	 */
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+	/**
+	 * 发送失败的合并消息在之后的发送中重试的最长时间，单位毫秒 超过后丢弃
+	 */
+	private long retryTimeout;
+
+	/**
+	 * 发送失败等待重试的合并消息 为null时没有
+	 */
+	private List<CacheMessage> retrying;
+
+	/**
+	 * retrying第一次发送失败的时间
+	 */
+	private long retryingSince;
+
+	private final LongAdder sentCount = new LongAdder();
+
+	private final LongAdder failureCount = new LongAdder();
+
+	private final LongAdder droppedBatchCount = new LongAdder();
+
+	private final LongAdder droppedMessageCount = new LongAdder();
+
+	public CacheMessagePublisher(String nodeId, RedisTemplate<String, Object> redisTemplate,
+								 ClusterCacheProperties clusterCacheProperties) {
+		ClusterCacheProperties.Redis redis = clusterCacheProperties.getRedis();
+		this.nodeId = nodeId;
+		this.redisTemplate = redisTemplate;
+		this.topic = redis.getTopic();
+		this.rawTopic = redisTemplate.getStringSerializer().serialize(this.topic);
+		this.messageCodec = new CacheMessageCodec((RedisSerializer<Object>) redisTemplate.getValueSerializer());
+		this.binaryFormat = "binary".equalsIgnoreCase(redis.getMessageFormat());
+		if ("stream".equalsIgnoreCase(redis.getMessageTransport())) {
+			// 旧版本节点不读取stream 总是使用二进制格式
+			this.binaryFormat = true;
+			this.streamKeys = Arrays.asList(redis.getStreamKey(), streamCachesKey(redis.getStreamKey()));
+			this.streamMaxLength = String.valueOf(Math.max(1, redis.getStreamMaxLength())).getBytes(StandardCharsets.UTF_8);
+		}
+		this.batchSize = Math.max(1, redis.getPublishBatchSize());
+		this.retryTimeout = Math.max(0, redis.getPublishRetryTimeout());
+		long flushInterval = redis.getPublishFlushInterval();
+		if (flushInterval > 0) {
+			this.queue = new LinkedBlockingQueue<>(Math.max(this.batchSize, redis.getPublishQueueCapacity()));
+			this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "cluster-cache-publisher");
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.scheduler.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * 发送缓存变更通知
+	 * @param message
+	 */
+	public void publish(CacheMessage message) {
+		if (isCovered(message)) {
+			return;
+		}
+		if (queue == null) {
+			send(Collections.singletonList(message));
+			return;
+		}
+		if (!queue.offer(message)) {
+			// 队列已满 直接发送 保证失效消息不丢失
+			logger.warn("缓存变更通知队列已满，直接发送---{}--{}", message.getCacheName(), message.getKey());
+			send(Collections.singletonList(message));
+			return;
+		}
+		if (queue.size() >= batchSize && flushScheduled.compareAndSet(false, true)) {
+			scheduler.execute(() -> {
+				flushScheduled.set(false);
+				flushQuietly();
+			});
+		}
+	}
+
+	/**
+	 * 批量发送缓存变更通知 不合并发送时也只发送一次
+	 * @param messages
+	 */
+	public void publish(Collection<CacheMessage> messages) {
+		if (messages.isEmpty()) {
+			return;
+		}
+		if (keyMessagesCovered != null) {
+			List<CacheMessage> uncovered = new ArrayList<>(messages.size());
+			for (CacheMessage message : messages) {
+				if (!isCovered(message)) {
+					uncovered.add(message);
+				}
+			}
+			if (uncovered.isEmpty()) {
+				return;
+			}
+			messages = uncovered;
+		}
+		if (queue == null) {
+			send(merge(messages));
+			return;
+		}
+		for (CacheMessage message : messages) {
+			publish(message);
+		}
+	}
+
+	/**
+	 * 设置单个key的变更是否已经由其他方式通知 例如redis的CLIENT TRACKING
+	 * @param keyMessagesCovered 每次发送前判断 返回true时不发送单个key的变更通知
+	 */
+	public void setKeyMessagesCovered(BooleanSupplier keyMessagesCovered) {
+		this.keyMessagesCovered = keyMessagesCovered;
+	}
+
+	/**
+	 * 立即发送队列中所有的消息
+	 * 发送失败时保留该批消息 之后的发送先重试 超过publishRetryTimeout后丢弃
+	 */
+	public synchronized void flush() {
+		if (queue == null) {
+			return;
+		}
+		List<CacheMessage> drained = new ArrayList<>(batchSize);
+		while (true) {
+			List<CacheMessage> batch = retrying;
+			if (batch == null) {
+				if (queue.drainTo(drained, batchSize) == 0) {
+					return;
+				}
+				batch = merge(drained);
+				drained.clear();
+			}
+			try {
+				send(batch);
+			} catch (RuntimeException e) {
+				failureCount.increment();
+				long now = System.currentTimeMillis();
+				if (retrying == null) {
+					retrying = batch;
+					retryingSince = now;
+					logger.warn("缓存变更通知发送失败，{}条通知等待重试", batch.size(), e);
+				}
+				if (now - retryingSince >= retryTimeout) {
+					drop(batch, e);
+				}
+				return;
+			}
+			retrying = null;
+		}
+	}
+
+	/**
+	 * 发送剩余的消息并停止发送线程 仍然发送失败的消息被丢弃
+	 */
+	public void shutdown() {
+		if (scheduler == null) {
+			return;
+		}
+		scheduler.shutdown();
+		flushQuietly();
+		synchronized (this) {
+			List<CacheMessage> remaining = new ArrayList<>();
+			if (retrying != null) {
+				remaining.addAll(retrying);
+			}
+			queue.drainTo(remaining);
+			if (!remaining.isEmpty()) {
+				drop(remaining, null);
+			}
+		}
+	}
+
+	/**
+	 * 发送统计
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("sentCount", sentCount.sum());
+		stats.put("failureCount", failureCount.sum());
+		stats.put("droppedBatchCount", droppedBatchCount.sum());
+		stats.put("droppedMessageCount", droppedMessageCount.sum());
+		stats.put("queueSize", queue == null ? 0 : queue.size());
+		return stats;
+	}
+
+	/**
+	 * 合并去重
+	 * 清除所有缓存的消息覆盖其他所有消息，清除整个cache的消息覆盖该cache下的key消息，相同的key只保留一条
+	 * 带命名空间版本号的消息不能被覆盖 接收方需要据此更新版本号
+	 * @param messages
+	 * @return {@link List}
+	 */
+	static List<CacheMessage> merge(Collection<CacheMessage> messages) {
+		Map<String, Map<Object, CacheMessage>> byCache = new LinkedHashMap<>();
+		CacheMessage clearAll = null;
+		for (CacheMessage message : messages) {
+			String cacheName = message.getCacheName();
+			if (cacheName == null) {
+				clearAll = message;
+				continue;
+			}
+			Map<Object, CacheMessage> byKey = byCache.computeIfAbsent(cacheName, k -> new LinkedHashMap<>());
+			if (message.getKey() == null) {
+				// 保留最后一条 版本号以最后一条为准
+				byKey.clear();
+				byKey.put(null, message);
+				continue;
+			}
+			if (!byKey.containsKey(null)) {
+				byKey.put(message.getKey(), message);
+			}
+		}
+		List<CacheMessage> merged = new ArrayList<>(clearAll == null ? messages.size() : byCache.size() + 1);
+		if (clearAll != null) {
+			// 其他消息都被覆盖 只保留每个cache的版本号变更
+			merged.add(clearAll);
+			for (Map<Object, CacheMessage> byKey : byCache.values()) {
+				CacheMessage cacheMessage = byKey.get(null);
+				if (cacheMessage != null && cacheMessage.getGeneration() != null) {
+					merged.add(cacheMessage);
+				}
+			}
+			return merged;
+		}
+		for (Map<Object, CacheMessage> byKey : byCache.values()) {
+			merged.addAll(byKey.values());
+		}
+		return merged;
+	}
+
+	/**
+	 * 清除整个cache和带命名空间版本号的通知总是发送
+	 */
+	private boolean isCovered(CacheMessage message) {
+		BooleanSupplier covered = this.keyMessagesCovered;
+		return covered != null && message.getKey() != null && message.getGeneration() == null && covered.getAsBoolean();
+	}
+
+	/**
+	 * 记录每个cache最近一次变更的消息id的hash
+	 */
+	static String streamCachesKey(String streamKey) {
+		return streamKey.concat(":caches");
+	}
+
+	private void send(List<CacheMessage> messages) {
+		logger.debug("----开始发送缓存变更时通知其他节点清理本地缓存---{}条", messages.size());
+		if (!binaryFormat) {
+			sendJson(messages);
+			return;
+		}
+		byte[] body = messageCodec.encode(nodeId, messages);
+		if (streamKeys != null) {
+			sendToStream(messages, body);
+			return;
+		}
+		redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(rawTopic, body));
+		sentCount.increment();
+	}
+
+	/**
+	 * 旧版本的格式 每条通知使用缓存值的序列化器单独发送
+	 */
+	@SuppressWarnings("unchecked")
+	private void sendJson(List<CacheMessage> messages) {
+		RedisSerializer<Object> serializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+		List<byte[]> bodies = new ArrayList<>(messages.size());
+		for (CacheMessage message : messages) {
+			message.setNodeId(nodeId);
+			bodies.add(serializer.serialize(message));
+		}
+		if (bodies.size() == 1) {
+			redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(rawTopic, bodies.get(0)));
+		} else {
+			redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+				for (byte[] body : bodies) {
+					connection.publish(rawTopic, body);
+				}
+				return null;
+			});
+		}
+		sentCount.increment();
+	}
+
+	/**
+	 * 丢弃无法发送的消息 其他节点的1级缓存只能等待过期
+	 */
+	private void drop(List<CacheMessage> messages, Exception e) {
+		retrying = null;
+		droppedBatchCount.increment();
+		droppedMessageCount.add(messages.size());
+		logger.error("缓存变更通知发送失败，丢弃{}条通知: {}", messages.size(), describe(messages), e);
+	}
+
+	private static String describe(List<CacheMessage> messages) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < messages.size() && i < 10; i++) {
+			CacheMessage message = messages.get(i);
+			builder.append(i == 0 ? "" : ", ").append(message.getCacheName()).append(':').append(message.getKey());
+		}
+		return messages.size() > 10 ? builder.append(", ...").toString() : builder.toString();
+	}
+
+	private void sendToStream(List<CacheMessage> messages, byte[] body) {
+		Set<String> cacheNames = new LinkedHashSet<>();
+		for (CacheMessage message : messages) {
+			cacheNames.add(message.getCacheName() == null ? ALL_CACHES : message.getCacheName());
+		}
+		Object[] args = new Object[cacheNames.size() + 2];
+		args[0] = streamMaxLength;
+		args[1] = body;
+		int i = 2;
+		for (String cacheName : cacheNames) {
+			args[i++] = cacheName.getBytes(StandardCharsets.UTF_8);
+		}
+		redisTemplate.execute(STREAM_PUBLISH_SCRIPT, RedisSerializer.byteArray(), RedisSerializer.string(), streamKeys, args);
+		sentCount.increment();
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (Exception e) {
+			logger.error("发送缓存变更通知失败", e);
+		}
+	}
+}
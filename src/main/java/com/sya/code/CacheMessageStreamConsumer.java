@@ -0,0 +1,235 @@
+package com.sya.code;
+
+import com.sya.config.ClusterCacheProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisZSetCommands.Limit;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/19 01:20
+ * @description：从redis stream读取缓存变更通知 每个节点独立读取全部消息 不使用消费组
+ *               记录最后处理的消息id 读取失败重连后从该位置继续读取 不会像发布订阅一样丢失断线期间的通知
+ *               stream按streamMaxLength近似裁剪 读取失败、停顿或者积压后先检查最早的消息是否晚于最后处理的消息
+ *               晚于时说明中间的消息已被裁剪 根据 streamKey:caches 中每个cache最近一次变更的消息id 只重新同步期间有变更的cache
+ *               启动时从stream的最新位置开始读取 启动前的通知与空的1级缓存无关
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class CacheMessageStreamConsumer implements Runnable {
+
+	private final Logger logger = LoggerFactory.getLogger(CacheMessageStreamConsumer.class);
+
+	private static final RecordId INITIAL_ID = RecordId.of(0, 0);
+
+	private final ClusterCacheManager clusterCacheManager;
+
+	private final RedisTemplate<String, Object> redisTemplate;
+
+	private final CacheMessageListener messageListener;
+
+	private final CacheMessageCodec messageCodec;
+
+	private final byte[] streamKey;
+
+	private final byte[] cachesKey;
+
+	private final int readCount;
+
+	private final long blockTime;
+
+	private final long retryInterval;
+
+	private final Thread thread;
+
+	private volatile boolean running = true;
+
+	/**
+	 * 最后处理的消息id 启动后第一次连接成功前为null
+	 */
+	private volatile RecordId lastId;
+
+	private final LongAdder receivedCount = new LongAdder();
+
+	private final LongAdder gapCount = new LongAdder();
+
+	private final LongAdder resyncCount = new LongAdder();
+
+	private final LongAdder errorCount = new LongAdder();
+
+	public CacheMessageStreamConsumer(ClusterCacheManager clusterCacheManager, RedisTemplate<String, Object> redisTemplate) {
+		ClusterCacheProperties.Redis redis = clusterCacheManager.getClusterCacheProperties().getRedis();
+		this.clusterCacheManager = clusterCacheManager;
+		this.redisTemplate = redisTemplate;
+		this.messageListener = new CacheMessageListener(redisTemplate, clusterCacheManager);
+		this.messageCodec = new CacheMessageCodec((RedisSerializer<Object>) redisTemplate.getValueSerializer());
+		this.streamKey = redis.getStreamKey().getBytes(StandardCharsets.UTF_8);
+		this.cachesKey = CacheMessagePublisher.streamCachesKey(redis.getStreamKey()).getBytes(StandardCharsets.UTF_8);
+		this.readCount = Math.max(1, redis.getStreamReadCount());
+		this.blockTime = Math.max(1, redis.getStreamBlockTime());
+		this.retryInterval = Math.max(100, redis.getStreamRetryInterval());
+		this.thread = new Thread(this, "cluster-cache-stream");
+		this.thread.setDaemon(true);
+	}
+
+	public void start() {
+		thread.start();
+	}
+
+	public void shutdown() {
+		running = false;
+		thread.interrupt();
+	}
+
+	@Override
+	public void run() {
+		RedisConnection connection = null;
+		boolean verify = false;
+		while (running) {
+			try {
+				if (connection == null) {
+					// 持有同一个连接 阻塞读取使用该连接内的专用连接 不必每次重新建立
+					connection = redisTemplate.getRequiredConnectionFactory().getConnection();
+				}
+				if (lastId == null) {
+					lastId = latestId(connection);
+					logger.info("开始读取缓存变更通知stream，起始位置：{}", lastId);
+				} else if (verify) {
+					checkGap(connection);
+				}
+				long start = System.nanoTime();
+				List<ByteRecord> records = connection.streamCommands().xRead(
+						StreamReadOptions.empty().count(readCount).block(Duration.ofMillis(blockTime)),
+						StreamOffset.create(streamKey, ReadOffset.from(lastId)));
+				if (records != null) {
+					for (ByteRecord record : records) {
+						onRecord(record);
+						lastId = record.getId();
+					}
+				}
+				// 读满一批说明有积压 读取和处理的耗时远超阻塞时间说明发生了停顿 两种情况下之后的消息都可能已经被裁剪 下次读取前检查
+				verify = records != null && records.size() >= readCount
+						|| TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) > blockTime * 2;
+			} catch (RuntimeException e) {
+				if (!running) {
+					break;
+				}
+				errorCount.increment();
+				logger.warn("读取缓存变更通知stream失败，{}毫秒后从{}继续读取", retryInterval, lastId, e);
+				closeQuietly(connection);
+				connection = null;
+				verify = true;
+				try {
+					Thread.sleep(retryInterval);
+				} catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		closeQuietly(connection);
+	}
+
+	public Map<String, Object> getStats() {
+		RecordId current = lastId;
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("lastId", current == null ? null : current.getValue());
+		stats.put("receivedCount", receivedCount.sum());
+		stats.put("gapCount", gapCount.sum());
+		stats.put("resyncCount", resyncCount.sum());
+		stats.put("errorCount", errorCount.sum());
+		return stats;
+	}
+
+	private void onRecord(ByteRecord record) {
+		receivedCount.increment();
+		for (byte[] body : record.getValue().values()) {
+			try {
+				messageListener.onBatch(messageCodec.decode(body, clusterCacheManager.getNodeId()));
+			} catch (RuntimeException e) {
+				// 无法解码的消息不能重试 跳过 避免阻塞后续的消息
+				logger.error("处理缓存变更通知失败，消息id：{}", record.getId(), e);
+			}
+		}
+	}
+
+	private RecordId latestId(RedisConnection connection) {
+		List<ByteRecord> latest = connection.streamCommands().xRevRange(streamKey, Range.unbounded(), Limit.limit().count(1));
+		return latest == null || latest.isEmpty() ? INITIAL_ID : latest.get(0).getId();
+	}
+
+	/**
+	 * 最早的消息晚于最后处理的消息时 中间的消息可能已被裁剪
+	 */
+	private void checkGap(RedisConnection connection) {
+		List<ByteRecord> first = connection.streamCommands().xRange(streamKey, Range.unbounded(), Limit.limit().count(1));
+		boolean empty = first == null || first.isEmpty();
+		if (!empty && compare(first.get(0).getId(), lastId) <= 0) {
+			return;
+		}
+		Map<byte[], byte[]> changed = connection.hashCommands().hGetAll(cachesKey);
+		boolean noChanges = changed == null || changed.isEmpty();
+		if (empty && noChanges) {
+			// 还没有发送过任何通知
+			return;
+		}
+		gapCount.increment();
+		if (noChanges) {
+			// 变更记录被删除 无法判断哪些cache有变更
+			logger.warn("缓存变更通知stream从{}之后的消息已不存在，重新同步所有本地缓存", lastId);
+			resync(null);
+			return;
+		}
+		for (Map.Entry<byte[], byte[]> entry : changed.entrySet()) {
+			RecordId changedId = RecordId.of(new String(entry.getValue(), StandardCharsets.UTF_8));
+			if (compare(changedId, lastId) <= 0) {
+				continue;
+			}
+			String cacheName = new String(entry.getKey(), StandardCharsets.UTF_8);
+			logger.warn("缓存变更通知stream从{}之后的消息已被裁剪，重新同步本地缓存：{}", lastId, cacheName);
+			if (CacheMessagePublisher.ALL_CACHES.equals(cacheName)) {
+				resync(null);
+				return;
+			}
+			resync(cacheName);
+		}
+	}
+
+	private void resync(String cacheName) {
+		resyncCount.increment();
+		clusterCacheManager.resyncLocal(cacheName);
+	}
+
+	private static int compare(RecordId left, RecordId right) {
+		int result = Long.compare(left.getTimestamp(), right.getTimestamp());
+		return result != 0 ? result : Long.compare(left.getSequence(), right.getSequence());
+	}
+
+	private void closeQuietly(RedisConnection connection) {
+		if (connection == null) {
+			return;
+		}
+		try {
+			connection.close();
+		} catch (RuntimeException e) {
+			logger.debug("关闭读取stream的连接失败", e);
+		}
+	}
+}
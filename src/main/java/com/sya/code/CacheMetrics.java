@@ -0,0 +1,201 @@
+package com.sya.code;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 23:20
+ * @description：一个ClusterCache的监控指标 不依赖micrometer 计数使用LongAdder 记录一次只有一次自增
+ *               耗时除了本地的次数、总耗时、最大值外 可以设置recorder转发给micrometer的Timer生成直方图
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class CacheMetrics {
+
+	private final LongAdder l1Hits = new LongAdder();
+
+	private final LongAdder l1Misses = new LongAdder();
+
+	private final LongAdder l2Hits = new LongAdder();
+
+	private final LongAdder l2Misses = new LongAdder();
+
+	private final LongAdder loadFailures = new LongAdder();
+
+	/** 本节点发送的变更通知条数*/
+	private final LongAdder invalidationsSent = new LongAdder();
+
+	/** 收到其他节点的变更通知条数*/
+	private final LongAdder invalidationsReceived = new LongAdder();
+
+	/** 单个key的redis读取 包括GET和带过期时间的脚本*/
+	private final Latency redisGet = new Latency();
+
+	/** 单个key的redis写入*/
+	private final Latency redisSet = new Latency();
+
+	/** getAll的批量读取*/
+	private final Latency redisBatchGet = new Latency();
+
+	/** putAll的批量写入*/
+	private final Latency redisBatchSet = new Latency();
+
+	/** valueLoader的执行耗时 包括失败*/
+	private final Latency load = new Latency();
+
+	/** 变更通知从创建到被本节点处理的耗时 依赖各节点的时钟同步*/
+	private final Latency invalidationDelay = new Latency();
+
+	public void recordL1(boolean hit) {
+		(hit ? l1Hits : l1Misses).increment();
+	}
+
+	public void recordL2(boolean hit) {
+		(hit ? l2Hits : l2Misses).increment();
+	}
+
+	public void recordLoad(long nanos, boolean success) {
+		load.record(nanos);
+		if (!success) {
+			loadFailures.increment();
+		}
+	}
+
+	public void recordInvalidationsSent(int count) {
+		invalidationsSent.add(count);
+	}
+
+	/**
+	 * @param timestamp 通知创建的时间戳 0表示没有（旧版本节点发送的通知）
+	 */
+	public void recordInvalidationReceived(long timestamp) {
+		invalidationsReceived.increment();
+		if (timestamp > 0) {
+			invalidationDelay.record(TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - timestamp)));
+		}
+	}
+
+	public long getL1Hits() {
+		return l1Hits.sum();
+	}
+
+	public long getL1Misses() {
+		return l1Misses.sum();
+	}
+
+	public long getL2Hits() {
+		return l2Hits.sum();
+	}
+
+	public long getL2Misses() {
+		return l2Misses.sum();
+	}
+
+	public long getLoadFailures() {
+		return loadFailures.sum();
+	}
+
+	public long getInvalidationsSent() {
+		return invalidationsSent.sum();
+	}
+
+	public long getInvalidationsReceived() {
+		return invalidationsReceived.sum();
+	}
+
+	public Latency getRedisGet() {
+		return redisGet;
+	}
+
+	public Latency getRedisSet() {
+		return redisSet;
+	}
+
+	public Latency getRedisBatchGet() {
+		return redisBatchGet;
+	}
+
+	public Latency getRedisBatchSet() {
+		return redisBatchSet;
+	}
+
+	public Latency getLoad() {
+		return load;
+	}
+
+	public Latency getInvalidationDelay() {
+		return invalidationDelay;
+	}
+
+	/**
+	 * 汇总的统计信息 耗时单位为毫秒
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("l1Hits", getL1Hits());
+		stats.put("l1Misses", getL1Misses());
+		stats.put("l2Hits", getL2Hits());
+		stats.put("l2Misses", getL2Misses());
+		stats.put("loadFailures", getLoadFailures());
+		stats.put("invalidationsSent", getInvalidationsSent());
+		stats.put("invalidationsReceived", getInvalidationsReceived());
+		stats.put("redisGet", redisGet.getStats());
+		stats.put("redisSet", redisSet.getStats());
+		stats.put("redisBatchGet", redisBatchGet.getStats());
+		stats.put("redisBatchSet", redisBatchSet.getStats());
+		stats.put("load", load.getStats());
+		stats.put("invalidationDelay", invalidationDelay.getStats());
+		return stats;
+	}
+
+	/**
+	 * 一类操作的耗时
+	 */
+	public static final class Latency {
+
+		private final LongAdder count = new LongAdder();
+
+		private final LongAdder totalNanos = new LongAdder();
+
+		private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+		/** 同时转发给的记录器 例如micrometer的Timer 参数为纳秒*/
+		private volatile LongConsumer recorder;
+
+		public void record(long nanos) {
+			count.increment();
+			totalNanos.add(nanos);
+			maxNanos.accumulate(nanos);
+			LongConsumer current = recorder;
+			if (current != null) {
+				current.accept(nanos);
+			}
+		}
+
+		public void setRecorder(LongConsumer recorder) {
+			this.recorder = recorder;
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public long getTotalNanos() {
+			return totalNanos.sum();
+		}
+
+		public Map<String, Object> getStats() {
+			long calls = count.sum();
+			Map<String, Object> stats = new LinkedHashMap<>();
+			stats.put("count", calls);
+			stats.put("mean", calls == 0 ? 0D : totalNanos.sum() / 1e6 / calls);
+			stats.put("max", maxNanos.get() / 1e6);
+			return stats;
+		}
+	}
+}
@@ -4,22 +4,53 @@ import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.sya.config.ClusterCacheProperties;
 import lombok.Getter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.util.StringUtils;
 
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
 /**
  *
  * 缓存前缀+ClusterCache.name+ 具体的cache的key  就是redis key
@@ -35,6 +66,98 @@ import java.util.concurrent.locks.ReentrantLock;
 public class ClusterCache extends AbstractValueAdaptingCache {
 
     private final Logger logger = LoggerFactory.getLogger(ClusterCache.class);
+
+    /**
+     * 加载租约key的后缀  租约key = redis key + 后缀
+     */
+    private static final String LEASE_SUFFIX = "#lease";
+
+    /**
+     * 命名空间版本号key的后缀  版本号key = cachePrefix:name + 后缀
+     */
+    private static final String GENERATION_SUFFIX = "#generation";
+
+    /**
+     * 未获得租约时轮询redis的间隔，单位毫秒
+     */
+    private static final long LEASE_POLL_INTERVAL = 50;
+
+    /**
+     * 只有租约持有者才能释放租约，避免租约过期后误删其他节点的租约
+     */
+    private static final RedisScript<Long> RELEASE_LEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    /**
+     * 一次往返同时取值和剩余过期时间(PTTL)，只有开启了提前刷新时才使用
+     */
+    private static final RedisScript<List> GET_WITH_TTL_SCRIPT = new DefaultRedisScript<>(
+            "return {redis.call('get', KEYS[1]), redis.call('pttl', KEYS[1])}", List.class);
+
+    /**
+     * 重新验证1级缓存 一次往返比较redis中值的SHA1摘要
+     * 不存在时返回空数组 摘要相同时只返回{剩余过期时间} 不同时返回{剩余过期时间, 新的值}
+     */
+    private static final RedisScript<List> REVALIDATE_SCRIPT = new DefaultRedisScript<>(
+            "local v = redis.call('get', KEYS[1]) if not v then return {} end "
+                    + "local ttl = redis.call('pttl', KEYS[1]) "
+                    + "if redis.sha1hex(v) == ARGV[1] then return {ttl} end "
+                    + "return {ttl, v}", List.class);
+
+    /**
+     * 重新验证时redis中已经没有该key 按未命中处理 不再访问redis
+     */
+    private static final LocalValue REVALIDATED_MISSING = new LocalValue(null, 0, 0);
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> SHA1 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    /**
+     * 命名空间版本号加1 redis中的版本号丢失（淘汰或者FLUSHDB）后INCR的结果可能不大于本地的版本号 此时以本地的版本号加1重新写入
+     * ARGV[1]为本地的版本号 返回{新的版本号, 是否重新写入}
+     */
+    private static final RedisScript<List> NEXT_GENERATION_SCRIPT = new DefaultRedisScript<>(
+            "local v = redis.call('incr', KEYS[1]) local floor = tonumber(ARGV[1]) "
+                    + "if v <= floor then v = floor + 1 redis.call('set', KEYS[1], v) return {v, 1} end "
+                    + "return {v, 0}", List.class);
+
+    /**
+     * 读取命名空间版本号 redis中没有或者小于本地的版本号时以本地的版本号重新写入
+     * ARGV[1]为本地的版本号 返回redis中的版本号
+     */
+    private static final RedisScript<Long> SYNC_GENERATION_SCRIPT = new DefaultRedisScript<>(
+            "local v = tonumber(redis.call('get', KEYS[1]) or '0') local floor = tonumber(ARGV[1]) "
+                    + "if v < floor then redis.call('set', KEYS[1], floor) return floor end "
+                    + "return v", Long.class);
+
+    /**
+     * 记录最近一次valueLoader的最大key个数
+     */
+    private static final long REFRESH_LOADER_MAXIMUM_SIZE = 10000;
+
+    /**
+     * 1级缓存每个条目除了值以外的固定权重 包括key、LocalValue和caffeine的节点
+     */
+    private static final int ENTRY_WEIGHT = 64;
+
+    /**
+     * 无法估算大小时值的权重
+     */
+    private static final int DEFAULT_VALUE_WEIGHT = 1024;
+
+    /**
+     * 误判率过高时两次重建布隆过滤器的最小间隔，单位毫秒
+     */
+    private static final long BLOOM_FILTER_REBUILD_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
     /**
      * 缓存的名称 而不是 具体 cache中的key
      * 不包含 cache.cluster.achePrefix的值
@@ -47,6 +170,16 @@ public class ClusterCache extends AbstractValueAdaptingCache {
      */
     private RedisTemplate<String, Object> redisTemplate;
 
+    /**
+     * 异步接口使用的非阻塞redis客户端 为null时异步接口在executor中执行同步调用
+     */
+    private ReactiveRedisTemplate<String, Object> reactiveRedisTemplate;
+
+    /**
+     * 后台任务线程池
+     */
+    private Executor executor;
+
     /***
      * 注意这不是 spring 的cache  是com.github.benmanes.caffeine.cache.Cache
      * 借助 caffeine 实现1级缓存 key就是 这个缓存的key
@@ -56,19 +189,101 @@ public class ClusterCache extends AbstractValueAdaptingCache {
 
     private boolean caffeineEnable;
 
+    /**
+     * 热点key识别 未开启时为null
+     */
+    private HotKeyDetector hotKeyDetector;
+
+    /**
+     * 1级缓存的热点区 只存放热点key 过期时间更长 不会被普通key挤出caffeineCache
+     */
+    private Cache<Object, Object> hotCache;
+
+    /**
+     * 1级缓存按内存大小限制 写入时需要计算权重
+     */
+    private boolean weighted;
+
+    /**
+     * 堆外的1级缓存 未开启时为null
+     */
+    @Getter
+    private OffHeapStore offHeapStore;
+
+    /**
+     * 堆外数据写入后的过期时间，单位毫秒，0表示只依赖redis的过期时间
+     */
+    private long offHeapExpireAfterWrite;
+
+    /**
+     * redis中可能存在的key 一定不存在的key不访问redis 未开启时为null
+     */
+    private CacheBloomFilter bloomFilter;
+
+    /**
+     * redis熔断器 所有cache共用 未开启时为null
+     */
+    private RedisCircuitBreaker circuitBreaker;
+
+    /**
+     * 熔断期间在本地写入或删除的key 这些key在redis中的值已经过时 恢复后删除并通知其他节点
+     */
+    private final Set<Object> pendingInvalidations = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 熔断期间执行了clear或者记录的key超过上限 恢复后清除整个cache
+     */
+    private volatile boolean pendingClear;
+
+    /**
+     * 熔断期间最多记录的key个数，0表示不记录
+     */
+    private int pendingSize;
+
+    /**
+     * 熔断期间是否返回堆外缓存中已经过期的值
+     */
+    private boolean serveStale;
+
+    /**
+     * 1级缓存正常的硬过期时间，单位毫秒 caffeine多保留circuitBreakerStaleTime 超过该时间的值只在熔断期间返回 0表示不保留
+     */
+    private long staleAfterWrite;
+
     /**
      * 缓存前缀 cache.cluster.achePrefix的值
      */
     private String cachePrefix;
 
-    /***
-     * 创建时间戳
+    /**
+     * 是否启用命名空间版本号
+     * 启用后redis key为 cachePrefix:name:v版本号:key，clear只需要版本号加1，旧版本的数据依靠过期时间自然淘汰
      */
-    private long timestamp;
+    private boolean namespaceVersionEnable;
 
-    public Long getTimestamp() {
-        return timestamp;
-    }
+    /**
+     * redis key的编码 预先计算好前缀的字节
+     */
+    private CacheKeyEncoder keyEncoder;
+
+    /**
+     * key序列化方式是UTF-8字符串时 直接使用keyEncoder编码 否则使用key序列化器
+     */
+    private boolean rawKeyEnable;
+
+    private RedisSerializer<String> keySerializer;
+
+    private RedisSerializer<Object> valueSerializer;
+
+    /**
+     * 当前命名空间版本号 本地缓存 通过变更通知刷新 读取时不需要访问redis
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * 是否已经从redis读取过命名空间版本号 未启用命名空间版本号时为true
+     */
+    private volatile boolean generationLoaded;
 
 /**
      * 最终缓存数据的key  可以看做cachePrefix+ this.name + cache 中的key
@@ -92,26 +307,270 @@ public class ClusterCache extends AbstractValueAdaptingCache {
     }
 
     /**
-     * redis 事件topic
+     * 缓存变更通知的发送者
+     */
+    private CacheMessagePublisher publisher;
+
+    /**
+     * redis推送key变更（CLIENT TRACKING）时的连接 未开启时为null
+     */
+    private RedisTrackingInvalidator trackingInvalidator;
+
+    /**
+     * 1级缓存中是否出现过String、Long、Integer、UUID以外的key
+     * redis推送的key只有字符串形式 这类key需要遍历1级缓存按toString匹配
+     */
+    private volatile boolean complexKeys;
+
+    /**
+     * 后台批量清理redis中的缓存数据
+     */
+    private CacheKeyCleaner keyCleaner;
+
+    /**
+     * 批量读写redis 集群模式下按slot分组并行执行
+     */
+    private RedisBatchExecutor batchExecutor;
+
+    /**
+     * 正在执行valueLoader的key
+     * 同一个jvm内相同的key只有一个线程执行valueLoader，其余线程等待同一个结果
+     */
+    private final ConcurrentMap<Object, CompletableFuture<Object>> loadingFutures = new ConcurrentHashMap<>();
+
+    /**
+     * 是否启用分布式加载租约
+     */
+    private boolean loadLeaseEnable;
+
+    /**
+     * 加载租约的持有时间，单位毫秒
+     */
+    private long loadLeaseTime;
+
+    /**
+     * 未获得租约时等待其他节点加载结果的最长时间，单位毫秒
+     */
+    private long loadLeaseWaitTime;
+
+    /**
+     * 租约持有者标识
+     */
+    private final String leaseOwner = UUID.randomUUID().toString();
+
+    /**
+     * 1级缓存写入后超过该时间，命中时返回当前值并在后台重新加载，单位毫秒，0表示不刷新
+     */
+    private long refreshAfterWrite;
+
+    /**
+     * redis中的数据已经过去的过期时间比例达到该值时，命中时返回当前值并在后台重新加载，0表示不刷新
+     */
+    private double refreshAheadFraction;
+
+    /**
+     * 每个key的valueLoader 用于后台刷新 只有开启了提前刷新时才记录
+     * 只在get(key, valueLoader)执行了加载或者命中的key被选中刷新时记录 命中时不写入
+     */
+    private Cache<Object, Callable<?>> refreshLoaders;
+
+    /**
+     * 当前线程正在执行的get(key, valueLoader)的valueLoader 命中的key被选中刷新而没有记录时使用
+     */
+    private final ThreadLocal<Callable<?>> currentLoader = new ThreadLocal<>();
+
+    /**
+     * 注册的刷新加载器 没有记录到valueLoader的key使用该加载器刷新
+     */
+    private volatile Function<Object, ?> refreshLoader;
+
+    /**
+     * 1级缓存的软过期时间，单位毫秒，超过后命中时返回旧值并在后台重新验证，caffeine的过期时间为硬过期，0表示不开启
+     */
+    private long softExpireAfterWrite;
+
+    /**
+     * 软过期后命中的次数
+     */
+    private final LongAdder staleHitCount = new LongAdder();
+
+    /**
+     * 1级缓存超过该时间后命中时先比较redis中值的摘要，单位毫秒，为expireAfterWrite+staleWhileRevalidate，0表示不开启
+     */
+    private long revalidateAfterWrite;
+
+    /**
+     * 重新验证时redis中的值没有变化的次数
+     */
+    private final LongAdder revalidatedCount = new LongAdder();
+
+    /**
+     * 重新验证时redis中的值已经变化或者不存在的次数
      */
-    private String topic;
+    private final LongAdder revalidateChangedCount = new LongAdder();
+
+    /**
+     * 各级缓存的命中率、redis和valueLoader的耗时、变更通知等监控指标
+     */
+    @Getter
+    private final CacheMetrics metrics = new CacheMetrics();
+
+    /**
+     * 每多少次读写记录一次debug日志，小于等于1时每次都记录
+     */
+    private int traceSampleRate;
+
+    /**
+     * 写入redis的过期时间随机抖动比例，0表示不抖动
+     */
+    private double expireJitter;
+
+    /**
+     * 概率提前过期(XFetch)的系数beta，0表示不开启
+     */
+    private double earlyExpirationBeta;
+
+    /**
+     * 本节点valueLoader加载耗时的指数移动平均值，单位毫秒，用于计算概率提前过期
+     */
+    private volatile double averageLoadTime;
 
     protected ClusterCache(boolean allowNullValues) {
         super(allowNullValues);
     }
 
-    public ClusterCache(String name, RedisTemplate<String, Object> redisTemplate,
-                        Cache<Object, Object> caffeineCache, ClusterCacheProperties clusterCacheProperties) {
-        super(clusterCacheProperties.isCacheNullValues());
+    /**
+     * @param name 缓存的名称
+     * @param caffeineCache 1级缓存
+     * @param cacheManager 上下文容器 提供redis客户端、配置和通知发送者
+     */
+    public ClusterCache(String name, Cache<Object, Object> caffeineCache, ClusterCacheManager cacheManager) {
+        super(cacheManager.getClusterCacheProperties().isCacheNullValues());
+        ClusterCacheProperties clusterCacheProperties = cacheManager.getClusterCacheProperties();
         this.name = name;
-        this.redisTemplate = redisTemplate;
+        this.redisTemplate = cacheManager.getRedisTemplate();
+        this.reactiveRedisTemplate = cacheManager.getReactiveRedisTemplate();
+        this.executor = cacheManager.getExecutor();
         this.caffeineCache = caffeineCache;
+        this.publisher = cacheManager.getPublisher();
+        this.keyCleaner = cacheManager.getKeyCleaner();
+        this.batchExecutor = cacheManager.getBatchExecutor();
+        this.circuitBreaker = cacheManager.getCircuitBreaker();
+        this.trackingInvalidator = cacheManager.getTrackingInvalidator();
+        this.traceSampleRate = clusterCacheProperties.getMetrics().getTraceSampleRate();
+        this.pendingSize = clusterCacheProperties.getRedis().getCircuitBreakerPendingSize();
+        this.serveStale = clusterCacheProperties.getRedis().isCircuitBreakerServeStale();
         this.cachePrefix = clusterCacheProperties.getCachePrefix();
         this.defaultExpiration = clusterCacheProperties.getRedis().getDefaultExpiration();
-        this.topic = clusterCacheProperties.getRedis().getTopic();
         defaultExpires.putAll(clusterCacheProperties.getRedis().getExpires());
         this.caffeineEnable = clusterCacheProperties.isCaffeineEnable();
-        this.timestamp = System.currentTimeMillis();
+        this.weighted = caffeineCache != null
+                && caffeineCache.policy().eviction().map(eviction -> eviction.isWeighted()).orElse(false);
+        ClusterCacheProperties.OffHeap offHeap = clusterCacheProperties.getOffHeap();
+        if (this.caffeineEnable && (offHeap.isEnable() || offHeap.getCacheNames().contains(name))) {
+            this.offHeapStore = new OffHeapStore(offHeap.getCapacity(), offHeap.getSegmentSize(), cacheManager.getOffHeapBudget());
+            this.offHeapExpireAfterWrite = TimeUnit.SECONDS.toMillis(offHeap.getExpireAfterWrite());
+        }
+        ClusterCacheProperties.HotKey hotKey = clusterCacheProperties.getHotKey();
+        if (this.caffeineEnable && hotKey.isEnable()) {
+            boolean reportEnable = hotKey.isReportEnable();
+            this.hotKeyDetector = new HotKeyDetector(hotKey.getCapacity(), hotKey.getThreshold(), hotKey.getWindowSize(),
+                    (key, frequency) -> {
+                        logger.info("发现热点key, the key is : {}:{}, 频率:{}", name, key, frequency);
+                        if (reportEnable) {
+                            cacheManager.reportHotKey(name, key, frequency);
+                        }
+                    });
+            this.hotCache = Caffeine.newBuilder()
+                    .maximumSize(hotKey.getCapacity())
+                    .expireAfterWrite(hotKey.getExpireAfterWrite(), TimeUnit.SECONDS)
+                    .build();
+        }
+        this.loadLeaseEnable = clusterCacheProperties.getRedis().isLoadLeaseEnable();
+        this.loadLeaseTime = clusterCacheProperties.getRedis().getLoadLeaseTime();
+        this.loadLeaseWaitTime = clusterCacheProperties.getRedis().getLoadLeaseWaitTime();
+        this.namespaceVersionEnable = clusterCacheProperties.getRedis().isNamespaceVersionEnable();
+        boolean hashTag = clusterCacheProperties.getRedis().isHashTagEnable()
+                || clusterCacheProperties.getRedis().getHashTagCacheNames().contains(name);
+        this.keyEncoder = new CacheKeyEncoder(this.cachePrefix, name, hashTag, this.namespaceVersionEnable);
+        this.keySerializer = (RedisSerializer<String>) redisTemplate.getKeySerializer();
+        this.valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        this.rawKeyEnable = this.keySerializer instanceof StringRedisSerializer;
+        ClusterCacheProperties.CacheDefault cacheConfig = cacheManager.getCacheConfig(name);
+        this.refreshAfterWrite = TimeUnit.SECONDS.toMillis(cacheConfig.getRefreshAfterWrite());
+        this.refreshAheadFraction = clusterCacheProperties.getRedis().getRefreshAheadFraction();
+        Double cacheNameJitter = clusterCacheProperties.getRedis().getExpireJitters().get(name);
+        this.expireJitter = cacheNameJitter == null ? clusterCacheProperties.getRedis().getExpireJitter() : cacheNameJitter;
+        Double cacheNameBeta = clusterCacheProperties.getRedis().getEarlyExpirationBetas().get(name);
+        this.earlyExpirationBeta = cacheNameBeta == null ? clusterCacheProperties.getRedis().getEarlyExpirationBeta() : cacheNameBeta;
+        if (cacheConfig.getStaleWhileRevalidate() > 0) {
+            this.softExpireAfterWrite = TimeUnit.SECONDS.toMillis(cacheConfig.getExpireAfterWrite());
+        }
+        if (cacheManager.getStaleTime() > 0 && cacheConfig.getExpireAfterWrite() > 0) {
+            this.staleAfterWrite = TimeUnit.SECONDS.toMillis(cacheConfig.getExpireAfterWrite()
+                    + cacheConfig.getStaleWhileRevalidate() + cacheConfig.getRevalidateWindow());
+        }
+        if (cacheConfig.getRevalidateWindow() > 0 && cacheConfig.getExpireAfterWrite() > 0) {
+            this.revalidateAfterWrite = TimeUnit.SECONDS.toMillis(cacheConfig.getExpireAfterWrite() + cacheConfig.getStaleWhileRevalidate());
+        }
+        if (isRefreshEnable() || this.softExpireAfterWrite > 0) {
+            this.refreshLoaders = Caffeine.newBuilder()
+                    .maximumSize(REFRESH_LOADER_MAXIMUM_SIZE)
+                    .expireAfterAccess(Math.max(getExpire(), TimeUnit.HOURS.toSeconds(1)), TimeUnit.SECONDS)
+                    .build();
+        }
+        if (this.namespaceVersionEnable) {
+            if (getExpire() <= 0) {
+                logger.warn("缓存{}启用了命名空间版本号但是没有设置过期时间，clear后旧版本的数据不会被淘汰", name);
+            }
+        }
+        this.generationLoaded = !this.namespaceVersionEnable;
+        ClusterCacheProperties.BloomFilter bloom = clusterCacheProperties.getBloomFilter();
+        if (this.caffeineEnable && (bloom.isEnable() || bloom.getCacheNames().contains(name))) {
+            if (cacheManager.isTrackingOnly()) {
+                // 其他节点写入的key不发送变更通知 无法加入布隆过滤器
+                logger.warn("invalidationMode为tracking，缓存{}不使用布隆过滤器", name);
+            } else {
+                // 第一次重建完成之前不排除任何key
+                this.bloomFilter = new CacheBloomFilter(bloom.getExpectedInsertions(), bloom.getFpp());
+            }
+        }
+    }
+
+    /**
+     * 访问redis的初始化 实例放入ClusterCacheManager之后调用 不在构造方法中阻塞其他cache的创建
+     * 读取命名空间版本号失败时在第一次使用key时重新读取
+     */
+    void initialize() {
+        if (!this.generationLoaded) {
+            try {
+                loadGeneration();
+            } catch (RuntimeException e) {
+                logger.warn("读取缓存{}的命名空间版本号失败，第一次使用时重新读取", this.name, e);
+            }
+        }
+        if (bloomFilter != null) {
+            rebuildBloomFilterAsync();
+        }
+    }
+
+    /**
+     * 实例被淘汰或者ClusterCacheManager销毁时释放本节点的资源：1级缓存、堆外缓存（归还共享预算）、布隆过滤器和记录的valueLoader
+     * 不访问redis 之后仍然可以使用 只是需要重新从redis读取
+     */
+    void releaseLocal() {
+        if (this.caffeineEnable) {
+            invalidateLocalAll();
+        }
+        if (offHeapStore != null) {
+            offHeapStore.release();
+        }
+        if (bloomFilter != null) {
+            bloomFilter.release();
+        }
+        if (refreshLoaders != null) {
+            refreshLoaders.invalidateAll();
+        }
     }
 
     @Override
@@ -134,105 +593,540 @@ public class ClusterCache extends AbstractValueAdaptingCache {
      */
     @Override
     public <T> T get(Object key, Callable<T> valueLoader) {
-        Object value = lookup(key);
+        Object value = lookupWithLoader(key, valueLoader);
         if (value != null) {
-            return (T) value;
+            return (T) fromStoreValue(value);
         }
         /**
          * key在redis和缓存中均不存在
-         * 防止并发 添加重复了
+         * 同一个key只有一个线程执行valueLoader，其余线程等待该线程的加载结果
          */
-
-        ReentrantLock lock = new ReentrantLock();
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> loading = loadingFutures.putIfAbsent(key, future);
+        if (loading != null) {
+            value = awaitLoading(key, valueLoader, loading);
+            // 为null说明是被放弃的后台刷新 重新获取
+            return value != null ? (T) fromStoreValue(value) : get(key, valueLoader);
+        }
         try {
-            lock.lock();
             value = lookup(key);
-            if (value != null) {
-                return (T) value;
+            if (value == null) {
+                value = loadWithLease(key, valueLoader);
+                if (refreshLoaders != null) {
+                    refreshLoaders.put(key, valueLoader);
+                }
             }
-            //执行原方法获得value
-            value = valueLoader.call();
-            Object storeValue = toStoreValue(value);
-            put(key, storeValue);
-            return (T) value;
+            future.complete(value);
+            return (T) fromStoreValue(value);
         } catch (Exception e) {
-            throw new ValueRetrievalException(key, valueLoader, e.getCause());
+            future.completeExceptionally(e);
+            throw new ValueRetrievalException(key, valueLoader, e);
         } finally {
-            lock.unlock();
+            loadingFutures.remove(key, future);
         }
     }
 
     /**
-     * 不会往caffeine中放 只有在调用get方法时才会向caffeine中放
-     * @Author shishuai
-     * @Date 2021/11/19
-     * @description
-     * @param key
-     * @param value
-     * @return
+     * get(key, valueLoader)的第一次取值 使用布隆过滤器 期间选中刷新的key使用valueLoader刷新
      */
-    @Override
-    public void put(Object key, Object value) {
-        if (!super.isAllowNullValues() && value == null) {
-            this.evict(key);
-            return;
+    private Object lookupWithLoader(Object key, Callable<?> valueLoader) {
+        if (refreshLoaders == null) {
+            return lookup(key, true);
         }
-        long expire = getExpire();
-        logger.info("put：{},expire:{}", getKey(key), expire);
-        redisTemplate.opsForValue().set(getKey(key), toStoreValue(value), expire, TimeUnit.SECONDS);
-
-        //缓存变更时通知其他节点清理本地缓存
+        currentLoader.set(valueLoader);
+        try {
+            return lookup(key, true);
+        } finally {
+            currentLoader.remove();
+        }
+    }
 
-        push(new CacheMessage(this.name, key));
-        //此处put没有意义，会收到自己发送的缓存key失效消息
-//        caffeineCache.put(key, value);
+    /**
+     * 注册刷新加载器
+     * 开启提前刷新后，没有通过get(key, valueLoader)记录到valueLoader的key使用该加载器在后台重新加载
+     * @param refreshLoader 根据 具体 cache中的key 加载值
+     */
+    public void setRefreshLoader(Function<Object, ?> refreshLoader) {
+        this.refreshLoader = refreshLoader;
     }
 
-    @Override
-    public ValueWrapper putIfAbsent(Object key, Object value) {
-        Object cacheKey = getKey(key);
-        // 使用setIfAbsent原子性操作
-        long expire = getExpire();
-        boolean setSuccess;
-        setSuccess = redisTemplate.opsForValue().setIfAbsent(getKey(key), toStoreValue(value), Duration.ofSeconds(expire));
+    //————————————————————————————异步接口——————————————————————————
+    // 返回的future可能在redis客户端的io线程上完成，后续的耗时操作请使用 thenXxxAsync 切换线程
 
-        Object hasValue;
-        //setNx结果
-        if (setSuccess) {
-            push(new CacheMessage(this.name, key));
-            hasValue = value;
-        }else {
-            hasValue = redisTemplate.opsForValue().get(cacheKey);
-        }
-        if (this.caffeineEnable) {
-            caffeineCache.put(key, toStoreValue(value));
-        }
-        return toValueWrapper(hasValue);
+    /**
+     * 异步获取
+     * @param key 具体 cache中的key
+     * @return {@link CompletableFuture} 值 不存在时为null
+     */
+    public CompletableFuture<Object> getAsync(Object key) {
+        return lookupAsync(key).thenApply(this::fromStoreValue);
     }
 
-    @Override
-    public void evict(Object key) {
-        // 先清除redis中缓存数据，然后清除caffeine中的缓存，避免短时间内如果先清除caffeine缓存后其他请求会再从redis里加载到caffeine中
-        redisTemplate.delete(getKey(key));
-        if (this.caffeineEnable) {
-            push(new CacheMessage(this.name, key));
-            caffeineCache.invalidate(key);
-        }
-
+    /**
+     * 异步获取 不存在时执行asyncLoader并写入缓存
+     * 同一个jvm内相同key的并发加载（包括同步的get(key, valueLoader)）共用一个future
+     * @param key 具体 cache中的key
+     * @param asyncLoader 异步加载
+     * @return {@link CompletableFuture}
+     */
+    public <T> CompletableFuture<T> getAsync(Object key, Supplier<? extends CompletionStage<T>> asyncLoader) {
+        return lookupOrLoadAsync(key, asyncLoader).thenApply(value -> (T) fromStoreValue(value));
     }
 
-    @Override
-    public void clear() {
+    /**
+     * 异步取值 不存在时执行asyncLoader并写入缓存
+     * @return {@link CompletableFuture} 存储值
+     */
+    private <T> CompletableFuture<Object> lookupOrLoadAsync(Object key, Supplier<? extends CompletionStage<T>> asyncLoader) {
+        return lookupAsync(key).thenCompose(value -> {
+            if (value != null) {
+                return CompletableFuture.completedFuture(value);
+            }
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            CompletableFuture<Object> loading = loadingFutures.putIfAbsent(key, future);
+            if (loading != null) {
+                // 为null说明是被放弃的后台刷新或者其他节点持有租约 重新获取
+                return loading.thenCompose(joined -> joined != null
+                        ? CompletableFuture.completedFuture(joined) : lookupOrLoadAsync(key, asyncLoader));
+            }
+            CompletionStage<T> stage;
+            long start = System.nanoTime();
+            try {
+                stage = asyncLoader.get();
+            } catch (Exception e) {
+                loadingFutures.remove(key, future);
+                future.completeExceptionally(e);
+                return future;
+            }
+            stage.thenCompose(loaded -> {
+                recordLoadTime(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                Object storeValue = toStoreValue(loaded);
+                return putStoreValueAsync(key, storeValue).thenApply(v -> storeValue);
+            }).whenComplete((storeValue, e) -> {
+                loadingFutures.remove(key, future);
+                if (e != null) {
+                    future.completeExceptionally(e);
+                } else {
+                    future.complete(storeValue);
+                }
+            });
+            return future;
+        });
+    }
+
+    /**
+     * 异步写入
+     * @param key 具体 cache中的key
+     * @param value
+     * @return {@link CompletableFuture} redis写入完成
+     */
+    public CompletableFuture<Void> putAsync(Object key, Object value) {
+        if (!super.isAllowNullValues() && value == null) {
+            return evictAsync(key);
+        }
+        return putStoreValueAsync(key, toStoreValue(value));
+    }
+
+    /**
+     * 异步删除
+     * @param key 具体 cache中的key
+     * @return {@link CompletableFuture} redis删除完成
+     */
+    public CompletableFuture<Void> evictAsync(Object key) {
+        if (!redisPermitted()) {
+            putLocalOnly(key, null);
+            return CompletableFuture.completedFuture(null);
+        }
+        String cacheKey = getKey(key);
+        long start = System.nanoTime();
+        CompletableFuture<?> delete;
+        if (reactiveRedisTemplate == null) {
+            delete = supplyAsync(() -> redisTemplate.delete(cacheKey));
+        } else {
+            delete = reactiveRedisTemplate.delete(cacheKey).toFuture();
+        }
+        return redisAsync(delete, start, null).thenRun(() -> {
+            if (this.caffeineEnable) {
+                push(new CacheMessage(this.name, key));
+                invalidateLocal(key);
+            }
+        });
+    }
+
+    /**
+     * 批量获取
+     * 先从caffeine中取，剩余的key批量MGET从redis中取（集群模式下按slot分组），仍然没有的key交给bulkLoader加载并批量写回
+     * @param keys 具体 cache中的key
+     * @param bulkLoader 批量加载不存在的key 返回结果中没有的key视为null
+     * @return {@link Map} 存在的key和值 值为null的key不包含在结果中
+     */
+    public <K, V> Map<K, V> getAll(Collection<? extends K> keys, Function<Set<K>, Map<K, V>> bulkLoader) {
+        Map<K, V> result = new LinkedHashMap<>(keys.size() * 4 / 3 + 1);
+        Set<K> missing = new LinkedHashSet<>();
+        for (K key : keys) {
+            Object value = getLocal(key);
+            if (this.caffeineEnable) {
+                metrics.recordL1(value != null);
+            }
+            if (value == null) {
+                missing.add(key);
+            } else {
+                putResult(result, key, value);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+        // 一次MGET已经包含了所有的key 不使用布隆过滤器 其他节点刚写入的key的通知可能还没有到达
+        List<K> remoteKeys = new ArrayList<>(missing);
+        List<byte[]> rawKeys = new ArrayList<>(missing.size());
+        for (K key : missing) {
+            rawKeys.add(rawKey(key));
+        }
+        List<byte[]> values = rawKeys.isEmpty() || !redisPermitted() ? null : redis(metrics.getRedisBatchGet(), () -> batchExecutor.mGet(rawKeys));
+        if (values != null) {
+            Iterator<K> iterator = remoteKeys.iterator();
+            for (byte[] rawValue : values) {
+                K key = iterator.next();
+                Object value = deserialize(rawValue);
+                metrics.recordL2(value != null);
+                if (value != null) {
+                    putLocal(key, value, 0, rawValue);
+                    putResult(result, key, value);
+                    missing.remove(key);
+                }
+            }
+        }
+        if (missing.isEmpty() || bulkLoader == null) {
+            return result;
+        }
+        Map<K, V> loaded = bulkLoader.apply(missing);
+        Map<Object, Object> toStore = new LinkedHashMap<>(missing.size() * 4 / 3 + 1);
+        for (K key : missing) {
+            V value = loaded == null ? null : loaded.get(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+            toStore.put(key, value);
+        }
+        putAll(toStore);
+        return result;
+    }
+
+    /**
+     * 批量写入
+     * 批量写入redis（SET带过期时间，集群模式下各节点并行），写入本地caffeine，变更通知合并为一次发送
+     * @param entries 具体 cache中的key和值
+     */
+    public void putAll(Map<?, ?> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        if (!redisPermitted()) {
+            for (Map.Entry<?, ?> entry : entries.entrySet()) {
+                putLocalOnly(entry.getKey(), entry.getValue() == null && !isAllowNullValues() ? null : toStoreValue(entry.getValue()));
+            }
+            return;
+        }
+        // 每个key单独抖动过期时间 避免同一批写入的key同时过期
+        Map<Object, Long> expires = new HashMap<>(entries.size() * 2);
+        for (Object key : entries.keySet()) {
+            expires.put(key, getWriteExpire());
+        }
+        List<byte[]> deleteKeys = new ArrayList<>();
+        List<byte[]> setKeys = new ArrayList<>(entries.size());
+        List<byte[]> setValues = new ArrayList<>(entries.size());
+        long[] setExpires = new long[entries.size()];
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            byte[] rawKey = rawKey(entry.getKey());
+            if (entry.getValue() == null && !isAllowNullValues()) {
+                deleteKeys.add(rawKey);
+                continue;
+            }
+            setExpires[setKeys.size()] = expires.get(entry.getKey());
+            beforeWrite(entry.getKey());
+            setKeys.add(rawKey);
+            setValues.add(valueSerializer.serialize(toStoreValue(entry.getValue())));
+        }
+        if (this.caffeineEnable) {
+            // 先写1级缓存再写redis 其他节点在这之后写入同一个key的变更通知会清除这里写入的值
+            int index = 0;
+            for (Map.Entry<?, ?> entry : entries.entrySet()) {
+                if (entry.getValue() != null || isAllowNullValues()) {
+                    putLocal(entry.getKey(), toStoreValue(entry.getValue()), toExpireAt(expires.get(entry.getKey())),
+                            setValues.get(index++));
+                }
+            }
+        }
+        try {
+            redis(metrics.getRedisBatchSet(), () -> {
+                batchExecutor.set(setKeys, setValues, setExpires);
+                return batchExecutor.del(deleteKeys);
+            });
+        } catch (RuntimeException e) {
+            entries.keySet().forEach(this::writeFailed);
+            throw e;
+        }
+        if (shouldTrace()) {
+            logger.debug("putAll：{}个, expire:{}", entries.size(), getExpire());
+        }
+        if (!this.caffeineEnable) {
+            return;
+        }
+        List<CacheMessage> messages = new ArrayList<>(entries.size());
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            if (entry.getValue() == null && !isAllowNullValues()) {
+                invalidateLocal(entry.getKey());
+            } else {
+                markExists(entry.getKey());
+            }
+            messages.add(new CacheMessage(this.name, entry.getKey()));
+        }
+        metrics.recordInvalidationsSent(messages.size());
+        publisher.publish(messages);
+    }
+
+    /**
+     * 写入redis的同时写入本地caffeine 自己发送的变更通知会被本节点忽略 不会清掉刚写入的值
+     * @Author shishuai
+     * @Date 2021/11/19
+     * @description
+     * @param key
+     * @param value
+     * @return
+     */
+    @Override
+    public void put(Object key, Object value) {
+        if (!super.isAllowNullValues() && value == null) {
+            this.evict(key);
+            return;
+        }
+        long expire = getWriteExpire();
+        if (shouldTrace()) {
+            logger.debug("put：{}:{},expire:{}", this.name, key, expire);
+        }
+        Object storeValue = toStoreValue(value);
+        if (!redisPermitted()) {
+            putLocalOnly(key, storeValue);
+            return;
+        }
+        byte[] rawValue = valueSerializer.serialize(storeValue);
+        beforeWrite(key);
+        // 先写1级缓存再写redis 其他节点在这之后写入同一个key的变更通知会清除这里写入的值
+        putLocal(key, storeValue, toExpireAt(expire), rawValue);
+        try {
+            redisSet(key, rawValue, expire, RedisStringCommands.SetOption.upsert());
+        } catch (RuntimeException e) {
+            writeFailed(key);
+            throw e;
+        }
+        markExists(key);
+
+        //缓存变更时通知其他节点清理本地缓存
+
+        push(new CacheMessage(this.name, key));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        // 使用setIfAbsent原子性操作
+        long expire = getWriteExpire();
+        Object storeValue = toStoreValue(value);
+        if (!redisPermitted()) {
+            // 熔断期间只能判断1级缓存中是否存在
+            LocalValue local = this.caffeineEnable ? getLocalValue(key) : null;
+            if (local != null) {
+                return toValueWrapper(local.getValue());
+            }
+            putLocalOnly(key, storeValue);
+            return toValueWrapper(value);
+        }
+        byte[] rawValue = valueSerializer.serialize(storeValue);
+        Boolean setSuccess = redisSet(key, rawValue, expire, RedisStringCommands.SetOption.ifAbsent());
+
+        Object hasValue;
+        markExists(key);
+        //setNx结果
+        if (Boolean.TRUE.equals(setSuccess)) {
+            push(new CacheMessage(this.name, key));
+            hasValue = value;
+            // 写入之后再放入1级缓存可能覆盖其他节点随后的变更 只清除 下次读取时从redis加载
+            invalidateLocal(key);
+        }else {
+            byte[] existing = redisGetRaw(key);
+            hasValue = deserialize(existing);
+            putLocal(key, hasValue, 0, existing);
+        }
+        return toValueWrapper(hasValue);
+    }
+
+    @Override
+    public void evict(Object key) {
         // 先清除redis中缓存数据，然后清除caffeine中的缓存，避免短时间内如果先清除caffeine缓存后其他请求会再从redis里加载到caffeine中
-        Set<String> keys = redisTemplate.keys(this.name.concat(":*"));
-        for (String key : keys) {
-            redisTemplate.delete(key);
+        if (!redisPermitted()) {
+            putLocalOnly(key, null);
+            return;
+        }
+        byte[] rawKey = rawKey(key);
+        redis(() -> redisTemplate.execute((RedisCallback<Long>) connection -> connection.del(rawKey)));
+        if (this.caffeineEnable) {
+            push(new CacheMessage(this.name, key));
+            invalidateLocal(key);
+        }
+
+    }
+
+    /**
+     * redis中的数据在后台线程通过SCAN分批删除，不阻塞调用线程
+     * 本地缓存先立即清除，redis删除完成后再清除一次并通知其他节点，避免其他节点从redis里重新加载到旧数据
+     */
+    @Override
+    public void clear() {
+        if (!redisPermitted()) {
+            clearLocalOnly();
+            return;
+        }
+        if (this.namespaceVersionEnable) {
+            nextGeneration();
+            return;
+        }
+        if (this.caffeineEnable) {
+            invalidateLocalAll();
+        }
+        redisBulkAsync(clearRedisAsync()).whenComplete((deleted, e) -> {
+            if (e != null) {
+                logger.error("清除redis缓存数据失败, the cache name is : {}", this.name, e);
+            }
+            if (this.caffeineEnable) {
+                push(new CacheMessage(this.name, null));
+                invalidateLocalAll();
+            }
+        });
+    }
+
+    /**
+     * 与clear相同 但是等待redis中的数据删除完成后才返回
+     */
+    @Override
+    public boolean invalidate() {
+        if (!redisPermitted()) {
+            clearLocalOnly();
+            return false;
+        }
+        if (this.namespaceVersionEnable) {
+            nextGeneration();
+            return true;
+        }
+        if (this.caffeineEnable) {
+            invalidateLocalAll();
         }
+        long deleted = redisBulk(() -> keyCleaner.deleteByPrefix(getKey("")));
         if (this.caffeineEnable) {
             push(new CacheMessage(this.name, null));
-            caffeineCache.invalidateAll();
+            invalidateLocalAll();
+        }
+        return deleted > 0;
+    }
+
+    /**
+     * 版本号加1并通知其他节点 旧版本的key不再被访问
+     */
+    private void nextGeneration() {
+        String local = String.valueOf(generation.get());
+        List<Object> result = redis(() -> (List<Object>) redisTemplate.execute(NEXT_GENERATION_SCRIPT, RedisSerializer.string(),
+                (RedisSerializer) RedisSerializer.string(), Collections.singletonList(getGenerationKey()), local));
+        if (result != null && !result.isEmpty()) {
+            updateGeneration(((Number) result.get(0)).longValue());
+            this.generationLoaded = true;
+            if (result.size() > 1 && ((Number) result.get(1)).longValue() == 1) {
+                logger.warn("缓存{}在redis中的命名空间版本号丢失，以本地的版本号{}为准重新写入", this.name, local);
+            }
+        }
+        logger.info("缓存{}的命名空间版本号更新为{}", this.name, generation.get());
+        if (this.caffeineEnable) {
+            invalidateLocalAll();
+        }
+        // 版本号决定了redis key 不论是否启用1级缓存都需要通知其他节点
+        CacheMessage message = new CacheMessage(this.name, null);
+        message.setGeneration(generation.get());
+        metrics.recordInvalidationsSent(1);
+        publisher.publish(message);
+    }
+
+    /**
+     * 收到其他节点的版本号变更 版本号只增不减
+     * @param newGeneration 新的版本号
+     */
+    public void updateGeneration(long newGeneration) {
+        generation.accumulateAndGet(newGeneration, Math::max);
+    }
+
+    /**
+     * 丢失了其他节点的变更通知 重新读取命名空间版本号并清除1级缓存
+     */
+    public void resyncLocal() {
+        if (this.namespaceVersionEnable) {
+            refreshGeneration();
+        }
+        clearLocal(null);
+        if (bloomFilter != null) {
+            bloomFilter.suspend();
+            rebuildBloomFilterAsync();
+        }
+    }
+
+    /**
+     * 定期与redis同步命名空间版本号 topic模式下丢失的清除通知无法得知 版本号落后时清除1级缓存
+     */
+    public void syncGeneration() {
+        if (!this.namespaceVersionEnable || !redisPermitted()) {
+            return;
         }
+        long local = generation.get();
+        refreshGeneration();
+        if (generation.get() != local) {
+            logger.warn("缓存{}的命名空间版本号落后于redis，从{}更新为{}，清除本地缓存", this.name, local, generation.get());
+            clearLocal(null);
+        }
+    }
+
+    /**
+     * 从redis读取命名空间版本号 redis中的版本号丢失或者小于本地的版本号时以本地的为准重新写入
+     */
+    private void refreshGeneration() {
+        String local = String.valueOf(generation.get());
+        Long current = redis(() -> redisTemplate.execute(SYNC_GENERATION_SCRIPT, RedisSerializer.string(),
+                (RedisSerializer) RedisSerializer.string(), Collections.singletonList(getGenerationKey()), local));
+        if (current != null) {
+            updateGeneration(current);
+            this.generationLoaded = true;
+        }
+    }
+
+    /**
+     * 构造之后第一次使用key时从redis读取命名空间版本号 读取失败时抛出异常 避免读写旧版本的key
+     */
+    private long currentGeneration() {
+        if (!this.generationLoaded) {
+            loadGeneration();
+        }
+        return generation.get();
+    }
+
+    private void loadGeneration() {
+        synchronized (generation) {
+            if (!this.generationLoaded) {
+                refreshGeneration();
+            }
+        }
+    }
 
+    /**
+     * 在后台线程删除redis中该缓存的所有数据
+     * @return {@link CompletableFuture} 删除的key个数
+     */
+    private CompletableFuture<Long> clearRedisAsync() {
+        return keyCleaner.deleteByPrefixAsync(getKey(""));
     }
 
     /**
@@ -242,36 +1136,65 @@ public class ClusterCache extends AbstractValueAdaptingCache {
      */
     @Override
     protected Object lookup(Object key) {
-        Object cacheKey = getKey(key);
-        Object value = null;
+        return lookup(key, false);
+    }
+
+    /**
+     * @param bloomCheck 1级缓存未命中时是否先使用布隆过滤器 只用于get(key, valueLoader)的第一次取值
+     *                   判断一定不存在时不访问redis 返回null后由加载前的再次取值确认 其他节点刚写入的key不会被漏掉
+     */
+    private Object lookup(Object key, boolean bloomCheck) {
         if (this.caffeineEnable) {
-            value = caffeineCache.getIfPresent(key);
-            if (value != null) {
-                logger.info("从本地缓存中获得key, the key is : {}", cacheKey);
-                return value;
+            LocalValue local = revalidateIfExpired(key, getLocalValue(key));
+            if (local == REVALIDATED_MISSING) {
+                metrics.recordL1(false);
+                metrics.recordL2(false);
+                return null;
+            }
+            metrics.recordL1(local != null);
+            if (local != null) {
+                if (shouldTrace()) {
+                    logger.debug("从本地缓存中获得key, the key is : {}:{}", this.name, key);
+                }
+                revalidateIfStale(key, local);
+                refreshIfNecessary(key, local.getWriteTime(), local.getExpireAt());
+                return local.getValue();
             }
         }
-        value = redisTemplate.opsForValue().get(cacheKey);
-        if (this.caffeineEnable) {
-            if (value != null ) {
-                if (value instanceof JSONObject) {
-                    if (((JSONObject) value).size()>0){
-                        logger.info("从redis中获得值，将值放到本地缓存中, the key is : {}", cacheKey);
-                        caffeineCache.put(key, value);
-                    }
-                }else if (value instanceof JSONArray) {
-                    if (((JSONArray) value).size()>0){
-                        logger.info("从redis中获得值，将值放到本地缓存中, the key is : {}", cacheKey);
-                        caffeineCache.put(key, value);
-                    }
-                }else {
-                    logger.info("从redis中获得值，将值放到本地缓存中, the key is : {}", cacheKey);
-                    caffeineCache.put(key, value);
+        if (bloomCheck && bloomFilter != null && !bloomFilter.mightContain(key)) {
+            return null;
+        }
+        if (!redisPermitted()) {
+            // 熔断期间1级缓存中没有的key视为不存在 get(key, valueLoader)直接执行valueLoader
+            return null;
+        }
+        Object value;
+        long expireAt = 0;
+        byte[] rawValue = null;
+        if (this.refreshAheadFraction > 0 || this.earlyExpirationBeta > 0) {
+            List<Object> result = redis(metrics.getRedisGet(), () -> (List<Object>) redisTemplate.execute(GET_WITH_TTL_SCRIPT, valueSerializer,
+                    (RedisSerializer) valueSerializer, Collections.singletonList(getKey(key))));
+            value = result == null ? null : result.get(0);
+            Object ttl = result == null ? null : result.get(1);
+            if (ttl instanceof Number && ((Number) ttl).longValue() > 0) {
+                expireAt = System.currentTimeMillis() + ((Number) ttl).longValue();
+            }
+        } else {
+            rawValue = redisGetRaw(key);
+            value = deserialize(rawValue);
+        }
+        if (value != null) {
+            if (this.caffeineEnable) {
+                if (shouldTrace()) {
+                    logger.debug("从redis中获得值，将值放到本地缓存中, the key is : {}:{}", this.name, key);
                 }
-
+                putLocal(key, value, expireAt, rawValue);
             }
+            refreshIfNecessary(key, 0, expireAt);
+        } else if (bloomCheck) {
+            onBloomFilterMiss();
         }
-
+        metrics.recordL2(value != null);
         return value;
     }
 
@@ -281,45 +1204,1084 @@ public class ClusterCache extends AbstractValueAdaptingCache {
      * @description 清理本地缓存
      */
     public void clearLocal(Object key) {
-        logger.info("clear local cache, the key is : {}", key);
+        if (shouldTrace()) {
+            logger.debug("clear local cache, the key is : {}", key);
+        }
         if (!this.caffeineEnable) {
             return;
         }
         if (key == null) {
-            caffeineCache.invalidateAll();
+            invalidateLocalAll();
         } else {
-            caffeineCache.invalidate(key);
+            invalidateLocal(key);
+            // 其他节点写入或删除了该key 删除不影响过滤器的正确性 一律视为可能存在
+            markExists(key);
         }
     }
 
-    //————————————————————————————私有方法——————————————————————————
+    /**
+     * redis推送的key变更（CLIENT TRACKING）
+     * 1级缓存的key是原始对象 推送的是 前缀:key.toString() 按常见key类型还原后清除 其他类型遍历1级缓存匹配
+     * @param redisKey 完整的redis key
+     * @return 是否属于当前cache 其他版本号的key不属于
+     */
+    boolean clearLocalByRedisKey(String redisKey) {
+        String prefix = keyEncoder.getPrefix(generation.get());
+        if (!redisKey.startsWith(prefix)) {
+            return false;
+        }
+        if (!this.caffeineEnable) {
+            return true;
+        }
+        String text = redisKey.substring(prefix.length());
+        if (shouldTrace()) {
+            logger.debug("redis推送key变更, clear local cache, the key is : {}", text);
+        }
+        invalidateLocal(text);
+        if (isNumeric(text)) {
+            try {
+                long number = Long.parseLong(text);
+                invalidateLocal(number);
+                if (number == (int) number) {
+                    invalidateLocal((int) number);
+                }
+            } catch (NumberFormatException e) {
+                // 超出long的范围 不可能是Long或Integer
+            }
+        }
+        if (text.length() == 36) {
+            try {
+                invalidateLocal(UUID.fromString(text));
+            } catch (IllegalArgumentException e) {
+                // 不是UUID
+            }
+        }
+        if (complexKeys) {
+            for (Object key : caffeineCache.asMap().keySet()) {
+                if (!isSimpleKey(key) && text.equals(key.toString())) {
+                    invalidateLocal(key);
+                }
+            }
+        }
+        markExists(text);
+        return true;
+    }
 
     /**
-     * 换取缓存的key
-     * @Author shishuai
-     * @Date 2021/11/17
-     * @description
-     * @param key 具体 cache中的key
-     * @return {@link Object}
+     * 当前识别出的热点key 未开启热点key识别时为空
      */
-    private String getKey(Object key) {
-        String keyStr = this.name.concat(":").concat(key.toString());
-        return StringUtils.isEmpty(this.cachePrefix) ? keyStr : this.cachePrefix.concat(":").concat(keyStr);
+    public Set<Object> getHotKeys() {
+        return hotKeyDetector == null ? Collections.emptySet() : hotKeyDetector.getHotKeys();
     }
 
-    private long getExpire() {
-        long expire = defaultExpiration;
-        Long cacheNameExpire = defaultExpires.get(this.name);
-        return cacheNameExpire == null ? expire : cacheNameExpire.longValue();
+    /**
+     * 布隆过滤器的统计信息 未开启时为null
+     */
+    public Map<String, Object> getBloomFilterStats() {
+        return bloomFilter == null ? null : bloomFilter.getStats();
     }
 
     /**
-     * @description 缓存变更时通知其他节点清理本地缓存
+     * 1级缓存软过期后命中的次数
      */
-    private void push(CacheMessage message) {
+    public long getStaleHitCount() {
+        return staleHitCount.sum();
+    }
+
+    /**
+     * 1级缓存重新验证时redis中的值没有变化的次数
+     */
+    public long getRevalidatedCount() {
+        return revalidatedCount.sum();
+    }
+
+    /**
+     * 1级缓存重新验证时redis中的值已经变化或者不存在的次数
+     */
+    public long getRevalidateChangedCount() {
+        return revalidateChangedCount.sum();
+    }
+
+    /**
+     * 熔断期间记录的待删除key个数
+     */
+    public int getPendingInvalidationCount() {
+        return pendingInvalidations.size();
+    }
+
+    /**
+     * redis恢复后删除熔断期间在本地写入或删除的key 并通知其他节点清除1级缓存
+     * 记录的key超过上限或者熔断期间执行过clear时清除整个cache
+     */
+    public void flushPendingInvalidations() {
+        if (pendingClear) {
+            pendingClear = false;
+            pendingInvalidations.clear();
+            logger.warn("熔断期间的变更无法逐个恢复，清除整个缓存, the cache name is : {}", this.name);
+            clear();
+            return;
+        }
+        if (pendingInvalidations.isEmpty()) {
+            return;
+        }
+        List<Object> keys = new ArrayList<>(pendingInvalidations);
+        List<byte[]> rawKeys = new ArrayList<>(keys.size());
+        List<CacheMessage> messages = new ArrayList<>(keys.size());
+        for (Object key : keys) {
+            rawKeys.add(rawKey(key));
+            messages.add(new CacheMessage(this.name, key));
+        }
+        redis(() -> batchExecutor.del(rawKeys));
+        pendingInvalidations.removeAll(keys);
         if (this.caffeineEnable) {
-            logger.info("----开始发送缓存变更时通知其他节点清理本地缓存---{}--{}",message.getCacheName(),message.getKey());
-            redisTemplate.convertAndSend(topic, message);
+            metrics.recordInvalidationsSent(messages.size());
+            publisher.publish(messages);
+        }
+        logger.info("删除熔断期间变更的key, the cache name is : {}, 共{}个", this.name, keys.size());
+    }
+
+    /**
+     * 在后台线程通过SCAN重建布隆过滤器 清掉已经删除、过期和旧版本的key
+     * 重建期间的写入同时加入新旧两个过滤器 完成后替换
+     * @return {@link CompletableFuture} 遍历到的key个数 未开启或者已经在重建时为0
+     */
+    public CompletableFuture<Long> rebuildBloomFilterAsync() {
+        if (bloomFilter == null || !bloomFilter.startRebuild()) {
+            return CompletableFuture.completedFuture(0L);
+        }
+        try {
+            return CompletableFuture.supplyAsync(this::rebuildBloomFilter, executor);
+        } catch (RejectedExecutionException e) {
+            bloomFilter.finishRebuild(false);
+            logger.warn("后台线程池已满，放弃重建布隆过滤器, the cache name is : {}", this.name);
+            return CompletableFuture.completedFuture(0L);
+        }
+    }
+
+    private long rebuildBloomFilter() {
+        String prefix = getKey("");
+        long[] count = new long[1];
+        boolean success = false;
+        try {
+            keyCleaner.forEachKey(prefix, rawKey -> {
+                String cacheKey = keySerializer.deserialize(rawKey);
+                if (cacheKey != null && cacheKey.startsWith(prefix)) {
+                    bloomFilter.putRebuilt(cacheKey.substring(prefix.length()));
+                    count[0]++;
+                }
+            });
+            success = true;
+            logger.info("重建布隆过滤器, the cache name is : {}, 共{}个key", this.name, count[0]);
+        } catch (RuntimeException e) {
+            logger.error("重建布隆过滤器失败, the cache name is : {}", this.name, e);
+        } finally {
+            bloomFilter.finishRebuild(success);
+        }
+        if (success && !bloomFilter.isReady()) {
+            // 重建期间可能丢失了变更通知
+            rebuildBloomFilterAsync();
+        }
+        return count[0];
+    }
+
+    /**
+     * 可能丢失了其他节点的变更通知 布隆过滤器在之后的重建完成之前不排除任何key
+     */
+    public void suspendBloomFilter() {
+        if (bloomFilter != null) {
+            bloomFilter.suspend();
+        }
+    }
+
+    //————————————————————————————私有方法——————————————————————————
+
+    /**
+     * 异步取值逻辑 先取caffeine 再非阻塞地取redis
+     * @return {@link CompletableFuture} 存储值
+     */
+    private CompletableFuture<Object> lookupAsync(Object key) {
+        // 过期的值已经获取了熔断许可 取redis时不再重复获取
+        boolean permitted = false;
+        if (this.caffeineEnable) {
+            // 异步取值时重新验证同样是一次阻塞的往返 过期的值按未命中处理 直接非阻塞地取redis
+            LocalValue local = getLocalValue(key);
+            if (expiredForRevalidate(local) && redisPermitted()) {
+                local = null;
+                permitted = true;
+            }
+            metrics.recordL1(local != null);
+            if (local != null) {
+                revalidateIfStale(key, local);
+                refreshIfNecessary(key, local.getWriteTime(), local.getExpireAt());
+                return CompletableFuture.completedFuture(local.getValue());
+            }
+        }
+        if (!permitted && !redisPermitted()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String cacheKey = getKey(key);
+        long start = System.nanoTime();
+        CompletableFuture<Object> future;
+        if (reactiveRedisTemplate == null) {
+            future = supplyAsync(() -> redisTemplate.opsForValue().get(cacheKey));
+        } else {
+            future = reactiveRedisTemplate.opsForValue().get(cacheKey).toFuture();
+        }
+        return redisAsync(future, start, metrics.getRedisGet()).thenApply(value -> {
+            metrics.recordL2(value != null);
+            putLocal(key, value, 0);
+            return value;
+        });
+    }
+
+    /**
+     * 异步写入存储值 写入redis完成后写入caffeine并通知其他节点
+     */
+    private CompletableFuture<Void> putStoreValueAsync(Object key, Object storeValue) {
+        if (!redisPermitted()) {
+            putLocalOnly(key, storeValue);
+            return CompletableFuture.completedFuture(null);
+        }
+        String cacheKey = getKey(key);
+        long expire = getWriteExpire();
+        beforeWrite(key);
+        // 先写1级缓存再写redis 其他节点在这之后写入同一个key的变更通知会清除这里写入的值
+        putLocal(key, storeValue, toExpireAt(expire));
+        long start = System.nanoTime();
+        CompletableFuture<?> write;
+        if (reactiveRedisTemplate == null) {
+            write = supplyAsync(() -> {
+                if (expire > 0) {
+                    redisTemplate.opsForValue().set(cacheKey, storeValue, expire, TimeUnit.MILLISECONDS);
+                } else {
+                    redisTemplate.opsForValue().set(cacheKey, storeValue);
+                }
+                return null;
+            });
+        } else if (expire > 0) {
+            write = reactiveRedisTemplate.opsForValue().set(cacheKey, storeValue, Duration.ofMillis(expire)).toFuture();
+        } else {
+            write = reactiveRedisTemplate.opsForValue().set(cacheKey, storeValue).toFuture();
+        }
+        return redisAsync(write, start, metrics.getRedisSet()).whenComplete((v, e) -> {
+            if (e != null) {
+                writeFailed(key);
+            }
+        }).thenRun(() -> {
+            markExists(key);
+            push(new CacheMessage(this.name, key));
+        });
+    }
+
+    /**
+     * 存储值转换后放入结果 缓存的null值不放入
+     */
+    private <K, V> void putResult(Map<K, V> result, K key, Object storeValue) {
+        Object value = fromStoreValue(storeValue);
+        if (value != null) {
+            result.put(key, (V) value);
+        }
+    }
+
+    /**
+     * 开启debug日志时按traceSampleRate抽样 读写的热点路径上不记录每一次操作
+     */
+    private boolean shouldTrace() {
+        return logger.isDebugEnabled()
+                && (this.traceSampleRate <= 1 || ThreadLocalRandom.current().nextInt(this.traceSampleRate) == 0);
+    }
+
+    /**
+     * 熔断器是否允许访问redis 未开启熔断时总是允许
+     */
+    private boolean redisPermitted() {
+        return circuitBreaker == null || circuitBreaker.tryAcquirePermission();
+    }
+
+    /**
+     * 熔断器是否处于打开或者半开状态 只查看状态 不占用半开状态的试探许可
+     */
+    private boolean redisDegraded() {
+        return circuitBreaker != null && circuitBreaker.getState() != RedisCircuitBreaker.State.CLOSED;
+    }
+
+    /**
+     * 访问redis 向熔断器报告结果和耗时
+     */
+    private <T> T redis(Supplier<T> call) {
+        return redis(null, call);
+    }
+
+    /**
+     * 访问redis 向熔断器报告结果和耗时 并记录到latency
+     * @param latency 耗时指标 为null时不记录
+     */
+    private <T> T redis(CacheMetrics.Latency latency, Supplier<T> call) {
+        if (circuitBreaker == null && latency == null) {
+            return call.get();
+        }
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            recordRedis(latency, start, null);
+            return result;
+        } catch (RuntimeException e) {
+            recordRedis(latency, start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 在后台线程池中执行同步调用 线程池已满时返回以RejectedExecutionException异常完成的future 不占用调用线程
+     */
+    private <T> CompletableFuture<T> supplyAsync(Supplier<T> call) {
+        try {
+            return CompletableFuture.supplyAsync(call, executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * 异步访问redis完成后向熔断器报告结果和耗时 并记录到latency
+     * @param start 发出请求的时间，单位纳秒
+     */
+    private <T> CompletableFuture<T> redisAsync(CompletableFuture<T> future, long start, CacheMetrics.Latency latency) {
+        return future.whenComplete((result, e) -> recordRedis(latency, start, e));
+    }
+
+    /**
+     * SCAN分批删除等批量操作 只向熔断器报告结果 整体耗时与redis是否变慢无关 不计入慢调用
+     */
+    private <T> T redisBulk(Supplier<T> call) {
+        try {
+            T result = call.get();
+            recordRedis(null, System.nanoTime(), null);
+            return result;
+        } catch (RuntimeException e) {
+            recordRedis(null, System.nanoTime(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * 异步的批量操作完成后只向熔断器报告结果
+     */
+    private <T> CompletableFuture<T> redisBulkAsync(CompletableFuture<T> future) {
+        return future.whenComplete((result, e) -> recordRedis(null, System.nanoTime(), e));
+    }
+
+    private void recordRedis(CacheMetrics.Latency latency, long start, Throwable e) {
+        long duration = System.nanoTime() - start;
+        if (latency != null) {
+            latency.record(duration);
+        }
+        if (circuitBreaker == null) {
+            return;
+        }
+        if (e == null) {
+            circuitBreaker.onSuccess(duration);
+        } else {
+            circuitBreaker.onError(duration, e);
+        }
+    }
+
+    /**
+     * 熔断期间只写入1级缓存 redis中的值已经过时 记录下来恢复后删除
+     * @param storeValue 存储值 null表示删除
+     */
+    private void putLocalOnly(Object key, Object storeValue) {
+        if (this.caffeineEnable) {
+            if (storeValue == null) {
+                invalidateLocal(key);
+            } else {
+                putLocal(key, storeValue, 0);
+            }
+        }
+        if (pendingSize <= 0 || pendingClear) {
+            return;
+        }
+        if (pendingInvalidations.size() >= pendingSize) {
+            logger.warn("熔断期间变更的key超过{}个，恢复后清除整个缓存, the cache name is : {}", pendingSize, this.name);
+            pendingClear = true;
+            pendingInvalidations.clear();
+            return;
+        }
+        pendingInvalidations.add(key);
+    }
+
+    /**
+     * 熔断期间只清除1级缓存 恢复后清除redis
+     */
+    private void clearLocalOnly() {
+        if (this.caffeineEnable) {
+            invalidateLocalAll();
+        }
+        if (pendingSize > 0) {
+            pendingClear = true;
+            pendingInvalidations.clear();
+        }
+    }
+
+    /**
+     * 写入redis后加入布隆过滤器
+     */
+    private void markExists(Object key) {
+        if (bloomFilter != null) {
+            bloomFilter.put(key);
+        }
+    }
+
+    /**
+     * 布隆过滤器判断可能存在但是redis中没有 记录误判 估算的误判率过高时在后台重建
+     */
+    private void onBloomFilterMiss() {
+        if (bloomFilter == null) {
+            return;
+        }
+        bloomFilter.recordFalsePositive();
+        if (bloomFilter.needsRebuild(System.currentTimeMillis(), BLOOM_FILTER_REBUILD_INTERVAL)) {
+            rebuildBloomFilterAsync();
+        }
+    }
+
+    /**
+     * 从本地caffeine缓存中取存储值
+     * @param key 具体 cache中的key
+     * @return {@link Object} 存储值 不存在时为null
+     */
+    private Object getLocal(Object key) {
+        if (!this.caffeineEnable) {
+            return null;
+        }
+        LocalValue local = revalidateIfExpired(key, getLocalValue(key));
+        if (local == null || local == REVALIDATED_MISSING) {
+            return null;
+        }
+        revalidateIfStale(key, local);
+        return local.getValue();
+    }
+
+    /**
+     * 放入本地caffeine缓存 空的JSONObject、JSONArray不放入
+     * @param key 具体 cache中的key
+     * @param value 存储值
+     * @param expireAt redis中数据的过期时间戳 0表示未知或者不过期
+     */
+    private void putLocal(Object key, Object value, long expireAt) {
+        putLocal(key, value, expireAt, null);
+    }
+
+    /**
+     * 放入本地caffeine缓存 开启堆外缓存时同时写入堆外
+     * @param rawValue 从redis读取或写入redis的序列化结果 用作权重和堆外的值 null表示没有 需要时再序列化
+     */
+    private void putLocal(Object key, Object value, long expireAt, byte[] rawValue) {
+        if (!this.caffeineEnable || value == null) {
+            return;
+        }
+        if (value instanceof JSONObject && ((JSONObject) value).isEmpty()) {
+            return;
+        }
+        if (value instanceof JSONArray && ((JSONArray) value).isEmpty()) {
+            return;
+        }
+        if (rawValue == null && (this.revalidateAfterWrite > 0 || offHeapStore != null)) {
+            rawValue = valueSerializer.serialize(value);
+        }
+        int weight = this.weighted ? weigh(value, rawValue == null ? -1 : rawValue.length) : 0;
+        byte[] digest = this.revalidateAfterWrite > 0 ? sha1(rawValue) : null;
+        LocalValue local = new LocalValue(value, System.currentTimeMillis(), expireAt, weight, digest);
+        caffeineCache.put(key, local);
+        if (trackingInvalidator != null) {
+            trackLocal(key);
+        }
+        if (offHeapStore != null) {
+            offHeapStore.put(key, rawValue, local.getWriteTime(), expireAt);
+        }
+        if (hotCache != null) {
+            // 热点区的值同样需要更新 不再是热点的key从热点区移除
+            if (hotKeyDetector.isHot(key)) {
+                hotCache.put(key, local);
+            } else {
+                hotCache.invalidate(key);
+            }
+        }
+    }
+
+    /**
+     * CLIENT TRACKING下本节点写入redis后同样会收到该key的失效通知 写入前记录 收到时不清除刚写入1级缓存的值
+     * putIfAbsent不写入1级缓存 不记录
+     */
+    private void beforeWrite(Object key) {
+        if (trackingInvalidator == null || !this.caffeineEnable) {
+            return;
+        }
+        trackingInvalidator.beforeWrite(rawKey(key));
+    }
+
+    /**
+     * 写入redis失败 撤销{@link #beforeWrite(Object)}的记录并清除先写入的1级缓存
+     */
+    private void writeFailed(Object key) {
+        if (trackingInvalidator != null && this.caffeineEnable) {
+            trackingInvalidator.writeFailed(rawKey(key));
+        }
+        invalidateLocal(key);
+    }
+
+    /**
+     * 记录写入1级缓存的key的类型 收到redis推送的key时据此决定是否需要遍历1级缓存匹配
+     */
+    private void trackLocal(Object key) {
+        if (!complexKeys && !isSimpleKey(key)) {
+            complexKeys = true;
+        }
+    }
+
+    private static boolean isSimpleKey(Object key) {
+        return key instanceof String || key instanceof Long || key instanceof Integer || key instanceof UUID;
+    }
+
+    private static boolean isNumeric(String text) {
+        int length = text.length();
+        if (length == 0 || length > 20) {
+            return false;
+        }
+        for (int i = text.charAt(0) == '-' && length > 1 ? 1 : 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 1级缓存的权重 约等于序列化后的字节数加上每个条目的固定开销
+     * 从redis读取或写入redis时已经有序列化结果 直接使用 其他情况下常见类型直接估算 其余类型序列化一次
+     */
+    private int weigh(Object value, int serializedSize) {
+        if (serializedSize >= 0) {
+            return ENTRY_WEIGHT + serializedSize;
+        }
+        if (value instanceof NullValue) {
+            return ENTRY_WEIGHT;
+        }
+        if (value instanceof String) {
+            return ENTRY_WEIGHT + ((String) value).length() + 2;
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return ENTRY_WEIGHT + 8;
+        }
+        if (value instanceof byte[]) {
+            return ENTRY_WEIGHT + ((byte[]) value).length;
+        }
+        try {
+            return ENTRY_WEIGHT + valueSerializer.serialize(value).length;
+        } catch (RuntimeException e) {
+            logger.warn("估算1级缓存权重失败, the cache name is : {}", this.name, e);
+            return ENTRY_WEIGHT + DEFAULT_VALUE_WEIGHT;
+        }
+    }
+
+    /**
+     * 从1级缓存中取值并记录一次访问 先取caffeineCache 再取热点区 最后取堆外
+     * 热点key命中caffeineCache时同时放入热点区 之后即使被普通key挤出caffeineCache也能命中
+     * @param key 具体 cache中的key
+     * @return {@link LocalValue} 不存在时为null
+     */
+    private LocalValue getLocalValue(Object key) {
+        LocalValue local = (LocalValue) caffeineCache.getIfPresent(key);
+        if (local != null && this.staleAfterWrite > 0
+                && System.currentTimeMillis() - local.getWriteTime() >= this.staleAfterWrite && !redisDegraded()) {
+            // 过期后保留的值只在熔断期间返回
+            local = null;
+        }
+        if (hotKeyDetector != null) {
+            boolean hot = hotKeyDetector.record(key);
+            if (local == null) {
+                local = (LocalValue) hotCache.getIfPresent(key);
+            } else if (hot) {
+                hotCache.asMap().putIfAbsent(key, local);
+            }
+        }
+        if (local == null && offHeapStore != null) {
+            local = getOffHeap(key);
+        }
+        return local;
+    }
+
+    /**
+     * 从堆外取值 命中时反序列化后放回caffeine 写入时间和redis过期时间保持不变
+     */
+    private LocalValue getOffHeap(Object key) {
+        OffHeapStore.Record record = offHeapStore.get(key);
+        if (record == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        boolean expired = (offHeapExpireAfterWrite > 0 && now - record.getWriteTime() >= offHeapExpireAfterWrite)
+                || (record.getExpireAt() > 0 && now >= record.getExpireAt());
+        boolean stale = expired && this.serveStale && circuitBreaker != null
+                && circuitBreaker.getState() != RedisCircuitBreaker.State.CLOSED;
+        if (expired && !stale) {
+            offHeapStore.remove(key);
+            return null;
+        }
+        Object value = deserialize(record.getValue());
+        int weight = this.weighted ? weigh(value, record.getValue().length) : 0;
+        byte[] digest = this.revalidateAfterWrite > 0 ? sha1(record.getValue()) : null;
+        LocalValue local = new LocalValue(value, record.getWriteTime(), record.getExpireAt(), weight, digest);
+        if (!stale) {
+            // 过期的值只在熔断期间临时返回 不放回caffeine
+            caffeineCache.put(key, local);
+        }
+        return local;
+    }
+
+    /**
+     * 清除1级缓存（包括热点区和堆外）中的一个key 没有开启1级缓存时不处理
+     */
+    private void invalidateLocal(Object key) {
+        if (!this.caffeineEnable) {
+            return;
+        }
+        caffeineCache.invalidate(key);
+        if (hotCache != null) {
+            hotCache.invalidate(key);
+        }
+        if (offHeapStore != null) {
+            offHeapStore.remove(key);
+        }
+    }
+
+    /**
+     * 清除1级缓存（包括热点区和堆外）中的所有key
+     */
+    private void invalidateLocalAll() {
+        caffeineCache.invalidateAll();
+        if (hotCache != null) {
+            hotCache.invalidateAll();
+        }
+        if (offHeapStore != null) {
+            offHeapStore.clear();
+        }
+    }
+
+    /**
+     * 换取缓存的key
+     * @Author shishuai
+     * @Date 2021/11/17
+     * @description
+     * @param key 具体 cache中的key
+     * @return {@link Object}
+     */
+    String getKey(Object key) {
+        return keyEncoder.toString(key, currentGeneration());
+    }
+
+    /**
+     * 序列化后的redis key 与getKey的结果序列化后相同
+     * @param key 具体 cache中的key
+     */
+    byte[] rawKey(Object key) {
+        if (this.rawKeyEnable) {
+            return keyEncoder.encode(key, currentGeneration());
+        }
+        return keySerializer.serialize(getKey(key));
+    }
+
+    /**
+     * 从redis中取序列化后的值 不存在时为null
+     */
+    private byte[] redisGetRaw(Object key) {
+        byte[] rawKey = rawKey(key);
+        return redis(metrics.getRedisGet(), () -> redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey)));
+    }
+
+    /**
+     * 写入redis
+     * @param rawValue 序列化后的存储值
+     * @param expire 过期时间，单位毫秒，小于等于0表示不过期
+     * @param option 写入条件
+     * @return 是否写入
+     */
+    private Boolean redisSet(Object key, byte[] rawValue, long expire, RedisStringCommands.SetOption option) {
+        byte[] rawKey = rawKey(key);
+        Expiration expiration = expire > 0 ? Expiration.milliseconds(expire) : Expiration.persistent();
+        return redis(metrics.getRedisSet(), () -> redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.set(rawKey, rawValue, expiration, option)));
+    }
+
+    private Object deserialize(byte[] rawValue) {
+        return rawValue == null ? null : valueSerializer.deserialize(rawValue);
+    }
+
+    /**
+     * 命名空间版本号的key
+     */
+    private String getGenerationKey() {
+        String keyStr = this.name.concat(GENERATION_SUFFIX);
+        return StringUtils.isEmpty(this.cachePrefix) ? keyStr : this.cachePrefix.concat(":").concat(keyStr);
+    }
+
+    /**
+     * 等待同一个jvm内其他线程的加载结果
+     * @param key 具体 cache中的key
+     * @param valueLoader
+     * @param loading 正在加载的结果
+     * @return {@link Object} 存储值
+     */
+    private Object awaitLoading(Object key, Callable<?> valueLoader, CompletableFuture<Object> loading) {
+        try {
+            return loading.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } catch (ExecutionException e) {
+            throw new ValueRetrievalException(key, valueLoader, e.getCause());
+        }
+    }
+
+    private boolean isRefreshEnable() {
+        return this.refreshAfterWrite > 0 || this.refreshAheadFraction > 0 || this.earlyExpirationBeta > 0;
+    }
+
+    /**
+     * 命中的数据快要过期时在后台重新加载 当前请求仍然返回旧值
+     * @param key 具体 cache中的key
+     * @param writeTime 写入1级缓存的时间戳 0表示不是从1级缓存命中
+     * @param expireAt redis中数据的过期时间戳 0表示未知或者不过期
+     */
+    private void refreshIfNecessary(Object key, long writeTime, long expireAt) {
+        if (!isRefreshEnable()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        boolean refresh = this.refreshAfterWrite > 0 && writeTime > 0 && now - writeTime >= this.refreshAfterWrite;
+        if (!refresh && this.refreshAheadFraction > 0 && expireAt > 0) {
+            long ttl = TimeUnit.SECONDS.toMillis(getExpire());
+            refresh = ttl > 0 && expireAt - now <= ttl * (1 - this.refreshAheadFraction);
+        }
+        if (!refresh && this.earlyExpirationBeta > 0 && expireAt > 0 && this.averageLoadTime > 0) {
+            // XFetch: now - delta * beta * ln(rand) >= expiry 越接近过期、加载越慢 越可能提前刷新
+            double gap = -this.averageLoadTime * this.earlyExpirationBeta * Math.log(ThreadLocalRandom.current().nextDouble());
+            refresh = now + gap >= expireAt;
+        }
+        if (refresh) {
+            refreshAsync(key);
+        }
+    }
+
+    /**
+     * 在后台使用最近一次的valueLoader或者注册的刷新加载器重新加载 写入redis并通知其他节点
+     * 同一个key同一时刻只有一个刷新任务 开启分布式加载租约时 没有获得租约的节点放弃本次刷新
+     * @param key 具体 cache中的key
+     */
+    private void refreshAsync(Object key) {
+        Callable<?> valueLoader = getRefreshLoader(key);
+        if (valueLoader == null) {
+            return;
+        }
+        runReload(key, "后台刷新缓存", () -> reload(key, valueLoader));
+    }
+
+    /**
+     * 1级缓存软过期后命中 在后台从redis重新读取 redis中没有时使用valueLoader加载
+     * 与后台刷新共用同一个key的加载任务 当前请求仍然返回旧值
+     * 开启revalidateWindow时只比较摘要 值没有变化时不必重新读取和反序列化
+     * @param key 具体 cache中的key
+     * @param local 命中的1级缓存的值
+     */
+    private void revalidateIfStale(Object key, LocalValue local) {
+        if (this.softExpireAfterWrite <= 0 || System.currentTimeMillis() - local.getWriteTime() < this.softExpireAfterWrite) {
+            return;
+        }
+        staleHitCount.increment();
+        Callable<?> valueLoader = getRefreshLoader(key);
+        runReload(key, "后台重新验证缓存", () -> {
+            if (!redisPermitted()) {
+                // redis熔断期间保留旧值
+                return null;
+            }
+            if (local.getDigest() != null) {
+                LocalValue current = revalidate(key, local);
+                if (current != null) {
+                    return current.getValue();
+                }
+                return reloadMissing(key, valueLoader);
+            }
+            byte[] rawValue = redisGetRaw(key);
+            Object value = deserialize(rawValue);
+            if (value != null) {
+                putLocal(key, value, 0, rawValue);
+                return value;
+            }
+            return reloadMissing(key, valueLoader);
+        });
+    }
+
+    /**
+     * redis中已经没有该key时使用valueLoader重新加载 没有valueLoader时清除1级缓存
+     */
+    private Object reloadMissing(Object key, Callable<?> valueLoader) throws Exception {
+        if (valueLoader == null) {
+            invalidateLocal(key);
+            return null;
+        }
+        return reload(key, valueLoader);
+    }
+
+    /**
+     * 1级缓存超过expireAfterWrite（开启staleWhileRevalidate时再加上该时间）后命中 同步比较redis中值的摘要
+     * redis熔断期间继续使用本地的值 没有摘要时按未命中处理 由未命中的取值获取熔断许可
+     * @param local 命中的1级缓存的值 可以为null
+     * @return {@link LocalValue} 可以使用的值 null表示按未命中处理 {@link #REVALIDATED_MISSING}表示redis中已经没有该key
+     */
+    private LocalValue revalidateIfExpired(Object key, LocalValue local) {
+        if (!expiredForRevalidate(local)) {
+            return local;
+        }
+        if (local.getDigest() == null) {
+            return redisDegraded() ? local : null;
+        }
+        if (!redisPermitted()) {
+            return local;
+        }
+        LocalValue current = revalidate(key, local);
+        return current == null ? REVALIDATED_MISSING : current;
+    }
+
+    private boolean expiredForRevalidate(LocalValue local) {
+        return local != null && this.revalidateAfterWrite > 0
+                && System.currentTimeMillis() - local.getWriteTime() >= this.revalidateAfterWrite;
+    }
+
+    /**
+     * 比较redis中值的摘要 没有变化时重新计时继续使用本地的值 变化时使用返回的新值
+     * @return {@link LocalValue} 放回1级缓存的值 redis中已经没有该key时清除1级缓存并返回null
+     */
+    private LocalValue revalidate(Object key, LocalValue local) {
+        List<Object> result = redis(metrics.getRedisGet(), () -> (List<Object>) redisTemplate.execute(REVALIDATE_SCRIPT,
+                RedisSerializer.string(), (RedisSerializer) RedisSerializer.byteArray(), Collections.singletonList(getKey(key)), toHex(local.getDigest())));
+        if (result == null || result.isEmpty()) {
+            revalidateChangedCount.increment();
+            invalidateLocal(key);
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Object ttl = result.get(0);
+        long expireAt = ttl instanceof Number && ((Number) ttl).longValue() > 0 ? now + ((Number) ttl).longValue() : 0;
+        if (result.size() == 1) {
+            revalidatedCount.increment();
+            LocalValue rearmed = new LocalValue(local.getValue(), now, expireAt, local.getWeight(), local.getDigest());
+            caffeineCache.put(key, rearmed);
+            if (hotCache != null && hotCache.getIfPresent(key) != null) {
+                hotCache.put(key, rearmed);
+            }
+            return rearmed;
+        }
+        revalidateChangedCount.increment();
+        byte[] rawValue = (byte[]) result.get(1);
+        Object value = deserialize(rawValue);
+        putLocal(key, value, expireAt, rawValue);
+        return new LocalValue(value, now, expireAt);
+    }
+
+    private static byte[] sha1(byte[] bytes) {
+        MessageDigest digest = SHA1.get();
+        digest.reset();
+        return digest.digest(bytes);
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 记录的valueLoader 没有时使用当前线程正在执行的get(key, valueLoader)的valueLoader并记录 再没有时使用注册的刷新加载器
+     * 只在key被选中刷新时调用
+     * @return 都没有时为null
+     */
+    private Callable<?> getRefreshLoader(Object key) {
+        Callable<?> loader = null;
+        if (refreshLoaders != null) {
+            loader = refreshLoaders.getIfPresent(key);
+            if (loader == null && (loader = currentLoader.get()) != null) {
+                refreshLoaders.put(key, loader);
+            }
+        }
+        Function<Object, ?> registered = this.refreshLoader;
+        if (loader == null && registered != null) {
+            loader = () -> registered.apply(key);
+        }
+        return loader;
+    }
+
+    /**
+     * 在后台执行加载任务 同一个key同一时刻只有一个任务 等待中的get(key, valueLoader)使用任务的结果 结果为null时自行加载
+     * @param action 日志中的操作名称
+     */
+    private void runReload(Object key, String action, Callable<Object> task) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        if (loadingFutures.putIfAbsent(key, future) != null) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    logger.debug("{}, the key is : {}", action, key);
+                    future.complete(task.call());
+                } catch (Exception e) {
+                    logger.warn("{}失败, the key is : {}", action, key, e);
+                    future.completeExceptionally(e);
+                } finally {
+                    loadingFutures.remove(key, future);
+                    if (!future.isDone()) {
+                        // 任务抛出Error时 等待中的get(key, valueLoader)不会一直阻塞
+                        future.completeExceptionally(new IllegalStateException(action + "异常终止"));
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loadingFutures.remove(key, future);
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 执行valueLoader并写入缓存 开启分布式加载租约时只有获得租约的节点执行
+     * @return {@link Object} 存储值 没有获得租约时为null
+     */
+    private Object reload(Object key, Callable<?> valueLoader) throws Exception {
+        if (!this.loadLeaseEnable || !redisPermitted()) {
+            return load(key, valueLoader);
+        }
+        String leaseKey = getKey(key).concat(LEASE_SUFFIX);
+        if (!tryAcquireLease(leaseKey)) {
+            // 其他节点正在加载 等待中的线程会自行加载
+            return null;
+        }
+        try {
+            return load(key, valueLoader);
+        } finally {
+            releaseLease(leaseKey);
+        }
+    }
+
+    /**
+     * 开启分布式加载租约时，只有获得租约的节点执行valueLoader
+     * 其他节点短暂轮询redis等待结果，超时后自行加载
+     * @param key 具体 cache中的key
+     * @param valueLoader
+     * @return {@link Object} 存储值
+     */
+    private Object loadWithLease(Object key, Callable<?> valueLoader) throws Exception {
+        if (!this.loadLeaseEnable || !redisPermitted()) {
+            return load(key, valueLoader);
+        }
+        String leaseKey = getKey(key).concat(LEASE_SUFFIX);
+        if (tryAcquireLease(leaseKey)) {
+            try {
+                return load(key, valueLoader);
+            } finally {
+                releaseLease(leaseKey);
+            }
+        }
+        long deadline = System.currentTimeMillis() + loadLeaseWaitTime;
+        while (System.currentTimeMillis() < deadline) {
+            Thread.sleep(LEASE_POLL_INTERVAL);
+            Object value = lookup(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        logger.info("等待其他节点加载超时，自行加载, the key is : {}", getKey(key));
+        return load(key, valueLoader);
+    }
+
+    private boolean tryAcquireLease(String leaseKey) {
+        Boolean acquired = redis(() -> redisTemplate.opsForValue().setIfAbsent(leaseKey, leaseOwner, Duration.ofMillis(loadLeaseTime)));
+        return Boolean.TRUE.equals(acquired);
+    }
+
+    private void releaseLease(String leaseKey) {
+        redis(() -> redisTemplate.execute(RELEASE_LEASE_SCRIPT, Collections.singletonList(leaseKey), leaseOwner));
+    }
+
+    /**
+     * 执行原方法获得value 并写入缓存
+     * @return {@link Object} 存储值
+     */
+    private Object load(Object key, Callable<?> valueLoader) throws Exception {
+        long start = System.nanoTime();
+        Object storeValue;
+        try {
+            storeValue = toStoreValue(valueLoader.call());
+        } catch (Exception e) {
+            metrics.recordLoad(System.nanoTime() - start, false);
+            throw e;
+        }
+        long loadTime = System.nanoTime() - start;
+        metrics.recordLoad(loadTime, true);
+        recordLoadTime(TimeUnit.NANOSECONDS.toMillis(loadTime));
+        put(key, storeValue);
+        return storeValue;
+    }
+
+    /**
+     * 记录加载耗时 权重0.2的指数移动平均 并发更新时丢失个别样本不影响结果
+     * @param loadTime 加载耗时，单位毫秒
+     */
+    private void recordLoadTime(long loadTime) {
+        double average = this.averageLoadTime;
+        this.averageLoadTime = average == 0 ? Math.max(loadTime, 1) : average * 0.8 + loadTime * 0.2;
+    }
+
+    /**
+     * 过期时间换算为过期时间戳
+     * @param expire 过期时间，单位毫秒
+     * @return 过期时间戳，单位毫秒，0表示不过期
+     */
+    private long toExpireAt(long expire) {
+        return expire > 0 ? System.currentTimeMillis() + expire : 0;
+    }
+
+    /**
+     * 写入redis的过期时间 在配置的过期时间上增加随机抖动
+     * @return 过期时间，单位毫秒，小于等于0表示不过期
+     */
+    private long getWriteExpire() {
+        long expire = TimeUnit.SECONDS.toMillis(getExpire());
+        if (expire <= 0 || this.expireJitter <= 0) {
+            return expire;
+        }
+        return expire + (long) (ThreadLocalRandom.current().nextDouble() * expire * this.expireJitter);
+    }
+
+    private long getExpire() {
+        long expire = defaultExpiration;
+        Long cacheNameExpire = defaultExpires.get(this.name);
+        return cacheNameExpire == null ? expire : cacheNameExpire.longValue();
+    }
+
+    /**
+     * @description 缓存变更时通知其他节点清理本地缓存
+     */
+    private void push(CacheMessage message) {
+        if (this.caffeineEnable) {
+            if (shouldTrace()) {
+                logger.debug("----缓存变更时通知其他节点清理本地缓存---{}--{}", message.getCacheName(), message.getKey());
+            }
+            metrics.recordInvalidationsSent(1);
+            publisher.publish(message);
             /***
              * 以下是字节方式  可以规避乱码
              */
@@ -0,0 +1,21 @@
+package com.sya.code;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 23:40
+ * @description：ClusterCache实例的创建和淘汰 例如为每个cache注册和移除监控指标
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public interface ClusterCacheListener {
+
+	/**
+	 * 实例创建后调用 注册监听器时已经存在的实例同样会调用一次
+	 */
+	void onCacheCreated(ClusterCache clusterCache);
+
+	/**
+	 * 实例因为超过cacheInstanceNum被淘汰后调用
+	 */
+	void onCacheRemoved(ClusterCache clusterCache);
+}
@@ -5,18 +5,33 @@ import com.alibaba.fastjson.JSONObject;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.sya.config.ClusterCacheProperties;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.util.CollectionUtils;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 /**
  *
@@ -28,19 +43,103 @@ import java.util.concurrent.TimeUnit;
  * @version: 1.0.0$
  */
 @Slf4j
-public class ClusterCacheManager implements CacheManager {
+public class ClusterCacheManager implements CacheManager, DisposableBean {
 	
 	private final Logger logger = LoggerFactory.getLogger(ClusterCacheManager.class);
+
+	private static final boolean LETTUCE_PRESENT = ClassUtils.isPresent("io.lettuce.core.RedisClient",
+			ClusterCacheManager.class.getClassLoader());
 	/***
 	 * ClusterCache 的集合   ClusterCache包含caffeine 和redis 客户端
-	 * 真正存储的位置
+	 * 真正存储的位置 每个CacheManager独立 超过cacheInstanceNum时淘汰最久没有使用的实例
+	 */
+	private final ConcurrentLRUHashMap<String, ClusterCache> cacheMap;
+
+	/***
+	 * 所有未销毁的CacheManager 供兼容旧版本的静态getCacheStats使用
 	 */
-	private static ConcurrentMap<String, Cache> cacheMap = new ConcurrentHashMap<String, Cache>();
+	private static final Set<ClusterCacheManager> MANAGERS = Collections.newSetFromMap(new ConcurrentHashMap<>());
 	
+	@Getter
 	private ClusterCacheProperties clusterCacheProperties;
 	
 	private RedisTemplate<String, Object> stringKeyRedisTemplate;
 
+	/***
+	 * 本节点标识 随缓存变更通知发送 用于忽略自己发出的通知
+	 */
+	@Getter
+	private final String nodeId = UUID.randomUUID().toString();
+
+	/***
+	 * 缓存变更通知的发送者  所有ClusterCache共用 合并发送
+	 */
+	@Getter
+	private CacheMessagePublisher publisher;
+
+	/***
+	 * 异步接口使用的非阻塞redis客户端 与stringKeyRedisTemplate使用相同的序列化方式
+	 * 连接工厂不支持reactive（例如jedis）时为null 异步接口退化为在线程池中执行
+	 */
+	@Getter
+	private ReactiveRedisTemplate<String, Object> reactiveRedisTemplate;
+
+	/***
+	 * 执行后台任务的线程池 例如清除redis中的缓存数据
+	 */
+	@Getter
+	private ExecutorService executor;
+
+	/***
+	 * 批量读写redis 集群模式下按slot分组在各节点上并行执行
+	 */
+	@Getter
+	private RedisBatchExecutor batchExecutor;
+
+	/***
+	 * 所有cache共享的堆外内存预算 不限制时为null
+	 */
+	@Getter
+	private OffHeapStore.Budget offHeapBudget;
+
+	/***
+	 * redis熔断器 所有ClusterCache共用 未开启时为null
+	 */
+	@Getter
+	private RedisCircuitBreaker circuitBreaker;
+
+	/***
+	 * redis推送key变更（CLIENT TRACKING）的连接 invalidationMode为topic或者不支持时为null
+	 */
+	@Getter
+	private RedisTrackingInvalidator trackingInvalidator;
+
+	/***
+	 * 从redis stream读取变更通知 messageTransport为topic时为null
+	 */
+	private CacheMessageStreamConsumer streamConsumer;
+
+	/***
+	 * 监听lettuce连接断开 topic模式下断开期间的变更通知会丢失 布隆过滤器需要重建 没有开启布隆过滤器时为null
+	 */
+	private LettuceConnectionWatcher connectionWatcher;
+
+	/***
+	 * 执行定时任务 例如同步命名空间版本号、定期重建布隆过滤器
+	 */
+	private ScheduledExecutorService scheduler;
+
+	/***
+	 * 缓存实例创建和淘汰的监听器 例如注册监控指标
+	 */
+	private final List<ClusterCacheListener> cacheListeners = new CopyOnWriteArrayList<>();
+
+	/***
+	 * 后台批量清理redis中的缓存数据
+	 */
+	@Getter
+	private CacheKeyCleaner keyCleaner;
+
 	private boolean dynamic = true;
 
 	private  boolean caffeineEnable = true;
@@ -66,74 +165,241 @@ public class ClusterCacheManager implements CacheManager {
 		this.dynamic = clusterCacheProperties.isDynamic();
 		this.caffeineEnable = clusterCacheProperties.isCaffeineEnable();
 		this.cacheInstanceNum = clusterCacheProperties.getCacheInstanceNum();
+		this.cacheMap = new ConcurrentLRUHashMap<>(Math.max(1, cacheInstanceNum), this::onCacheEvicted);
+		this.publisher = new CacheMessagePublisher(nodeId, stringKeyRedisTemplate, clusterCacheProperties);
+		this.executor = newExecutor();
+		this.batchExecutor = new RedisBatchExecutor(stringKeyRedisTemplate, clusterCacheProperties);
+		this.keyCleaner = new CacheKeyCleaner(stringKeyRedisTemplate, batchExecutor, executor, clusterCacheProperties);
+		this.reactiveRedisTemplate = newReactiveRedisTemplate(stringKeyRedisTemplate);
+		if (clusterCacheProperties.getOffHeap().getTotalCapacity() > 0) {
+			this.offHeapBudget = new OffHeapStore.Budget(clusterCacheProperties.getOffHeap().getTotalCapacity());
+		}
+		if (clusterCacheProperties.getRedis().isCircuitBreakerEnable()) {
+			this.circuitBreaker = new RedisCircuitBreaker(clusterCacheProperties.getRedis(), this::onCircuitBreakerStateChanged);
+		}
+		this.trackingInvalidator = newTrackingInvalidator();
+		if (caffeineEnable && "stream".equalsIgnoreCase(clusterCacheProperties.getRedis().getMessageTransport())) {
+			this.streamConsumer = new CacheMessageStreamConsumer(this, stringKeyRedisTemplate);
+			this.streamConsumer.start();
+		}
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "cluster-cache-scheduler");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long generationSyncInterval = clusterCacheProperties.getRedis().getGenerationSyncInterval();
+		if (clusterCacheProperties.getRedis().isNamespaceVersionEnable() && streamConsumer == null && generationSyncInterval > 0) {
+			// stream模式下丢失的通知由CacheMessageStreamConsumer发现并重新同步
+			scheduler.scheduleWithFixedDelay(this::syncGenerations, generationSyncInterval, generationSyncInterval, TimeUnit.SECONDS);
+		}
+		ClusterCacheProperties.BloomFilter bloom = clusterCacheProperties.getBloomFilter();
+		if (caffeineEnable && (bloom.isEnable() || !bloom.getCacheNames().isEmpty())) {
+			if (bloom.getRebuildInterval() > 0) {
+				scheduler.scheduleWithFixedDelay(this::rebuildBloomFilters, bloom.getRebuildInterval(), bloom.getRebuildInterval(), TimeUnit.SECONDS);
+			}
+			if (streamConsumer == null && LETTUCE_PRESENT) {
+				// stream模式下丢失的通知由CacheMessageStreamConsumer发现并重建
+				this.connectionWatcher = LettuceConnectionWatcher.create(this, stringKeyRedisTemplate.getConnectionFactory());
+			}
+		}
+		MANAGERS.add(this);
+	}
 
+	public RedisTemplate<String, Object> getRedisTemplate() {
+		return stringKeyRedisTemplate;
 	}
 
 	/**
-	 *  确保 cacheMap size 不会无限的增加
-	 * @Author shishuai
-	 * @Date 2021/11/19
-	 * @description
-	 * @param
-	 * @return
+	 * 容器关闭时发送剩余的缓存变更通知
 	 */
-	private void clearCacheMap() {
-		String cachePrefix = this.clusterCacheProperties.getCachePrefix();
-		int size = cacheMap.size();
-		if (size > cacheInstanceNum) {
-			int deleteNum =	size - cacheInstanceNum;
-			logger.info("需要清除的缓存实例有{}个",deleteNum);
-			Set<String> keySet = cacheMap.keySet();
-			List<ClusterCache> list = new ArrayList<>();
-			for (String s : keySet) {
-				ClusterCache cache = (ClusterCache)cacheMap.get(s);
-				list.add(cache);
-			}
-			// 升序
-			Collections.sort(list,(o1,o2)->{return o1.getTimestamp().compareTo(o2.getTimestamp()); });
-			for (int i=0;i<deleteNum;i++) {
-
-				ClusterCache clusterCache = list.get(i);
-				logger.info("需要清除的缓存实例第{}个--{}",i+1,clusterCache.getName());
-
-				cacheMap.remove(clusterCache.getName());
-				String keyStr = clusterCache.getName();
-				// 以下可能存在性能问题  误解 redistemplate  不支持批量删除
-				String redisKey = StringUtils.isEmpty(cachePrefix) ? keyStr : cachePrefix.concat(":").concat(keyStr);
-				Set<String> keys = stringKeyRedisTemplate.keys(redisKey + ":*");
-				stringKeyRedisTemplate.delete(keys);
-				clusterCache.clearLocal(null);
+	@Override
+	public void destroy() {
+		MANAGERS.remove(this);
+		if (trackingInvalidator != null) {
+			trackingInvalidator.shutdown();
+		}
+		if (streamConsumer != null) {
+			streamConsumer.shutdown();
+		}
+		if (connectionWatcher != null) {
+			connectionWatcher.shutdown();
+		}
+		scheduler.shutdownNow();
+		publisher.shutdown();
+		executor.shutdown();
+		for (ClusterCache clusterCache : cacheMap.values()) {
+			clusterCache.releaseLocal();
+		}
+	}
+
+	/**
+	 * 单个key的变更由CLIENT TRACKING推送 不发送变更通知
+	 */
+	public boolean isTrackingOnly() {
+		return trackingInvalidator != null && "tracking".equalsIgnoreCase(clusterCacheProperties.getRedis().getInvalidationMode());
+	}
+
+	/**
+	 * 变更通知可能已经丢失 例如订阅连接断开 布隆过滤器暂停排除key
+	 */
+	public void onMessagesLost() {
+		for (ClusterCache clusterCache : cacheMap.values()) {
+			clusterCache.suspendBloomFilter();
+		}
+	}
+
+	/**
+	 * 重新订阅后重建布隆过滤器 完成后恢复
+	 */
+	public void onMessagesRestored() {
+		rebuildBloomFilters();
+	}
+
+	/**
+	 * 所有cache与redis同步命名空间版本号
+	 */
+	private void syncGenerations() {
+		for (ClusterCache clusterCache : cacheMap.values()) {
+			try {
+				clusterCache.syncGeneration();
+			} catch (RuntimeException e) {
+				logger.warn("同步命名空间版本号失败, the cache name is : {}", clusterCache.getName(), e);
 			}
+		}
+	}
 
+	/**
+	 * 熔断器状态变化 恢复后在后台删除熔断期间各个cache在本地写入或删除的key
+	 * @param state 新的状态
+	 */
+	private void onCircuitBreakerStateChanged(RedisCircuitBreaker.State state) {
+		logger.warn("redis熔断器状态变为{}", state);
+		if (state != RedisCircuitBreaker.State.CLOSED) {
+			return;
+		}
+		try {
+			executor.execute(() -> {
+				for (ClusterCache clusterCache : cacheMap.values()) {
+					try {
+						clusterCache.flushPendingInvalidations();
+					} catch (RuntimeException e) {
+						logger.error("删除熔断期间变更的key失败, the cache name is : {}", clusterCache.getName(), e);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			logger.warn("删除熔断期间变更的key的任务被拒绝", e);
+		}
+	}
 
+	/**
+	 *  cacheMap超过cacheInstanceNum时淘汰的实例
+	 *  只释放本节点的1级缓存、堆外缓存、布隆过滤器和监控指标 redis中的数据是共享的 其他节点仍在使用 不删除
+	 * @param name
+	 * @param clusterCache
+	 */
+	private void onCacheEvicted(String name, ClusterCache clusterCache) {
+		logger.info("缓存实例超过{}个，清除最久没有使用的实例--{}", cacheInstanceNum, name);
+		clusterCache.releaseLocal();
+		rebalanceWeight();
+		for (ClusterCacheListener listener : cacheListeners) {
+			listener.onCacheRemoved(clusterCache);
 		}
+	}
 
+	/**
+	 * 在所有cache之间重新分配1级缓存的内存预算 cache创建或淘汰时调用
+	 * 按各自的maximumWeight从小到大依次分配剩余预算的平均份额 上限低于平均份额的cache用不完的预算分给其他cache
+	 */
+	private void rebalanceWeight() {
+		long total = clusterCacheProperties.getCaffeineMaximumWeight();
+		if (!caffeineEnable || total <= 0) {
+			return;
+		}
+		synchronized (cacheMap) {
+			List<ClusterCache> caches = new ArrayList<>(cacheMap.values());
+			caches.sort(Comparator.comparingLong(cache -> getWeightLimit(cache.getName())));
+			long remaining = total;
+			int left = caches.size();
+			for (ClusterCache cache : caches) {
+				long maximum = Math.min(Math.max(1, remaining / left--), getWeightLimit(cache.getName()));
+				remaining -= maximum;
+				cache.getCaffeineCache().policy().eviction().ifPresent(eviction -> eviction.setMaximum(maximum));
+			}
+		}
 	}
+
+	/**
+	 * cache自己的内存上限 没有设置时不限制
+	 */
+	private long getWeightLimit(String name) {
+		long maximumWeight = getCacheConfig(name).getMaximumWeight();
+		return maximumWeight > 0 ? maximumWeight : Long.MAX_VALUE;
+	}
+
 	//——————————————————————— 进行缓存工具 ——————————————————————
 	/**
 	 * 清除所有进程缓存
+	 * 本节点不会处理自己发送的通知 所以先清除本节点
 	 */
 	public void clearAllCache() {
-		stringKeyRedisTemplate.convertAndSend(clusterCacheProperties.getRedis().getTopic(), new CacheMessage(null, null));
+		clearLocal(null, null);
+		publisher.publish(new CacheMessage(null, null));
 	}
 
 	/**
-	 * 返回所有进程缓存(二级缓存)的统计信息
+	 * 返回所有进程缓存(二级缓存)的统计信息 包含不超过metrics.maxSampleKeys个1级缓存key
 	 * result:{"缓存名称":统计信息}
+	 * @deprecated 缓存实例不再是全局共享的 使用{@link #getCacheStats(int)}
 	 * @return
 	 */
+	@Deprecated
 	public static Map<String, Map> getCacheStats() {
-		if (CollectionUtils.isEmpty(cacheMap)) {
-			return null;
+		Map<String, Map> result = null;
+		for (ClusterCacheManager manager : MANAGERS) {
+			Map<String, Map> stats = manager.getCacheStats(Integer.MAX_VALUE);
+			if (stats != null) {
+				if (result == null) {
+					result = new LinkedHashMap<>();
+				}
+				result.putAll(stats);
+			}
 		}
+		return result;
+	}
 
+	/**
+	 * 返回所有进程缓存(二级缓存)的统计信息
+	 * result:{"缓存名称":统计信息}
+	 * @param sampleSize 每个缓存返回的1级缓存key样本个数 不超过metrics.maxSampleKeys 0表示不返回
+	 * @return
+	 */
+	public Map<String, Map> getCacheStats(int sampleSize) {
+		if (cacheMap.isEmpty()) {
+			return null;
+		}
 		Map<String, Map> result = new LinkedHashMap<>();
-		for (Cache cache : cacheMap.values()) {
-			ClusterCache clusterCache = (ClusterCache) cache;
-			com.github.benmanes.caffeine.cache.Cache<Object, Object> caffeineCache = clusterCache.getCaffeineCache();
-			Set<Object> objects = caffeineCache.asMap().keySet();
+		for (ClusterCache clusterCache : cacheMap.values()) {
+			result.put(clusterCache.getName(), cacheStats(clusterCache, sampleSize));
+		}
+		return result;
+	}
+
+	/**
+	 * 一个缓存的统计信息
+	 * @param sampleSize 返回的1级缓存key样本个数 不超过metrics.maxSampleKeys 0表示不返回
+	 * @return 缓存实例不存在时为null
+	 */
+	public Map<String, Object> getCacheStats(String name, int sampleSize) {
+		ClusterCache clusterCache = cacheMap.peek(name);
+		return clusterCache == null ? null : cacheStats(clusterCache, sampleSize);
+	}
+
+	private Map<String, Object> cacheStats(ClusterCache clusterCache, int sampleSize) {
+		Map<String, Object> map = new LinkedHashMap<>();
+		com.github.benmanes.caffeine.cache.Cache<Object, Object> caffeineCache = clusterCache.getCaffeineCache();
+		if (caffeineCache != null) {
 			CacheStats stats = caffeineCache.stats();
-			Map map = new HashMap();
 			map.put("hitCount",stats.hitCount());
 			map.put("evictionWeight",stats.evictionWeight());
 			map.put("evictionCount",stats.evictionCount());
@@ -141,13 +407,143 @@ public class ClusterCacheManager implements CacheManager {
 			map.put("loadFailureCount",stats.loadFailureCount());
 			map.put("missCount",stats.missCount());
 			map.put("loadSuccessCount",stats.loadSuccessCount());
+			map.put("size",caffeineCache.estimatedSize());
+			caffeineCache.policy().eviction().ifPresent(eviction ->
+					eviction.weightedSize().ifPresent(weightedSize -> map.put("weightedSize", weightedSize)));
+			int limit = Math.min(sampleSize, clusterCacheProperties.getMetrics().getMaxSampleKeys());
+			if (limit > 0) {
+				// 只复制前limit个key 不复制整个key集合
+				List<Object> sampleKeys = new ArrayList<>(limit);
+				Iterator<Object> iterator = caffeineCache.asMap().keySet().iterator();
+				while (sampleKeys.size() < limit && iterator.hasNext()) {
+					sampleKeys.add(iterator.next());
+				}
+				map.put("sampleKeys",sampleKeys);
+			}
+		}
+		map.put("metrics",clusterCache.getMetrics().getStats());
+		map.put("hotKeys",clusterCache.getHotKeys());
+		map.put("staleHitCount",clusterCache.getStaleHitCount());
+		map.put("revalidatedCount",clusterCache.getRevalidatedCount());
+		map.put("revalidateChangedCount",clusterCache.getRevalidateChangedCount());
+		if (clusterCache.getOffHeapStore() != null) {
+			map.put("offHeap",clusterCache.getOffHeapStore().getStats());
+		}
+		Map<String, Object> bloomFilterStats = clusterCache.getBloomFilterStats();
+		if (bloomFilterStats != null) {
+			map.put("bloomFilter",bloomFilterStats);
+		}
+		if (circuitBreaker != null) {
+			map.put("circuitBreaker",circuitBreaker.getState().name());
+			map.put("pendingInvalidations",clusterCache.getPendingInvalidationCount());
+		}
+		return map;
+	}
 
-			map.put("keys",objects);
-			result.put(clusterCache.getName(), map);
+	/**
+	 * 记录收到的其他节点的变更通知 用于统计通知个数和传播耗时
+	 */
+	public void recordInvalidationReceived(CacheMessage message) {
+		if (message.getCacheName() == null) {
+			for (ClusterCache clusterCache : cacheMap.values()) {
+				clusterCache.getMetrics().recordInvalidationReceived(message.getTimestamp());
+			}
+			return;
+		}
+		ClusterCache clusterCache = cacheMap.peek(message.getCacheName());
+		if (clusterCache != null) {
+			clusterCache.getMetrics().recordInvalidationReceived(message.getTimestamp());
+		}
+	}
+
+	/**
+	 * 注册缓存实例的监听器 已经存在的实例立即通知一次
+	 */
+	public void addCacheListener(ClusterCacheListener listener) {
+		cacheListeners.add(listener);
+		for (ClusterCache clusterCache : cacheMap.values()) {
+			listener.onCacheCreated(clusterCache);
+		}
+	}
+
+	/**
+	 * redis熔断器的统计信息 未开启熔断时为null
+	 */
+	public Map<String, Object> getCircuitBreakerStats() {
+		return circuitBreaker == null ? null : circuitBreaker.getStats();
+	}
+
+	/**
+	 * 在后台重建本节点所有缓存的布隆过滤器 例如大量key被删除或过期后
+	 */
+	public void rebuildBloomFilters() {
+		for (ClusterCache clusterCache : cacheMap.values()) {
+			clusterCache.rebuildBloomFilterAsync();
+		}
+	}
+
+	/**
+	 * 本节点每个缓存当前识别出的热点key
+	 * result:{"缓存名称":热点key}
+	 * @return
+	 */
+	public Map<String, Set<Object>> getHotKeys() {
+		Map<String, Set<Object>> result = new LinkedHashMap<>();
+		for (ClusterCache clusterCache : cacheMap.values()) {
+			Set<Object> hotKeys = clusterCache.getHotKeys();
+			if (!hotKeys.isEmpty()) {
+				result.put(clusterCache.getName(), new HashSet<>(hotKeys));
+			}
 		}
 		return result;
 	}
 
+	/**
+	 * 所有节点上报的热点key 按上报的频率之和从高到低
+	 * result:{"缓存名称:key":频率}
+	 * @param count 最多返回的个数
+	 * @return
+	 */
+	public Map<String, Double> getClusterHotKeys(int count) {
+		Set<ZSetOperations.TypedTuple<Object>> tuples = stringKeyRedisTemplate.opsForZSet()
+				.reverseRangeWithScores(getHotKeyReportKey(), 0, count - 1);
+		Map<String, Double> result = new LinkedHashMap<>();
+		if (tuples != null) {
+			for (ZSetOperations.TypedTuple<Object> tuple : tuples) {
+				result.put(String.valueOf(tuple.getValue()), tuple.getScore());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 在后台把本节点识别出的热点key累加到redis 上报的数据在热点区过期时间后整体过期
+	 * @param cacheName
+	 * @param key 具体 cache中的key
+	 * @param frequency 估计频率
+	 */
+	void reportHotKey(String cacheName, Object key, int frequency) {
+		String reportKey = getHotKeyReportKey();
+		long expire = clusterCacheProperties.getHotKey().getExpireAfterWrite();
+		try {
+			executor.execute(() -> {
+				try {
+					stringKeyRedisTemplate.opsForZSet().incrementScore(reportKey, cacheName + ":" + key, frequency);
+					stringKeyRedisTemplate.expire(reportKey, Math.max(expire, 60), TimeUnit.SECONDS);
+				} catch (RuntimeException e) {
+					logger.warn("上报热点key失败, the key is : {}:{}", cacheName, key, e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			logger.debug("后台线程池已满，放弃上报热点key, the key is : {}:{}", cacheName, key);
+		}
+	}
+
+	private String getHotKeyReportKey() {
+		String cachePrefix = clusterCacheProperties.getCachePrefix();
+		return (StringUtils.isEmpty(cachePrefix) ? "" : cachePrefix + ":") + "cluster-cache:hotkeys";
+	}
+
 	//—————————————————————————— core —————————————————————————
 	/**
 	 * 获取
@@ -166,12 +562,23 @@ public class ClusterCacheManager implements CacheManager {
 		if(!dynamic && !cacheNames.contains(name)) {
 			return null;
 		}
-		
-		cache = new ClusterCache(name, stringKeyRedisTemplate, caffeineCache(name), clusterCacheProperties);
-		Cache oldCache = cacheMap.putIfAbsent(name, cache);
-		clearCacheMap();
-		logger.info("create cache instance, the cache name is : {}", name);
-		return oldCache == null ? cache : oldCache;
+
+		// 同一个name只创建一次 超过cacheInstanceNum时淘汰最久没有使用的实例
+		boolean[] created = new boolean[1];
+		cache = cacheMap.computeIfAbsent(name, n -> {
+			logger.info("create cache instance, the cache name is : {}", n);
+			created[0] = true;
+			return new ClusterCache(n, caffeineCache(n), this);
+		});
+		if (created[0]) {
+			// 访问redis的初始化放在computeIfAbsent之外 不阻塞其他cache的创建
+			((ClusterCache) cache).initialize();
+			rebalanceWeight();
+			for (ClusterCacheListener listener : cacheListeners) {
+				listener.onCacheCreated((ClusterCache) cache);
+			}
+		}
+		return cache;
 	}
 	
 	@Override
@@ -179,66 +586,204 @@ public class ClusterCacheManager implements CacheManager {
 		return this.cacheNames;
 	}
 	
+	/**
+	 * 其他节点清除了启用命名空间版本号的cache
+	 * @param cacheName
+	 * @param generation 新的版本号
+	 */
+	public void updateGeneration(String cacheName, long generation) {
+		ClusterCache cache = cacheMap.peek(cacheName);
+		if (cache != null) {
+			cache.updateGeneration(generation);
+		}
+	}
+
 	public void clearLocal(String cacheName, Object key) {
-		//cacheName为null 清除所有进程缓存
+		//cacheName为null 清除所有进程缓存 只清空每个实例的caffeine 不重新创建实例
 		if (cacheName == null) {
 			log.info("清除所有本地缓存");
-			cacheMap = new ConcurrentHashMap<>();
+			for (ClusterCache clusterCache : cacheMap.values()) {
+				clusterCache.clearLocal(null);
+			}
 			return;
 		}
 
-		Cache cache = cacheMap.get(cacheName);
-		if(cache == null) {
+		// 变更通知不算作使用 不影响实例的淘汰顺序
+		ClusterCache clusterCache = cacheMap.peek(cacheName);
+		if(clusterCache == null) {
 			return;
 		}
-		
-		ClusterCache clusterCache = (ClusterCache) cache;
 		clusterCache.clearLocal(key);
 	}
 
 	/**
-     * 实例化本地一级缓存
-	 * @param name
-     * @return
-     */
-	private com.github.benmanes.caffeine.cache.Cache<Object, Object> caffeineCache(String name) {
-		if (!this.caffeineEnable) {
-			return null;
+	 * redis推送的key变更（CLIENT TRACKING） key的前缀可能同时匹配多个cache的前缀 逐个判断
+	 * @param redisKey 完整的redis key
+	 */
+	public void clearLocalByRedisKey(String redisKey) {
+		for (ClusterCache clusterCache : cacheMap.values()) {
+			if (clusterCache.clearLocalByRedisKey(redisKey)) {
+				clusterCache.getMetrics().recordInvalidationReceived(0);
+			}
 		}
-		Caffeine<Object, Object> cacheBuilder = Caffeine.newBuilder();
+	}
 
-		ClusterCacheProperties.CacheDefault cacheConfig;
+	/**
+	 * 丢失了变更通知 重新读取命名空间版本号并清除1级缓存
+	 * @param cacheName null表示所有cache
+	 */
+	public void resyncLocal(String cacheName) {
+		if (cacheName == null) {
+			for (ClusterCache clusterCache : cacheMap.values()) {
+				clusterCache.resyncLocal();
+			}
+			return;
+		}
+		ClusterCache clusterCache = cacheMap.peek(cacheName);
+		if (clusterCache != null) {
+			clusterCache.resyncLocal();
+		}
+	}
+
+	/**
+	 * 读取stream的统计信息 未使用stream时为null
+	 */
+	public Map<String, Object> getStreamStats() {
+		return streamConsumer == null ? null : streamConsumer.getStats();
+	}
+
+	/**
+	 * CLIENT TRACKING的统计信息 未开启时为null
+	 */
+	public Map<String, Object> getTrackingStats() {
+		return trackingInvalidator == null ? null : trackingInvalidator.getStats();
+	}
+
+	/**
+	 * 发送缓存变更通知的统计信息 包括发送失败后丢弃的通知
+	 */
+	public Map<String, Object> getPublisherStats() {
+		return publisher.getStats();
+	}
+
+	/**
+	 * 获取cacheName对应的1级缓存配置
+	 * refreshAfterWrite 由ClusterCache自己实现 不交给caffeine（caffeine只有LoadingCache才支持）
+	 * @param name
+	 * @return {@link ClusterCacheProperties.CacheDefault}
+	 */
+	public ClusterCacheProperties.CacheDefault getCacheConfig(String name) {
 		switch (name) {
 			case CacheNames.CACHE_15MINS:
-				cacheConfig = clusterCacheProperties.getCache15m();
-				break;
+				return clusterCacheProperties.getCache15m();
 			case CacheNames.CACHE_30MINS:
-				cacheConfig = clusterCacheProperties.getCache30m();
-				break;
+				return clusterCacheProperties.getCache30m();
 			case CacheNames.CACHE_60MINS:
-				cacheConfig = clusterCacheProperties.getCache60m();
-				break;
+				return clusterCacheProperties.getCache60m();
 			case CacheNames.CACHE_180MINS:
-				cacheConfig = clusterCacheProperties.getCache180m();
-				break;
+				return clusterCacheProperties.getCache180m();
 			case CacheNames.CACHE_12HOUR:
-				cacheConfig = clusterCacheProperties.getCache12h();
-				break;
+				return clusterCacheProperties.getCache12h();
 			default:
-				cacheConfig = clusterCacheProperties.getCacheDefault();
+				return clusterCacheProperties.getCacheDefault();
 		}
+	}
+
+	/**
+	 * 基于lettuce的非阻塞客户端 复用同步客户端的连接工厂和序列化方式
+	 */
+	private ReactiveRedisTemplate<String, Object> newReactiveRedisTemplate(RedisTemplate<String, Object> redisTemplate) {
+		RedisConnectionFactory connectionFactory = redisTemplate.getConnectionFactory();
+		if (!(connectionFactory instanceof ReactiveRedisConnectionFactory)) {
+			return null;
+		}
+		RedisSerializationContext<String, Object> serializationContext = RedisSerializationContext
+				.<String, Object>newSerializationContext(redisTemplate.getValueSerializer())
+				.key((RedisSerializer<String>) redisTemplate.getKeySerializer())
+				.hashKey(redisTemplate.getHashKeySerializer())
+				.build();
+		return new ReactiveRedisTemplate<>((ReactiveRedisConnectionFactory) connectionFactory, serializationContext);
+	}
+
+	/**
+	 * invalidationMode为tracking或both时创建 只有lettuce支持
+	 * tracking模式下连接正常时不再发送单个key的变更通知 清除整个cache和命名空间版本号的通知仍然通过topic发送
+	 */
+	private RedisTrackingInvalidator newTrackingInvalidator() {
+		String invalidationMode = clusterCacheProperties.getRedis().getInvalidationMode();
+		if (!caffeineEnable || !("tracking".equalsIgnoreCase(invalidationMode) || "both".equalsIgnoreCase(invalidationMode))) {
+			return null;
+		}
+		if (!LETTUCE_PRESENT) {
+			logger.warn("CLIENT TRACKING只支持lettuce，使用topic发送变更通知");
+			return null;
+		}
+		RedisTrackingInvalidator invalidator = RedisTrackingInvalidator.create(this, stringKeyRedisTemplate.getConnectionFactory());
+		if (invalidator == null) {
+			return null;
+		}
+		if ("tracking".equalsIgnoreCase(invalidationMode)) {
+			publisher.setKeyMessagesCovered(invalidator::isActive);
+		}
+		invalidator.start();
+		return invalidator;
+	}
+
+	/**
+	 * 1级缓存过期后只在熔断期间返回的保留时间，单位秒 没有开启熔断或者不返回过期的值时为0
+	 */
+	long getStaleTime() {
+		ClusterCacheProperties.Redis redis = clusterCacheProperties.getRedis();
+		return circuitBreaker != null && redis.isCircuitBreakerServeStale() ? Math.max(0, redis.getCircuitBreakerStaleTime()) : 0;
+	}
+
+	/**
+	 * 后台任务线程池 队列满时拒绝新任务 不在调用线程执行 避免请求线程被后台刷新等任务拖慢
+	 * 后台刷新和热点上报直接放弃 异步接口返回以RejectedExecutionException异常完成的future
+	 */
+	private ExecutorService newExecutor() {
+		int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("cluster-cache-worker-");
+		threadFactory.setDaemon(true);
+		ThreadPoolExecutor threadPool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(1024), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+		threadPool.allowCoreThreadTimeOut(true);
+		return threadPool;
+	}
+
+	/**
+     * 实例化本地一级缓存
+	 * @param name
+     * @return
+     */
+	private com.github.benmanes.caffeine.cache.Cache<Object, Object> caffeineCache(String name) {
+		if (!this.caffeineEnable) {
+			return null;
+		}
+		Caffeine<Object, Object> cacheBuilder = Caffeine.newBuilder();
+
+		ClusterCacheProperties.CacheDefault cacheConfig = getCacheConfig(name);
 		long expireAfterAccess = cacheConfig.getExpireAfterAccess();
 		long expireAfterWrite = cacheConfig.getExpireAfterWrite();
+		long staleWhileRevalidate = cacheConfig.getStaleWhileRevalidate();
+		long revalidateWindow = cacheConfig.getRevalidateWindow();
 		int initialCapacity = cacheConfig.getInitialCapacity();
 		long maximumSize = cacheConfig.getMaximumSize();
-		long refreshAfterWrite = cacheConfig.getRefreshAfterWrite();
+		long maximumWeight = cacheConfig.getMaximumWeight();
+		long totalWeight = clusterCacheProperties.getCaffeineMaximumWeight();
 
 		log.info("本地缓存初始化：");
 		if (expireAfterAccess > 0) {
 			log.info("设置本地缓存访问后过期时间，{}秒", expireAfterAccess);
 			cacheBuilder.expireAfterAccess(expireAfterAccess, TimeUnit.SECONDS);
 		}
-		if (expireAfterWrite > 0) {
+		long staleTime = getStaleTime();
+		if (expireAfterWrite > 0 && (staleWhileRevalidate > 0 || revalidateWindow > 0 || staleTime > 0)) {
+			// 软过期、重新验证和熔断期间返回过期的值由ClusterCache根据写入时间判断 caffeine只负责硬过期
+			long hardExpire = expireAfterWrite + staleWhileRevalidate + revalidateWindow + staleTime;
+			log.info("设置本地缓存软过期时间{}秒，硬过期时间{}秒", expireAfterWrite, hardExpire);
+			cacheBuilder.expireAfterWrite(hardExpire, TimeUnit.SECONDS);
+		} else if (expireAfterWrite > 0) {
 			log.info("设置本地缓存写入后过期时间，{}秒", expireAfterWrite);
 			cacheBuilder.expireAfterWrite(expireAfterWrite, TimeUnit.SECONDS);
 		}
@@ -246,13 +791,15 @@ public class ClusterCacheManager implements CacheManager {
 			log.info("设置缓存初始化大小{}", initialCapacity);
 			cacheBuilder.initialCapacity(initialCapacity);
 		}
-		if (maximumSize > 0) {
+		if (maximumWeight > 0 || totalWeight > 0) {
+			// 创建后由rebalanceWeight按全局预算重新分配
+			long weight = maximumWeight > 0 ? maximumWeight : totalWeight;
+			log.info("设置本地缓存最大内存{}字节", weight);
+			cacheBuilder.maximumWeight(weight).weigher((key, value) -> ((LocalValue) value).getWeight());
+		} else if (maximumSize > 0) {
 			log.info("设置本地缓存最大值{}", maximumSize);
 			cacheBuilder.maximumSize(maximumSize);
 		}
-		if (refreshAfterWrite > 0) {
-			cacheBuilder.refreshAfterWrite(refreshAfterWrite, TimeUnit.SECONDS);
-		}
 		cacheBuilder.recordStats();
 		com.github.benmanes.caffeine.cache.Cache<Object, Object> cache = cacheBuilder.build();
 		return cache;
@@ -1,16 +1,254 @@
 package com.sya.code;
 
-import org.checkerframework.checker.units.qual.K;
-
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 /**
+ * 有容量上限的并发LRU map
+ * 读写由ConcurrentHashMap完成 访问顺序由一个双向链表维护 超过容量时淘汰链表头部（最久没有访问）的元素 O(1)
+ * 访问时只在拿到锁的情况下调整顺序 竞争激烈时放弃本次调整 顺序是近似的LRU 读取不会被阻塞
+ * 被淘汰的元素在锁外交给淘汰监听器处理
+ *
  * @author     ：shishuai
  * @date       ：Created in 2021/11/18 11:53
- * @description：
+ * @description：并发LRU map 用于管理ClusterCache实例
  * @modified By：
  * @version: $
  */
-public class ConcurrentLRUHashMap<K,V> extends ConcurrentHashMap {
+public class ConcurrentLRUHashMap<K, V> {
+
+	private final ConcurrentHashMap<K, Node<K, V>> map;
+
+	/** 访问顺序链表 head最久没有访问 tail最近访问 由lock保护*/
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private Node<K, V> head;
+
+	private Node<K, V> tail;
+
+	/** 链表中的元素个数 由lock保护 已经放入map但还没有加入链表的元素不计算在内*/
+	private int linkedCount;
+
+	private final int capacity;
+
+	/** 元素因为超过容量被淘汰时调用 不包括remove*/
+	private final BiConsumer<K, V> evictionListener;
+
+	/**
+	 * @param capacity 最大元素个数
+	 * @param evictionListener 淘汰监听器 可以为null
+	 */
+	public ConcurrentLRUHashMap(int capacity, BiConsumer<K, V> evictionListener) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+		this.evictionListener = evictionListener;
+		this.map = new ConcurrentHashMap<>(Math.min(capacity, 256));
+	}
+
+	/**
+	 * 读取并记录一次访问
+	 */
+	public V get(Object key) {
+		Node<K, V> node = map.get(key);
+		if (node == null) {
+			return null;
+		}
+		afterAccess(node);
+		return node.value;
+	}
+
+	/**
+	 * 读取但不记录访问 用于变更通知等不代表业务使用的场景
+	 */
+	public V peek(Object key) {
+		Node<K, V> node = map.get(key);
+		return node == null ? null : node.value;
+	}
+
+	/**
+	 * key不存在时创建 同一个key的mappingFunction只会执行一次
+	 * @return 已经存在或新创建的值 mappingFunction返回null时为null
+	 */
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+		Node<K, V> node = map.get(key);
+		if (node != null) {
+			afterAccess(node);
+			return node.value;
+		}
+		boolean[] created = new boolean[1];
+		node = map.computeIfAbsent(key, k -> {
+			V value = mappingFunction.apply(k);
+			if (value == null) {
+				return null;
+			}
+			created[0] = true;
+			return new Node<>(k, value);
+		});
+		if (node == null) {
+			return null;
+		}
+		if (created[0]) {
+			afterInsert(node);
+		} else {
+			afterAccess(node);
+		}
+		return node.value;
+	}
+
+	/**
+	 * @return key不存在时返回null 否则返回已经存在的值
+	 */
+	public V putIfAbsent(K key, V value) {
+		Node<K, V> node = new Node<>(key, value);
+		Node<K, V> existing = map.putIfAbsent(key, node);
+		if (existing != null) {
+			afterAccess(existing);
+			return existing.value;
+		}
+		afterInsert(node);
+		return null;
+	}
+
+	public V remove(Object key) {
+		Node<K, V> node = map.remove(key);
+		if (node == null) {
+			return null;
+		}
+		lock.lock();
+		try {
+			unlink(node);
+			node.removed = true;
+		} finally {
+			lock.unlock();
+		}
+		return node.value;
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	public boolean isEmpty() {
+		return map.isEmpty();
+	}
+
+	/**
+	 * 所有的值 不记录访问 弱一致性
+	 */
+	public Collection<V> values() {
+		List<V> values = new ArrayList<>(map.size());
+		for (Node<K, V> node : map.values()) {
+			values.add(node.value);
+		}
+		return values;
+	}
+
+	private void afterAccess(Node<K, V> node) {
+		if (node == tail || !lock.tryLock()) {
+			return;
+		}
+		try {
+			if (node.linked) {
+				unlink(node);
+				link(node);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 加入链表尾部 链表中的元素超过容量时从链表头部淘汰
+	 * 按链表中的元素个数判断 其他线程刚放入map还没有加入链表的元素由它们各自的afterInsert处理
+	 * 否则这些元素会让刚加入的元素成为链表中唯一可以淘汰的元素而被立即淘汰
+	 */
+	private void afterInsert(Node<K, V> node) {
+		List<Node<K, V>> evicted = null;
+		lock.lock();
+		try {
+			// 插入map后、加入链表前已经被remove
+			if (!node.removed) {
+				link(node);
+			}
+			while (linkedCount > capacity && head != null && head != node) {
+				Node<K, V> eldest = head;
+				unlink(eldest);
+				eldest.removed = true;
+				if (map.remove(eldest.key, eldest)) {
+					if (evicted == null) {
+						evicted = new ArrayList<>();
+					}
+					evicted.add(eldest);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (evicted != null && evictionListener != null) {
+			for (Node<K, V> eldest : evicted) {
+				evictionListener.accept(eldest.key, eldest.value);
+			}
+		}
+	}
+
+	private void link(Node<K, V> node) {
+		node.prev = tail;
+		node.next = null;
+		if (tail == null) {
+			head = node;
+		} else {
+			tail.next = node;
+		}
+		tail = node;
+		node.linked = true;
+		linkedCount++;
+	}
+
+	private void unlink(Node<K, V> node) {
+		if (!node.linked) {
+			return;
+		}
+		if (node.prev == null) {
+			head = node.next;
+		} else {
+			node.prev.next = node.next;
+		}
+		if (node.next == null) {
+			tail = node.prev;
+		} else {
+			node.next.prev = node.prev;
+		}
+		node.prev = null;
+		node.next = null;
+		node.linked = false;
+		linkedCount--;
+	}
+
+	private static final class Node<K, V> {
+
+		private final K key;
+
+		private final V value;
+
+		/** 以下字段由lock保护*/
+		private Node<K, V> prev;
+
+		private Node<K, V> next;
+
+		private boolean linked;
+
+		private boolean removed;
 
+		private Node(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
 }
@@ -0,0 +1,189 @@
+package com.sya.code;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 20:05
+ * @description：热点key识别 count-min sketch估计访问频率 频率达到阈值的key进入容量有限的热点集合（top-K）
+ *               每记录windowSize次访问所有计数减半 只反映最近一段时间的热度 不再热的key随之移出集合
+ *               计数不加锁 并发下少量计数丢失不影响判断 记录一次访问只有4次数组自增和一次map查询
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class HotKeyDetector {
+
+	private static final int DEPTH = 4;
+
+	private static final int[] SEEDS = {0x97cb3127, 0xb7f5a4b9, 0x9e3779b9, 0x85ebca6b};
+
+	private final int[] table;
+
+	private final int mask;
+
+	/** 进入热点集合的最小频率*/
+	private final int threshold;
+
+	/** 热点集合的最大key个数*/
+	private final int capacity;
+
+	/** 每记录多少次访问计数减半*/
+	private final int windowSize;
+
+	private int samples;
+
+	/** 热点key和进入集合时的估计频率*/
+	private final ConcurrentHashMap<Object, Integer> hotKeys = new ConcurrentHashMap<>();
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** key成为热点时调用 参数为key和估计频率*/
+	private final BiConsumer<Object, Integer> hotKeyListener;
+
+	/**
+	 * @param capacity 热点集合的最大key个数
+	 * @param threshold 一个窗口内访问次数达到该值视为热点
+	 * @param windowSize 每记录多少次访问计数减半
+	 * @param hotKeyListener key成为热点时调用 可以为null
+	 */
+	public HotKeyDetector(int capacity, int threshold, int windowSize, BiConsumer<Object, Integer> hotKeyListener) {
+		this.capacity = Math.max(1, capacity);
+		this.threshold = Math.max(2, threshold);
+		this.windowSize = Math.max(this.threshold * 2, windowSize);
+		// 宽度约为窗口的1/8 估计误差不超过e*8次左右 远小于阈值 默认窗口每个cache占用32KB
+		int width = Integer.highestOneBit(Math.max(64, this.windowSize / 8) - 1) << 1;
+		this.table = new int[width * DEPTH];
+		this.mask = width - 1;
+		this.hotKeyListener = hotKeyListener;
+	}
+
+	/**
+	 * 记录一次访问
+	 * @return 该key当前是否是热点
+	 */
+	public boolean record(Object key) {
+		int hash = spread(key.hashCode());
+		int frequency = Integer.MAX_VALUE;
+		for (int i = 0; i < DEPTH; i++) {
+			int index = index(hash, i);
+			frequency = Math.min(frequency, ++table[index]);
+		}
+		if (++samples >= windowSize) {
+			decay();
+		}
+		if (hotKeys.isEmpty() && frequency < threshold) {
+			return false;
+		}
+		if (hotKeys.containsKey(key)) {
+			return true;
+		}
+		return frequency >= threshold && admit(key, frequency);
+	}
+
+	/**
+	 * 是否是热点 不记录访问
+	 */
+	public boolean isHot(Object key) {
+		return !hotKeys.isEmpty() && hotKeys.containsKey(key);
+	}
+
+	/**
+	 * 当前的热点key
+	 */
+	public Set<Object> getHotKeys() {
+		return Collections.unmodifiableSet(hotKeys.keySet());
+	}
+
+	/**
+	 * 当前的热点key和估计频率
+	 */
+	public Map<Object, Integer> getFrequencies() {
+		Map<Object, Integer> frequencies = new HashMap<>(hotKeys.size() * 2);
+		for (Object key : hotKeys.keySet()) {
+			frequencies.put(key, estimate(key));
+		}
+		return frequencies;
+	}
+
+	public void clear() {
+		hotKeys.clear();
+	}
+
+	/**
+	 * 集合已满时替换估计频率最低的key 集合很小 直接遍历
+	 */
+	private boolean admit(Object key, int frequency) {
+		lock.lock();
+		try {
+			if (hotKeys.containsKey(key)) {
+				return true;
+			}
+			if (hotKeys.size() >= capacity) {
+				Object coldest = null;
+				int coldestFrequency = Integer.MAX_VALUE;
+				for (Object hotKey : hotKeys.keySet()) {
+					int estimate = estimate(hotKey);
+					if (estimate < coldestFrequency) {
+						coldest = hotKey;
+						coldestFrequency = estimate;
+					}
+				}
+				if (coldest == null || coldestFrequency >= frequency) {
+					return false;
+				}
+				hotKeys.remove(coldest);
+			}
+			hotKeys.put(key, frequency);
+		} finally {
+			lock.unlock();
+		}
+		if (hotKeyListener != null) {
+			hotKeyListener.accept(key, frequency);
+		}
+		return true;
+	}
+
+	/**
+	 * 所有计数减半 频率降到阈值一半以下的key移出热点集合
+	 */
+	private void decay() {
+		if (!lock.tryLock()) {
+			return;
+		}
+		try {
+			samples = 0;
+			for (int i = 0; i < table.length; i++) {
+				table[i] >>>= 1;
+			}
+			hotKeys.keySet().removeIf(key -> estimate(key) < threshold / 2);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private int estimate(Object key) {
+		int hash = spread(key.hashCode());
+		int frequency = Integer.MAX_VALUE;
+		for (int i = 0; i < DEPTH; i++) {
+			frequency = Math.min(frequency, table[index(hash, i)]);
+		}
+		return frequency;
+	}
+
+	private int index(int hash, int row) {
+		int h = (hash + SEEDS[row]) * SEEDS[row];
+		h ^= h >>> 16;
+		return row * (mask + 1) + (h & mask);
+	}
+
+	private static int spread(int hash) {
+		hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+		return (hash >>> 16) ^ hash;
+	}
+}
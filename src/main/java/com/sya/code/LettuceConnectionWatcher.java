@@ -0,0 +1,60 @@
+package com.sya.code;
+
+import io.lettuce.core.event.connection.ConnectionActivatedEvent;
+import io.lettuce.core.event.connection.DisconnectedEvent;
+import io.lettuce.core.resource.ClientResources;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import reactor.core.Disposable;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/19 02:10
+ * @description：监听lettuce连接的断开和恢复 发布订阅的连接断开期间发送的变更通知会丢失 lettuce重连后自动重新订阅 不会抛出异常
+ *               事件来自连接工厂的ClientResources 无法区分是否是订阅连接 任意连接断开都视为可能丢失了通知
+ *               连接工厂没有设置ClientResources时无法监听
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class LettuceConnectionWatcher {
+
+	private static final Logger logger = LoggerFactory.getLogger(LettuceConnectionWatcher.class);
+
+	private final Disposable subscription;
+
+	/** 断开后还没有恢复*/
+	private volatile boolean disconnected;
+
+	private LettuceConnectionWatcher(ClusterCacheManager clusterCacheManager, ClientResources clientResources) {
+		this.subscription = clientResources.eventBus().get().subscribe(event -> {
+			if (event instanceof DisconnectedEvent) {
+				disconnected = true;
+				clusterCacheManager.onMessagesLost();
+			} else if (event instanceof ConnectionActivatedEvent && disconnected) {
+				disconnected = false;
+				clusterCacheManager.onMessagesRestored();
+			}
+		});
+	}
+
+	/**
+	 * 不是lettuce或者没有ClientResources时返回null
+	 */
+	static LettuceConnectionWatcher create(ClusterCacheManager clusterCacheManager, RedisConnectionFactory connectionFactory) {
+		if (!(connectionFactory instanceof LettuceConnectionFactory)) {
+			return null;
+		}
+		ClientResources clientResources = ((LettuceConnectionFactory) connectionFactory).getClientResources();
+		if (clientResources == null) {
+			logger.info("连接工厂没有设置ClientResources，无法监听连接断开，只依靠定期重建布隆过滤器");
+			return null;
+		}
+		return new LettuceConnectionWatcher(clusterCacheManager, clientResources);
+	}
+
+	public void shutdown() {
+		subscription.dispose();
+	}
+}
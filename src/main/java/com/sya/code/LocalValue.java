@@ -0,0 +1,59 @@
+package com.sya.code;
+
+import lombok.Getter;
+
+/**
+ *
+ * caffeine 1级缓存中实际存放的值 除了存储值还记录了写入时间和redis中的过期时间
+ * 用于判断是否需要提前刷新 按内存大小限制时还记录了权重 开启重新验证时还记录了值的摘要
+ *
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 14:20
+ * @description：1级缓存的值
+ * @modified By：
+ * @version: 1.0.0$
+ */
+@Getter
+public final class LocalValue {
+
+	/**
+	 * 存储值 可能是NullValue
+	 */
+	private final Object value;
+
+	/**
+	 * 写入1级缓存的时间戳，单位毫秒
+	 */
+	private final long writeTime;
+
+	/**
+	 * redis中数据的过期时间戳，单位毫秒，0表示未知或者不过期
+	 */
+	private final long expireAt;
+
+	/**
+	 * 按内存大小限制1级缓存时的权重，约等于序列化后的字节数，没有开启时为0
+	 */
+	private final int weight;
+
+	/**
+	 * redis中序列化后的值的SHA1摘要，用于过期后只比较摘要重新验证，没有开启revalidateWindow时为null
+	 */
+	private final byte[] digest;
+
+	public LocalValue(Object value, long writeTime, long expireAt) {
+		this(value, writeTime, expireAt, 0);
+	}
+
+	public LocalValue(Object value, long writeTime, long expireAt, int weight) {
+		this(value, writeTime, expireAt, weight, null);
+	}
+
+	public LocalValue(Object value, long writeTime, long expireAt, int weight, byte[] digest) {
+		this.value = value;
+		this.writeTime = writeTime;
+		this.expireAt = expireAt;
+		this.weight = weight;
+		this.digest = digest;
+	}
+}
@@ -0,0 +1,315 @@
+package com.sya.code;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 21:00
+ * @description：堆外的1级缓存 序列化后的值存放在direct ByteBuffer中 不增加GC扫描的对象
+ *               内存分为多个固定大小的段 按顺序追加写入 写满后循环使用最早的段 该段的数据整体淘汰（FIFO）
+ *               堆内的索引只保存key到一个long指针（段的序号<<32 | 段内偏移）的映射
+ *               每条记录：长度(4字节) + 写入时间(8字节) + redis过期时间(8字节) + 序列化后的值
+ *               读取不加锁 使用StampedLock的乐观读 读取期间段被回收时放弃本次结果
+ *               段从所有cache共享的预算中分配 预算不足时只循环使用已经分配的段 cache实例被淘汰时释放所有段并归还预算
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class OffHeapStore {
+
+	private static final int HEADER_SIZE = 4 + 8 + 8;
+
+	private final int segmentSize;
+
+	private final int segmentCount;
+
+	/** 第一次使用时才分配*/
+	private final ByteBuffer[] segments;
+
+	/** 每个段当前的序号 回收时在写锁内更新*/
+	private final long[] epochs;
+
+	private final StampedLock[] locks;
+
+	/** 每个段中写入过的key 回收段时从索引中删除仍然指向该段的key*/
+	private final List<Object>[] segmentKeys;
+
+	private final ConcurrentHashMap<Object, Long> index = new ConcurrentHashMap<>();
+
+	/** 共享的内存预算 为null时不限制*/
+	private final Budget budget;
+
+	/** 以下字段只在synchronized的写入中访问*/
+	private long currentEpoch = -1;
+
+	private int writeOffset;
+
+	private final LongAdder hitCount = new LongAdder();
+
+	private final LongAdder missCount = new LongAdder();
+
+	private final LongAdder evictionCount = new LongAdder();
+
+	/**
+	 * @param capacity 最大内存 单位字节
+	 * @param segmentSize 每个段的大小 单位字节 超过该大小的值不放入
+	 * @param budget 所有cache共享的内存预算 为null时不限制
+	 */
+	@SuppressWarnings("unchecked")
+	public OffHeapStore(long capacity, int segmentSize, Budget budget) {
+		this.budget = budget;
+		this.segmentSize = Math.max(segmentSize, 1024);
+		this.segmentCount = (int) Math.max(2, Math.min(Integer.MAX_VALUE, capacity / this.segmentSize));
+		this.segments = new ByteBuffer[segmentCount];
+		this.epochs = new long[segmentCount];
+		this.locks = new StampedLock[segmentCount];
+		this.segmentKeys = new List[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			this.epochs[i] = -1;
+			this.locks[i] = new StampedLock();
+			this.segmentKeys[i] = new ArrayList<>();
+		}
+	}
+
+	/**
+	 * @return 不存在或者已经被淘汰时为null
+	 */
+	public Record get(Object key) {
+		Long pointer = index.get(key);
+		if (pointer == null) {
+			missCount.increment();
+			return null;
+		}
+		long epoch = pointer >>> 32;
+		int offset = (int) (pointer & 0xFFFFFFFFL);
+		int segment = (int) (epoch % segmentCount);
+		StampedLock lock = locks[segment];
+		long stamp = lock.tryOptimisticRead();
+		Record record = null;
+		ByteBuffer allocated = segments[segment];
+		if (stamp != 0 && allocated != null && epochs[segment] == epoch) {
+			ByteBuffer buffer = allocated.duplicate();
+			int length = buffer.getInt(offset);
+			if (length >= 0 && length <= segmentSize - offset - HEADER_SIZE) {
+				long writeTime = buffer.getLong(offset + 4);
+				long expireAt = buffer.getLong(offset + 12);
+				byte[] value = new byte[length];
+				buffer.position(offset + HEADER_SIZE);
+				buffer.get(value);
+				record = new Record(value, writeTime, expireAt);
+			}
+		}
+		if (record == null || !lock.validate(stamp)) {
+			// 所在的段已经被回收
+			index.remove(key, pointer);
+			missCount.increment();
+			return null;
+		}
+		hitCount.increment();
+		return record;
+	}
+
+	/**
+	 * @param value 序列化后的值
+	 * @param writeTime 写入时间戳 单位毫秒
+	 * @param expireAt redis中数据的过期时间戳 0表示未知或者不过期
+	 * @return 值超过段的大小或者共享预算不足以分配第一个段时不放入 返回false
+	 */
+	public synchronized boolean put(Object key, byte[] value, long writeTime, long expireAt) {
+		int size = HEADER_SIZE + value.length;
+		if (size > segmentSize) {
+			index.remove(key);
+			return false;
+		}
+		if ((currentEpoch < 0 || writeOffset + size > segmentSize) && !nextSegment()) {
+			index.remove(key);
+			return false;
+		}
+		int segment = (int) (currentEpoch % segmentCount);
+		ByteBuffer buffer = segments[segment];
+		buffer.putInt(writeOffset, value.length);
+		buffer.putLong(writeOffset + 4, writeTime);
+		buffer.putLong(writeOffset + 12, expireAt);
+		buffer.position(writeOffset + HEADER_SIZE);
+		buffer.put(value);
+		index.put(key, (currentEpoch << 32) | writeOffset);
+		segmentKeys[segment].add(key);
+		writeOffset += size;
+		return true;
+	}
+
+	/**
+	 * 只删除索引 占用的空间在段被回收时释放
+	 */
+	public void remove(Object key) {
+		index.remove(key);
+	}
+
+	public synchronized void clear() {
+		index.clear();
+		for (List<Object> keys : segmentKeys) {
+			keys.clear();
+		}
+	}
+
+	/**
+	 * 释放所有段并归还共享预算 之后的写入重新分配
+	 * 序号继续递增 读取中的旧指针不会匹配到新的段
+	 */
+	public synchronized void release() {
+		index.clear();
+		int released = 0;
+		for (int i = 0; i < segmentCount; i++) {
+			segmentKeys[i].clear();
+			StampedLock lock = locks[i];
+			long stamp = lock.writeLock();
+			try {
+				if (segments[i] != null) {
+					segments[i] = null;
+					released++;
+				}
+				epochs[i] = -1;
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+		// 下次写入时切换段
+		writeOffset = segmentSize;
+		if (budget != null) {
+			budget.release((long) released * segmentSize);
+		}
+	}
+
+	public long size() {
+		return index.size();
+	}
+
+	/**
+	 * 统计信息 与caffeine的统计一起通过getCacheStats返回
+	 */
+	public Map<String, Object> getStats() {
+		int allocated = 0;
+		for (ByteBuffer segment : segments) {
+			if (segment != null) {
+				allocated++;
+			}
+		}
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("hitCount", hitCount.sum());
+		stats.put("missCount", missCount.sum());
+		stats.put("evictionCount", evictionCount.sum());
+		stats.put("size", size());
+		stats.put("allocatedBytes", (long) allocated * segmentSize);
+		stats.put("capacity", (long) segmentCount * segmentSize);
+		if (budget != null) {
+			stats.put("sharedRemainingBytes", budget.getRemaining());
+		}
+		return stats;
+	}
+
+	/**
+	 * 切换到下一个段 已经分配过的段整体淘汰
+	 * 下一个段还没有分配而共享预算不足时 跳到第一个段 只循环使用已经分配的段
+	 * @return 一个段都没有分配并且预算不足时返回false
+	 */
+	private boolean nextSegment() {
+		long epoch = currentEpoch + 1;
+		int segment = (int) (epoch % segmentCount);
+		ByteBuffer allocated = null;
+		if (segments[segment] == null) {
+			if (budget == null || budget.tryAcquire(segmentSize)) {
+				allocated = ByteBuffer.allocateDirect(segmentSize);
+			} else if (segment == 0 || segments[0] == null) {
+				return false;
+			} else {
+				epoch += segmentCount - segment;
+				segment = 0;
+			}
+		}
+		currentEpoch = epoch;
+		long previous = epochs[segment];
+		StampedLock lock = locks[segment];
+		long stamp = lock.writeLock();
+		try {
+			if (allocated != null) {
+				segments[segment] = allocated;
+			}
+			epochs[segment] = epoch;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+		writeOffset = 0;
+		List<Object> keys = segmentKeys[segment];
+		for (Object key : keys) {
+			Long pointer = index.get(key);
+			if (pointer != null && (pointer >>> 32) == previous && index.remove(key, pointer)) {
+				evictionCount.increment();
+			}
+		}
+		keys.clear();
+		return true;
+	}
+
+	/**
+	 * 所有cache共享的堆外内存预算 分配段时占用 释放时归还
+	 */
+	public static final class Budget {
+
+		private final AtomicLong remaining;
+
+		/**
+		 * @param capacity 所有cache的堆外内存上限 单位字节
+		 */
+		public Budget(long capacity) {
+			this.remaining = new AtomicLong(capacity);
+		}
+
+		boolean tryAcquire(long bytes) {
+			while (true) {
+				long current = remaining.get();
+				if (current < bytes) {
+					return false;
+				}
+				if (remaining.compareAndSet(current, current - bytes)) {
+					return true;
+				}
+			}
+		}
+
+		void release(long bytes) {
+			remaining.addAndGet(bytes);
+		}
+
+		public long getRemaining() {
+			return remaining.get();
+		}
+	}
+
+	/**
+	 * 堆外记录复制到堆内的结果
+	 */
+	@Getter
+	public static final class Record {
+
+		private final byte[] value;
+
+		private final long writeTime;
+
+		private final long expireAt;
+
+		private Record(byte[] value, long writeTime, long expireAt) {
+			this.value = value;
+			this.writeTime = writeTime;
+			this.expireAt = expireAt;
+		}
+	}
+}
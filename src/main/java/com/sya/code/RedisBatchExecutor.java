@@ -0,0 +1,352 @@
+package com.sya.code;
+
+import com.sya.config.ClusterCacheProperties;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 19:10
+ * @description：批量读取、删除、写入redis 所有批量操作（getAll、putAll、按前缀清除）都经过这里
+ *               单机/哨兵：按batchSize分组 一个pipeline发送（读取、删除、写入）
+ *               集群（lettuce）：按hash slot分组 每个slot发送一条MGET/UNLINK 通过异步接口一次性发出
+ *               lettuce按slot路由到对应节点的连接 各节点的命令在自己的连接上pipeline并行执行 最后统一等待结果
+ *               集群（其他客户端）：交给spring-data-redis自带的跨slot处理
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class RedisBatchExecutor {
+
+	private static final boolean LETTUCE_PRESENT = ClassUtils.isPresent(
+			"io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands", RedisBatchExecutor.class.getClassLoader());
+
+	private final Logger logger = LoggerFactory.getLogger(RedisBatchExecutor.class);
+
+	private final RedisTemplate<String, Object> redisTemplate;
+
+	/** 每条MGET/UNLINK、每个pipeline的最大key个数*/
+	private final int batchSize;
+
+	/** 集群模式下等待异步命令结果的最长时间，单位毫秒*/
+	private final long timeout;
+
+	/** redis版本低于4时不支持UNLINK 失败后改用DEL*/
+	private volatile boolean unlinkSupported = true;
+
+	public RedisBatchExecutor(RedisTemplate<String, Object> redisTemplate, ClusterCacheProperties clusterCacheProperties) {
+		this.redisTemplate = redisTemplate;
+		this.batchSize = Math.max(1, clusterCacheProperties.getRedis().getBatchSize());
+		this.timeout = Math.max(1, clusterCacheProperties.getRedis().getBatchTimeout());
+	}
+
+	/**
+	 * 批量读取
+	 * @param keys 完整的redis key
+	 * @return 与keys顺序相同的值 不存在的key为null
+	 */
+	public List<byte[]> mGet(List<byte[]> keys) {
+		if (keys.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> {
+			if (connection instanceof RedisClusterConnection) {
+				LettuceCluster cluster = lettuceCluster(connection);
+				if (cluster != null) {
+					return cluster.mGet(keys);
+				}
+				return connection.mGet(keys.toArray(new byte[keys.size()][]));
+			}
+			if (keys.size() <= batchSize) {
+				return connection.mGet(keys.toArray(new byte[keys.size()][]));
+			}
+			List<byte[]> values = new ArrayList<>(keys.size());
+			connection.openPipeline();
+			for (int from = 0; from < keys.size(); from += batchSize) {
+				connection.mGet(toArray(keys, from, Math.min(keys.size(), from + batchSize)));
+			}
+			for (Object result : connection.closePipeline()) {
+				values.addAll((List<byte[]>) result);
+			}
+			return values;
+		});
+	}
+
+	/**
+	 * 批量删除 优先使用UNLINK
+	 * @param keys 完整的redis key
+	 * @return 删除的key个数
+	 */
+	public long del(List<byte[]> keys) {
+		if (keys.isEmpty()) {
+			return 0;
+		}
+		Long deleted = redisTemplate.execute((RedisCallback<Long>) connection -> {
+			if (connection instanceof RedisClusterConnection) {
+				LettuceCluster cluster = lettuceCluster(connection);
+				if (cluster != null) {
+					return cluster.del(keys);
+				}
+				return delete(connection, keys.toArray(new byte[keys.size()][]));
+			}
+			if (keys.size() <= batchSize) {
+				return delete(connection, keys.toArray(new byte[keys.size()][]));
+			}
+			if (unlinkSupported) {
+				try {
+					return deleteInPipeline(connection, keys, connection::unlink);
+				} catch (DataAccessException e) {
+					disableUnlink(e);
+				}
+			}
+			return deleteInPipeline(connection, keys, connection::del);
+		});
+		return deleted == null ? 0 : deleted;
+	}
+
+	/**
+	 * 批量写入 每个key有自己的过期时间
+	 * @param keys 完整的redis key
+	 * @param values 与keys一一对应的值
+	 * @param expires 与keys一一对应的过期时间 单位毫秒 小于等于0表示不过期
+	 */
+	public void set(List<byte[]> keys, List<byte[]> values, long[] expires) {
+		if (keys.isEmpty()) {
+			return;
+		}
+		redisTemplate.execute((RedisCallback<Object>) connection -> {
+			if (connection instanceof RedisClusterConnection) {
+				LettuceCluster cluster = lettuceCluster(connection);
+				if (cluster != null) {
+					cluster.set(keys, values, expires);
+					return null;
+				}
+				for (int i = 0; i < keys.size(); i++) {
+					connection.set(keys.get(i), values.get(i), expiration(expires[i]), RedisStringCommands.SetOption.upsert());
+				}
+				return null;
+			}
+			for (int from = 0; from < keys.size(); from += batchSize) {
+				connection.openPipeline();
+				for (int i = from, to = Math.min(keys.size(), from + batchSize); i < to; i++) {
+					connection.set(keys.get(i), values.get(i), expiration(expires[i]), RedisStringCommands.SetOption.upsert());
+				}
+				connection.closePipeline();
+			}
+			return null;
+		});
+	}
+
+	private long delete(RedisConnection connection, byte[][] rawKeys) {
+		Long count;
+		if (unlinkSupported) {
+			try {
+				count = connection.unlink(rawKeys);
+				return count == null ? 0 : count;
+			} catch (DataAccessException e) {
+				disableUnlink(e);
+			}
+		}
+		count = connection.del(rawKeys);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * 按batchSize分组 一个pipeline发送所有的删除命令
+	 * @param command UNLINK或者DEL
+	 */
+	private long deleteInPipeline(RedisConnection connection, List<byte[]> keys, Function<byte[][], Long> command) {
+		connection.openPipeline();
+		for (int from = 0; from < keys.size(); from += batchSize) {
+			command.apply(toArray(keys, from, Math.min(keys.size(), from + batchSize)));
+		}
+		long count = 0;
+		for (Object result : connection.closePipeline()) {
+			count += result == null ? 0 : ((Number) result).longValue();
+		}
+		return count;
+	}
+
+	/**
+	 * redis返回未知命令时改用DEL 网络、超时等其他异常原样抛出
+	 */
+	private void disableUnlink(RuntimeException e) {
+		if (!isUnknownCommand(e)) {
+			throw e;
+		}
+		logger.warn("redis不支持UNLINK，改用DEL删除", e);
+		unlinkSupported = false;
+	}
+
+	private static boolean isUnknownCommand(Throwable e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+			if (cause instanceof RedisPipelineException) {
+				// pipeline中失败的命令在结果中是异常
+				for (Object result : ((RedisPipelineException) cause).getPipelineResult()) {
+					if (result instanceof Throwable && result != cause && isUnknownCommand((Throwable) result)) {
+						return true;
+					}
+				}
+			}
+			String message = cause.getMessage();
+			if (message != null && message.toLowerCase(Locale.ROOT).contains("unknown command")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 按hash slot分组 每组不超过batchSize个key 组内保存key在原列表中的下标
+	 */
+	private List<List<Integer>> groupBySlot(List<byte[]> keys) {
+		Map<Integer, List<Integer>> slots = new HashMap<>();
+		List<List<Integer>> groups = new ArrayList<>();
+		for (int i = 0; i < keys.size(); i++) {
+			int slot = ClusterSlotHashUtil.calculateSlot(keys.get(i));
+			List<Integer> group = slots.get(slot);
+			if (group == null || group.size() >= batchSize) {
+				group = new ArrayList<>();
+				slots.put(slot, group);
+				groups.add(group);
+			}
+			group.add(i);
+		}
+		return groups;
+	}
+
+	/**
+	 * lettuce集群连接 其他客户端返回null
+	 */
+	private LettuceCluster lettuceCluster(RedisConnection connection) {
+		if (!LETTUCE_PRESENT) {
+			return null;
+		}
+		Object nativeConnection = connection.getNativeConnection();
+		return nativeConnection instanceof RedisClusterAsyncCommands ? new LettuceCluster(nativeConnection) : null;
+	}
+
+	private static Expiration expiration(long expire) {
+		return expire > 0 ? Expiration.milliseconds(expire) : Expiration.persistent();
+	}
+
+	private static byte[][] toArray(List<byte[]> keys, int from, int to) {
+		return keys.subList(from, to).toArray(new byte[to - from][]);
+	}
+
+	private static byte[][] toArray(List<byte[]> keys, List<Integer> indexes) {
+		byte[][] array = new byte[indexes.size()][];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = keys.get(indexes.get(i));
+		}
+		return array;
+	}
+
+	/**
+	 * 使用lettuce集群连接的异步接口发送命令 只在lettuce存在时加载
+	 * 所有命令先全部发出再等待结果 同一节点的命令在该节点的连接上自然形成pipeline
+	 */
+	private final class LettuceCluster {
+
+		private final RedisClusterAsyncCommands<byte[], byte[]> async;
+
+		@SuppressWarnings("unchecked")
+		private LettuceCluster(Object nativeConnection) {
+			this.async = (RedisClusterAsyncCommands<byte[], byte[]>) nativeConnection;
+		}
+
+		List<byte[]> mGet(List<byte[]> keys) {
+			List<List<Integer>> groups = groupBySlot(keys);
+			List<RedisFuture<List<KeyValue<byte[], byte[]>>>> futures = new ArrayList<>(groups.size());
+			for (List<Integer> group : groups) {
+				futures.add(async.mget(toArray(keys, group)));
+			}
+			byte[][] values = new byte[keys.size()][];
+			for (int i = 0; i < groups.size(); i++) {
+				List<KeyValue<byte[], byte[]>> result = await(futures.get(i));
+				List<Integer> group = groups.get(i);
+				for (int j = 0; j < group.size(); j++) {
+					values[group.get(j)] = result.get(j).getValueOrElse(null);
+				}
+			}
+			return Arrays.asList(values);
+		}
+
+		long del(List<byte[]> keys) {
+			List<List<Integer>> groups = groupBySlot(keys);
+			if (unlinkSupported) {
+				try {
+					return sum(groups, group -> async.unlink(toArray(keys, group)));
+				} catch (RedisSystemException e) {
+					disableUnlink(e);
+				}
+			}
+			return sum(groups, group -> async.del(toArray(keys, group)));
+		}
+
+		void set(List<byte[]> keys, List<byte[]> values, long[] expires) {
+			List<RedisFuture<String>> futures = new ArrayList<>(keys.size());
+			for (int i = 0; i < keys.size(); i++) {
+				futures.add(expires[i] > 0
+						? async.set(keys.get(i), values.get(i), SetArgs.Builder.px(expires[i]))
+						: async.set(keys.get(i), values.get(i)));
+			}
+			for (RedisFuture<String> future : futures) {
+				await(future);
+			}
+		}
+
+		private long sum(List<List<Integer>> groups, Function<List<Integer>, RedisFuture<Long>> command) {
+			List<RedisFuture<Long>> futures = new ArrayList<>(groups.size());
+			for (List<Integer> group : groups) {
+				futures.add(command.apply(group));
+			}
+			long count = 0;
+			for (RedisFuture<Long> future : futures) {
+				Long deleted = await(future);
+				count += deleted == null ? 0 : deleted;
+			}
+			return count;
+		}
+
+		private <T> T await(RedisFuture<T> future) {
+			try {
+				return future.get(timeout, TimeUnit.MILLISECONDS);
+			} catch (ExecutionException e) {
+				throw new RedisSystemException("批量执行redis命令失败", e.getCause());
+			} catch (TimeoutException e) {
+				throw new QueryTimeoutException("批量执行redis命令超时, " + timeout + "ms", e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RedisSystemException("等待redis命令结果时被中断", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package com.sya.code;
+
+import com.sya.config.ClusterCacheProperties;
+import org.springframework.dao.DataAccessException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 22:30
+ * @description：redis熔断器 一个ClusterCacheManager共用一个
+ *               CLOSED：统计最近windowSize次调用 失败（redis异常或者超过slowCallDuration）的比例达到阈值时熔断
+ *               OPEN：不访问redis 只使用1级缓存 openDuration后进入HALF_OPEN
+ *               HALF_OPEN：允许halfOpenCalls次探测调用 全部成功后恢复 任意一次失败重新熔断
+ *               滑动窗口不加锁 并发下的失败比例是近似值 状态切换很少 在synchronized中进行
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class RedisCircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private static final int SUCCESS = 1;
+
+	private static final int FAILURE = 2;
+
+	private final int failureRateThreshold;
+
+	private final long slowCallDurationNanos;
+
+	private final int windowSize;
+
+	private final int minimumCalls;
+
+	private final long openDuration;
+
+	private final int halfOpenCalls;
+
+	private volatile State state = State.CLOSED;
+
+	private volatile long stateChangedAt = System.currentTimeMillis();
+
+	/** CLOSED状态最近windowSize次调用的结果 环形数组*/
+	private final AtomicIntegerArray outcomes;
+
+	private final AtomicLong cursor = new AtomicLong();
+
+	private final AtomicInteger windowFailures = new AtomicInteger();
+
+	/** HALF_OPEN状态剩余的探测次数和已经成功的次数*/
+	private final AtomicInteger halfOpenPermits = new AtomicInteger();
+
+	private final AtomicInteger halfOpenSuccesses = new AtomicInteger();
+
+	/** 状态变化时调用 参数为新的状态*/
+	private final Consumer<State> stateListener;
+
+	private final LongAdder successCount = new LongAdder();
+
+	private final LongAdder failureCount = new LongAdder();
+
+	private final LongAdder slowCallCount = new LongAdder();
+
+	private final LongAdder notPermittedCount = new LongAdder();
+
+	/**
+	 * @param redis redis相关配置 使用其中circuitBreaker开头的配置
+	 * @param stateListener 状态变化时调用 可以为null
+	 */
+	public RedisCircuitBreaker(ClusterCacheProperties.Redis redis, Consumer<State> stateListener) {
+		this.failureRateThreshold = Math.min(100, Math.max(1, redis.getCircuitBreakerFailureRateThreshold()));
+		this.slowCallDurationNanos = TimeUnit.MILLISECONDS.toNanos(redis.getCircuitBreakerSlowCallDuration());
+		this.windowSize = Math.max(1, redis.getCircuitBreakerWindowSize());
+		this.minimumCalls = Math.min(this.windowSize, Math.max(1, redis.getCircuitBreakerMinimumCalls()));
+		this.openDuration = Math.max(0, redis.getCircuitBreakerOpenDuration());
+		this.halfOpenCalls = Math.max(1, redis.getCircuitBreakerHalfOpenCalls());
+		this.outcomes = new AtomicIntegerArray(this.windowSize);
+		this.stateListener = stateListener;
+	}
+
+	/**
+	 * 是否允许访问redis HALF_OPEN状态下消耗一次探测次数
+	 */
+	public boolean tryAcquirePermission() {
+		State current = this.state;
+		if (current == State.CLOSED) {
+			return true;
+		}
+		long elapsed = System.currentTimeMillis() - stateChangedAt;
+		if (current == State.OPEN) {
+			if (elapsed >= openDuration) {
+				transition(State.OPEN, State.HALF_OPEN);
+				return tryAcquirePermission();
+			}
+		} else if (halfOpenPermits.getAndDecrement() > 0) {
+			return true;
+		} else if (elapsed >= openDuration) {
+			// 探测调用迟迟没有结果 重新熔断
+			transition(State.HALF_OPEN, State.OPEN);
+		}
+		notPermittedCount.increment();
+		return false;
+	}
+
+	/**
+	 * 调用成功 超过slowCallDuration时视为失败
+	 * @param durationNanos 调用耗时，单位纳秒
+	 */
+	public void onSuccess(long durationNanos) {
+		if (durationNanos > slowCallDurationNanos) {
+			slowCallCount.increment();
+			record(true);
+		} else {
+			successCount.increment();
+			record(false);
+		}
+	}
+
+	/**
+	 * 调用失败 只有redis访问异常{@link DataAccessException}计入失败 序列化等其他异常不记录
+	 * @param durationNanos 调用耗时，单位纳秒
+	 */
+	public void onError(long durationNanos, Throwable e) {
+		Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+		if (cause instanceof DataAccessException) {
+			failureCount.increment();
+			record(true);
+		} else {
+			onSuccess(durationNanos);
+		}
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * 统计信息 与缓存的统计一起返回
+	 */
+	public Map<String, Object> getStats() {
+		long calls = Math.min(cursor.get(), windowSize);
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("state", state.name());
+		stats.put("stateChangedAt", stateChangedAt);
+		stats.put("failureRate", calls == 0 ? 0D : windowFailures.get() * 100D / calls);
+		stats.put("successCount", successCount.sum());
+		stats.put("failureCount", failureCount.sum());
+		stats.put("slowCallCount", slowCallCount.sum());
+		stats.put("notPermittedCount", notPermittedCount.sum());
+		return stats;
+	}
+
+	private void record(boolean failure) {
+		State current = this.state;
+		if (current == State.HALF_OPEN) {
+			if (failure) {
+				transition(State.HALF_OPEN, State.OPEN);
+			} else if (halfOpenSuccesses.incrementAndGet() >= halfOpenCalls) {
+				transition(State.HALF_OPEN, State.CLOSED);
+			}
+			return;
+		}
+		if (current == State.OPEN) {
+			// 熔断前发出的调用
+			return;
+		}
+		long index = cursor.getAndIncrement();
+		int previous = outcomes.getAndSet((int) (index % windowSize), failure ? FAILURE : SUCCESS);
+		int delta = (failure ? 1 : 0) - (previous == FAILURE ? 1 : 0);
+		int failures = delta == 0 ? windowFailures.get() : windowFailures.addAndGet(delta);
+		long calls = Math.min(index + 1, windowSize);
+		if (calls >= minimumCalls && failures * 100L >= failureRateThreshold * calls) {
+			transition(State.CLOSED, State.OPEN);
+		}
+	}
+
+	private void transition(State from, State to) {
+		synchronized (this) {
+			if (this.state != from) {
+				return;
+			}
+			if (to == State.HALF_OPEN) {
+				halfOpenPermits.set(halfOpenCalls);
+				halfOpenSuccesses.set(0);
+			} else if (to == State.CLOSED) {
+				for (int i = 0; i < windowSize; i++) {
+					outcomes.set(i, 0);
+				}
+				cursor.set(0);
+				windowFailures.set(0);
+			}
+			this.stateChangedAt = System.currentTimeMillis();
+			this.state = to;
+		}
+		if (stateListener != null) {
+			stateListener.accept(to);
+		}
+	}
+}
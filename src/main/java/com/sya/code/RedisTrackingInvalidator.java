@@ -0,0 +1,431 @@
+package com.sya.code;
+
+import com.sya.config.ClusterCacheProperties;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateAdapter;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.output.StatusOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandType;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisNode;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.util.StringUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/19 00:30
+ * @description：基于redis 6 CLIENT TRACKING的1级缓存失效 每个ClusterCacheManager一个
+ *               lettuce 5.x不支持RESP3 使用RESP2的重定向方式：订阅连接订阅__redis__:invalidate
+ *               跟踪连接执行 CLIENT TRACKING on REDIRECT 订阅连接的id [BCAST PREFIX ...]
+ *               只使用广播模式（BCAST）：redis推送前缀下所有key的每一次变更
+ *               默认模式下读取在数据连接上 跟踪连接再登记该key 两者之间其他节点的写入不会产生通知 1级缓存会一直保留旧值 因此不支持
+ *               本节点通过数据连接写入的key同样会收到失效通知 写入前记录该key 在trackingSelfWriteWindow内收到的通知按次数抵消
+ *               避免清除刚写入1级缓存的值 写入失败时撤销记录 广播模式下每次成功的写入都有一次通知 其他节点的写入总会多出一次通知 仍然会清除
+ *               同一个key有多个并发的写入时无法确定1级缓存中的值是否是最后写入redis的 这些通知都清除1级缓存
+ *               连接断开后client id和跟踪状态都会丢失 不使用lettuce的自动重连 断开后清除所有1级缓存并重新建立两个连接
+ *               只支持LettuceConnectionFactory的单机和哨兵模式 集群模式下每个节点只推送自己的key 需要逐个节点订阅 不支持
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class RedisTrackingInvalidator {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisTrackingInvalidator.class);
+
+	private static final byte[] INVALIDATE_CHANNEL = "__redis__:invalidate".getBytes(StandardCharsets.UTF_8);
+
+	private final ClusterCacheManager clusterCacheManager;
+
+	private final RedisClient client;
+
+	/** 广播模式订阅的前缀 为空时订阅所有key*/
+	private final List<String> prefixes;
+
+	private final long reconnectInterval;
+
+	/** 本节点写入后忽略失效通知的时间，单位毫秒*/
+	private final long selfWriteWindow;
+
+	/** 本节点刚写入的key 值为尚未收到的失效通知*/
+	private final ConcurrentHashMap<String, SelfWrite> selfWrites = new ConcurrentHashMap<>();
+
+	private final ScheduledExecutorService scheduler;
+
+	private volatile StatefulRedisPubSubConnection<byte[], byte[]> subscriber;
+
+	private volatile StatefulRedisConnection<byte[], byte[]> tracking;
+
+	/** 两个连接都已建立并开启了跟踪*/
+	private volatile boolean active;
+
+	private volatile boolean closed;
+
+	/** 是否已经提交了一次重新连接*/
+	private final AtomicBoolean reconnectScheduled = new AtomicBoolean();
+
+	private final LongAdder invalidatedKeys = new LongAdder();
+
+	private final LongAdder flushCount = new LongAdder();
+
+	private final LongAdder selfInvalidations = new LongAdder();
+
+	private final LongAdder reconnectCount = new LongAdder();
+
+	private RedisTrackingInvalidator(ClusterCacheManager clusterCacheManager, RedisClient client,
+									 ClusterCacheProperties clusterCacheProperties) {
+		ClusterCacheProperties.Redis redis = clusterCacheProperties.getRedis();
+		this.clusterCacheManager = clusterCacheManager;
+		this.client = client;
+		if (!redis.isTrackingBroadcast()) {
+			logger.warn("CLIENT TRACKING只支持广播模式，忽略trackingBroadcast=false");
+		}
+		List<String> trackingPrefixes = new ArrayList<>(redis.getTrackingPrefixes());
+		String cachePrefix = clusterCacheProperties.getCachePrefix();
+		if (trackingPrefixes.isEmpty() && !StringUtils.isEmpty(cachePrefix)) {
+			trackingPrefixes.add(cachePrefix + ":");
+		}
+		this.prefixes = trackingPrefixes;
+		this.reconnectInterval = Math.max(100, redis.getTrackingReconnectInterval());
+		this.selfWriteWindow = Math.max(0, redis.getTrackingSelfWriteWindow());
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "cluster-cache-tracking");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.client.setOptions(ClientOptions.builder().autoReconnect(false).build());
+		this.client.addListener(new RedisConnectionStateAdapter() {
+			@Override
+			public void onRedisDisconnected(RedisChannelHandler<?, ?> connection) {
+				if (connection == subscriber || connection == tracking) {
+					onConnectionLost();
+				}
+			}
+		});
+	}
+
+	/**
+	 * 根据连接工厂创建 不支持时返回null
+	 */
+	static RedisTrackingInvalidator create(ClusterCacheManager clusterCacheManager, RedisConnectionFactory connectionFactory) {
+		ClusterCacheProperties clusterCacheProperties = clusterCacheManager.getClusterCacheProperties();
+		if (!(connectionFactory instanceof LettuceConnectionFactory)) {
+			logger.warn("CLIENT TRACKING只支持lettuce，当前连接工厂为{}，使用topic发送变更通知", connectionFactory);
+			return null;
+		}
+		LettuceConnectionFactory factory = (LettuceConnectionFactory) connectionFactory;
+		if (factory.isClusterAware()) {
+			logger.warn("CLIENT TRACKING不支持redis集群模式，使用topic发送变更通知");
+			return null;
+		}
+		RedisURI redisURI = redisURI(factory);
+		RedisClient client = factory.getClientResources() == null
+				? RedisClient.create(redisURI) : RedisClient.create(factory.getClientResources(), redisURI);
+		return new RedisTrackingInvalidator(clusterCacheManager, client, clusterCacheProperties);
+	}
+
+	private static RedisURI redisURI(LettuceConnectionFactory factory) {
+		RedisURI.Builder builder;
+		if (factory.isRedisSentinelAware()) {
+			RedisSentinelConfiguration sentinel = factory.getSentinelConfiguration();
+			builder = null;
+			for (RedisNode node : sentinel.getSentinels()) {
+				builder = builder == null
+						? RedisURI.Builder.sentinel(node.getHost(), node.getPort(), sentinel.getMaster().getName())
+						: builder.withSentinel(node.getHost(), node.getPort());
+			}
+		} else {
+			builder = RedisURI.Builder.redis(factory.getHostName(), factory.getPort());
+		}
+		builder.withDatabase(factory.getDatabase())
+				.withSsl(factory.isUseSsl())
+				.withTimeout(factory.getClientConfiguration().getCommandTimeout());
+		if (!StringUtils.isEmpty(factory.getPassword())) {
+			builder.withPassword(factory.getPassword());
+		}
+		return builder.build();
+	}
+
+	/**
+	 * 在后台建立连接 失败时按trackingReconnectInterval重试
+	 */
+	public void start() {
+		scheduler.execute(this::reconnect);
+		if (selfWriteWindow > 0) {
+			// 通知超过trackingSelfWriteWindow仍未到达的记录过期后清理
+			scheduler.scheduleWithFixedDelay(this::expireSelfWrites, selfWriteWindow, selfWriteWindow, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * 是否正在接收redis推送的变更 断开期间为false
+	 */
+	public boolean isActive() {
+		return active;
+	}
+
+	/**
+	 * 本节点即将写入该key 之后收到的一次失效通知由这次写入引起 忽略
+	 * 需要在写入redis之前调用 通知可能在写入返回之前到达
+	 * @param rawKey 序列化后的redis key
+	 */
+	public void beforeWrite(byte[] rawKey) {
+		if (selfWriteWindow <= 0 || !active) {
+			return;
+		}
+		long deadline = System.currentTimeMillis() + selfWriteWindow;
+		selfWrites.compute(new String(rawKey, StandardCharsets.UTF_8), (key, write) -> {
+			if (write == null || write.deadline < System.currentTimeMillis()) {
+				return new SelfWrite(deadline);
+			}
+			write.pending++;
+			write.concurrent = true;
+			write.deadline = deadline;
+			return write;
+		});
+	}
+
+	/**
+	 * 本节点对该key的写入失败 不会有对应的失效通知 撤销{@link #beforeWrite(byte[])}的记录
+	 * 否则多出的次数会抵消其他节点写入的通知
+	 * @param rawKey 序列化后的redis key
+	 */
+	public void writeFailed(byte[] rawKey) {
+		if (selfWrites.isEmpty()) {
+			return;
+		}
+		selfWrites.computeIfPresent(new String(rawKey, StandardCharsets.UTF_8),
+				(key, write) -> --write.pending > 0 ? write : null);
+	}
+
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("mode", "broadcast");
+		stats.put("prefixes", prefixes);
+		stats.put("active", active);
+		stats.put("invalidatedKeys", invalidatedKeys.sum());
+		stats.put("flushCount", flushCount.sum());
+		stats.put("selfInvalidations", selfInvalidations.sum());
+		stats.put("reconnectCount", reconnectCount.sum());
+		return stats;
+	}
+
+	/**
+	 * 关闭连接 不再重连
+	 */
+	public void shutdown() {
+		closed = true;
+		active = false;
+		scheduler.shutdownNow();
+		closeConnections();
+		client.shutdown();
+	}
+
+	private void reconnect() {
+		reconnectScheduled.set(false);
+		if (closed) {
+			return;
+		}
+		closeConnections();
+		try {
+			connect();
+		} catch (RuntimeException e) {
+			logger.warn("建立CLIENT TRACKING连接失败，{}毫秒后重试", reconnectInterval, e);
+			closeConnections();
+			scheduleReconnect();
+		}
+	}
+
+	private void connect() {
+		KeyCollectingCodec codec = new KeyCollectingCodec();
+		StatefulRedisPubSubConnection<byte[], byte[]> subscriber = client.connectPubSub(codec);
+		this.subscriber = subscriber;
+		subscriber.addListener(new RedisPubSubAdapter<byte[], byte[]>() {
+			@Override
+			public void message(byte[] channel, byte[] message) {
+				List<byte[]> keys = codec.drain(message);
+				onInvalidate(message == null ? null : keys);
+			}
+		});
+		long clientId = subscriber.sync().clientId();
+		subscriber.sync().subscribe(INVALIDATE_CHANNEL);
+
+		StatefulRedisConnection<byte[], byte[]> tracking = client.connect(ByteArrayCodec.INSTANCE);
+		this.tracking = tracking;
+		CommandArgs<byte[], byte[]> args = new CommandArgs<>(ByteArrayCodec.INSTANCE)
+				.add("TRACKING").add("on").add("REDIRECT").add(clientId).add("BCAST");
+		for (String prefix : prefixes) {
+			args.add("PREFIX").add(prefix);
+		}
+		tracking.sync().dispatch(CommandType.CLIENT, new StatusOutput<>(ByteArrayCodec.INSTANCE), args);
+		if (!subscriber.isOpen() || !tracking.isOpen()) {
+			throw new IllegalStateException("CLIENT TRACKING连接已断开");
+		}
+		active = true;
+		// 连接建立之前的变更无法得知
+		clusterCacheManager.clearLocal(null, null);
+		logger.info("CLIENT TRACKING已开启，订阅连接id：{}，前缀：{}", clientId, prefixes);
+	}
+
+	/**
+	 * 任意一个连接断开 跟踪状态已经丢失
+	 */
+	private void onConnectionLost() {
+		if (closed) {
+			return;
+		}
+		if (active) {
+			active = false;
+			reconnectCount.increment();
+			logger.warn("CLIENT TRACKING连接断开，清除所有1级缓存，{}毫秒后重新连接", reconnectInterval);
+			clusterCacheManager.clearLocal(null, null);
+		}
+		scheduleReconnect();
+	}
+
+	private void scheduleReconnect() {
+		if (closed || !reconnectScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			scheduler.schedule(this::reconnect, reconnectInterval, TimeUnit.MILLISECONDS);
+		} catch (RuntimeException e) {
+			reconnectScheduled.set(false);
+			logger.warn("提交CLIENT TRACKING重新连接失败", e);
+		}
+	}
+
+	/**
+	 * @param keys 变更的key null表示FLUSHDB/FLUSHALL
+	 */
+	private void onInvalidate(List<byte[]> keys) {
+		if (keys == null) {
+			flushCount.increment();
+			selfWrites.clear();
+			clusterCacheManager.clearLocal(null, null);
+			return;
+		}
+		for (byte[] key : keys) {
+			String redisKey = new String(key, StandardCharsets.UTF_8);
+			if (consumeSelfWrite(redisKey)) {
+				selfInvalidations.increment();
+				continue;
+			}
+			invalidatedKeys.increment();
+			clusterCacheManager.clearLocalByRedisKey(redisKey);
+		}
+	}
+
+	/**
+	 * @return 是否是本节点的写入引起的通知 同一个key有并发的写入时为false
+	 */
+	private boolean consumeSelfWrite(String redisKey) {
+		if (selfWrites.isEmpty()) {
+			return false;
+		}
+		boolean[] consumed = new boolean[1];
+		selfWrites.computeIfPresent(redisKey, (key, write) -> {
+			if (write.deadline < System.currentTimeMillis()) {
+				return null;
+			}
+			consumed[0] = !write.concurrent;
+			return --write.pending > 0 ? write : null;
+		});
+		return consumed[0];
+	}
+
+	private void expireSelfWrites() {
+		long now = System.currentTimeMillis();
+		selfWrites.values().removeIf(write -> write.deadline < now);
+	}
+
+	private void closeConnections() {
+		active = false;
+		selfWrites.clear();
+		StatefulRedisPubSubConnection<byte[], byte[]> subscriber = this.subscriber;
+		StatefulRedisConnection<byte[], byte[]> tracking = this.tracking;
+		this.subscriber = null;
+		this.tracking = null;
+		closeQuietly(subscriber);
+		closeQuietly(tracking);
+	}
+
+	private static void closeQuietly(StatefulRedisConnection<?, ?> connection) {
+		if (connection == null) {
+			return;
+		}
+		try {
+			connection.close();
+		} catch (RuntimeException e) {
+			logger.debug("关闭CLIENT TRACKING连接失败", e);
+		}
+	}
+
+	/**
+	 * 本节点对一个key的写入 只在ConcurrentHashMap的compute中修改
+	 */
+	private static final class SelfWrite {
+
+		/** 尚未收到的失效通知个数*/
+		private int pending = 1;
+
+		/** 记录期间是否有多次写入 并发写入时1级缓存中的值不一定是redis中最后的值*/
+		private boolean concurrent;
+
+		private long deadline;
+
+		private SelfWrite(long deadline) {
+			this.deadline = deadline;
+		}
+	}
+
+	/**
+	 * RESP2下失效通知的消息体是key的数组 lettuce 5.x的PubSubOutput逐个解码数组元素但只保留最后一个
+	 * 在解码时记录数组中所有的key 收到消息时一起取出 同一个连接的解码和消息回调在同一个线程中依次执行
+	 */
+	private static final class KeyCollectingCodec extends ByteArrayCodec {
+
+		private final List<byte[]> keys = new ArrayList<>();
+
+		@Override
+		public byte[] decodeValue(ByteBuffer bytes) {
+			byte[] value = super.decodeValue(bytes);
+			keys.add(value);
+			return value;
+		}
+
+		/**
+		 * @param message lettuce交给监听器的消息体 即数组的最后一个元素
+		 */
+		private List<byte[]> drain(byte[] message) {
+			if (keys.isEmpty()) {
+				return Collections.singletonList(message);
+			}
+			List<byte[]> drained = new ArrayList<>(keys);
+			keys.clear();
+			return drained;
+		}
+	}
+}
@@ -21,7 +21,6 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
-import org.springframework.cache.CacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
@@ -30,8 +29,12 @@ import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.*;
 
+import org.springframework.util.ClassUtils;
+
 import java.net.UnknownHostException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author     ：shishuai
@@ -54,26 +57,70 @@ public class ClusterCacheAutoConfiguration {
     @Autowired
     private ClusterCacheProperties clusterCacheProperties;
 
+    private static final boolean KRYO_PRESENT = ClassUtils.isPresent("com.esotericsoftware.kryo.Kryo",
+            ClusterCacheAutoConfiguration.class.getClassLoader());
+
+    /**
+     * 写入缓存值使用的编码 自定义ValueCodec的bean时不创建
+     */
+    @Bean("cacheValueCodec")
+    @ConditionalOnMissingBean(ValueCodec.class)
+    public ValueCodec cacheValueCodec() {
+        ClusterCacheProperties.Codec codec = clusterCacheProperties.getCodec();
+        if ("kryo".equalsIgnoreCase(codec.getType())) {
+            return new KryoValueCodec(codec.getKryoRegistrations());
+        }
+        return new JacksonValueCodec(cacheObjectMapper());
+    }
+
     @Bean("cacheRedisTemplate")
     @ConditionalOnMissingBean(name = "cacheRedisTemplate")
-    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory redisConnectionFactory)
+    public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory redisConnectionFactory,
+                                                       ValueCodec cacheValueCodec)
             throws UnknownHostException {
         RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
         RedisSerializer<String> redisSerializer = new StringRedisSerializer();
+        RedisSerializer<Object> valueSerializer = cacheValueSerializer(cacheValueCodec);
         redisTemplate.setConnectionFactory(redisConnectionFactory);
         //key序列化方式
         redisTemplate.setKeySerializer(redisSerializer);
-        redisTemplate.setValueSerializer(jackson2JsonRedisSerializer());
+        redisTemplate.setValueSerializer(valueSerializer);
         redisTemplate.setHashKeySerializer(redisSerializer);
-        redisTemplate.setHashValueSerializer(jackson2JsonRedisSerializer());
+        redisTemplate.setHashValueSerializer(valueSerializer);
         redisTemplate.afterPropertiesSet();
 
         return redisTemplate;
 
     }
-    private Jackson2JsonRedisSerializer<Object> jackson2JsonRedisSerializer() {
+
+    /**
+     * 缓存值的序列化器 写入使用配置的编码 读取时可以识别旧版本的jackson格式和所有内置编码
+     */
+    private RedisSerializer<Object> cacheValueSerializer(ValueCodec cacheValueCodec) {
+        ClusterCacheProperties.Codec codec = clusterCacheProperties.getCodec();
+        ValueCodec legacyCodec = cacheValueCodec instanceof JacksonValueCodec
+                ? cacheValueCodec : new JacksonValueCodec(cacheObjectMapper());
+        List<ValueCodec> readableCodecs = new ArrayList<>();
+        if (KRYO_PRESENT && cacheValueCodec.id() != ValueCodec.KRYO) {
+            readableCodecs.add(new KryoValueCodec(codec.getKryoRegistrations()));
+        }
+        return new CodecRedisSerializer(cacheValueCodec, readableCodecs, legacyCodec, codec.getCompressThreshold());
+    }
+
+    /**
+     * 缓存值的序列化方式 基准测试也使用该方法创建序列化器
+     */
+    public static Jackson2JsonRedisSerializer<Object> jackson2JsonRedisSerializer() {
         Jackson2JsonRedisSerializer<Object> jackson2JsonRedisSerializer =
                 new Jackson2JsonRedisSerializer<>(Object.class);
+        jackson2JsonRedisSerializer.setObjectMapper(cacheObjectMapper());
+        return jackson2JsonRedisSerializer;
+    }
+
+    /**
+     * 缓存值使用的ObjectMapper 写入类名以便反序列化为原来的类型
+     */
+    public static ObjectMapper cacheObjectMapper() {
         ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
         objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
@@ -83,14 +130,11 @@ public class ClusterCacheAutoConfiguration {
         objectMapper.setDateFormat(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"));
         objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
         objectMapper.enableDefaultTyping(ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.PROPERTY);
-
-
-        jackson2JsonRedisSerializer.setObjectMapper(objectMapper);
-        return jackson2JsonRedisSerializer;
+        return objectMapper;
     }
     @Bean("L2CacheManager")
     @ConditionalOnBean(name = "cacheRedisTemplate")
-    public CacheManager cacheManager(@Qualifier("cacheRedisTemplate") RedisTemplate<String, Object> redisTemplate) {
+    public ClusterCacheManager cacheManager(@Qualifier("cacheRedisTemplate") RedisTemplate<String, Object> redisTemplate) {
         return new ClusterCacheManager(clusterCacheProperties, redisTemplate);
     }
 
@@ -104,11 +148,18 @@ public class ClusterCacheAutoConfiguration {
     )
     public RedisMessageListenerContainer redisMessageListenerContainer(@Qualifier("cacheRedisTemplate") RedisTemplate<String, Object> stringRedisTemplate,
                                                                        ClusterCacheManager clusterCacheManager) {
-        RedisMessageListenerContainer redisMessageListenerContainer = new RedisMessageListenerContainer();
+        RedisMessageListenerContainer redisMessageListenerContainer = new RedisMessageListenerContainer() {
+            @Override
+            protected void handleSubscriptionException(Throwable ex) {
+                // 订阅断开期间的变更通知已经丢失 重新订阅后重建布隆过滤器
+                clusterCacheManager.onMessagesLost();
+                super.handleSubscriptionException(ex);
+                clusterCacheManager.onMessagesRestored();
+            }
+        };
         redisMessageListenerContainer.setConnectionFactory(stringRedisTemplate.getConnectionFactory());
         CacheMessageListener cacheMessageListener = new CacheMessageListener(stringRedisTemplate, clusterCacheManager);
         redisMessageListenerContainer.addMessageListener(cacheMessageListener, new ChannelTopic(clusterCacheProperties.getRedis().getTopic()));
         return redisMessageListenerContainer;
     }
 }
-
@@ -0,0 +1,54 @@
+package com.sya.config;
+
+import com.sya.code.ClusterCacheManager;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.lang.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 23:55
+ * @description：actuator端点 /actuator/clustercache 返回所有缓存的统计信息
+ *               /actuator/clustercache/{name}?sampleSize=n 返回一个缓存的统计信息和最多n个1级缓存key样本
+ *               样本个数不超过cache.cluster.metrics.maxSampleKeys
+ * @modified By：
+ * @version: 1.0.0$
+ */
+@Endpoint(id = "clustercache")
+public class ClusterCacheEndpoint {
+
+	private final ClusterCacheManager clusterCacheManager;
+
+	public ClusterCacheEndpoint(ClusterCacheManager clusterCacheManager) {
+		this.clusterCacheManager = clusterCacheManager;
+	}
+
+	@ReadOperation
+	public Map<String, Object> caches() {
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("caches", clusterCacheManager.getCacheStats(0));
+		result.put("publisher", clusterCacheManager.getPublisherStats());
+		Map<String, Object> circuitBreakerStats = clusterCacheManager.getCircuitBreakerStats();
+		if (circuitBreakerStats != null) {
+			result.put("circuitBreaker", circuitBreakerStats);
+		}
+		Map<String, Object> trackingStats = clusterCacheManager.getTrackingStats();
+		if (trackingStats != null) {
+			result.put("tracking", trackingStats);
+		}
+		Map<String, Object> streamStats = clusterCacheManager.getStreamStats();
+		if (streamStats != null) {
+			result.put("stream", streamStats);
+		}
+		return result;
+	}
+
+	@ReadOperation
+	public Map<String, Object> cache(@Selector String name, @Nullable Integer sampleSize) {
+		return clusterCacheManager.getCacheStats(name, sampleSize == null ? 0 : sampleSize);
+	}
+}
@@ -0,0 +1,126 @@
+package com.sya.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.sya.code.CacheMetrics;
+import com.sya.code.ClusterCache;
+import com.sya.code.ClusterCacheListener;
+import com.sya.code.ClusterCacheManager;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 23:50
+ * @description：把每个ClusterCache的{@link CacheMetrics}注册到micrometer 使用cache标签区分缓存
+ *               缓存实例是懒创建的 通过{@link ClusterCacheListener}在创建时注册 被淘汰时移除
+ *               计数使用FunctionCounter读取CacheMetrics 耗时使用Timer 由Latency转发记录
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class ClusterCacheMeterBinder implements MeterBinder, ClusterCacheListener {
+
+	private final ClusterCacheManager clusterCacheManager;
+
+	private final boolean percentileHistogram;
+
+	private volatile MeterRegistry registry;
+
+	/** 每个缓存注册的meter 淘汰时移除*/
+	private final Map<String, List<Meter>> meters = new ConcurrentHashMap<>();
+
+	public ClusterCacheMeterBinder(ClusterCacheManager clusterCacheManager, ClusterCacheProperties clusterCacheProperties) {
+		this.clusterCacheManager = clusterCacheManager;
+		this.percentileHistogram = clusterCacheProperties.getMetrics().isPercentileHistogram();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		this.registry = registry;
+		clusterCacheManager.addCacheListener(this);
+	}
+
+	@Override
+	public void onCacheCreated(ClusterCache clusterCache) {
+		MeterRegistry registry = this.registry;
+		String name = clusterCache.getName();
+		if (registry == null || meters.containsKey(name)) {
+			return;
+		}
+		CacheMetrics metrics = clusterCache.getMetrics();
+		Tags tags = Tags.of("cache", name);
+		List<Meter> cacheMeters = new ArrayList<>();
+		cacheMeters.add(counter(registry, "cluster.cache.gets", tags.and("tier", "l1", "result", "hit"),
+				metrics, CacheMetrics::getL1Hits));
+		cacheMeters.add(counter(registry, "cluster.cache.gets", tags.and("tier", "l1", "result", "miss"),
+				metrics, CacheMetrics::getL1Misses));
+		cacheMeters.add(counter(registry, "cluster.cache.gets", tags.and("tier", "l2", "result", "hit"),
+				metrics, CacheMetrics::getL2Hits));
+		cacheMeters.add(counter(registry, "cluster.cache.gets", tags.and("tier", "l2", "result", "miss"),
+				metrics, CacheMetrics::getL2Misses));
+		cacheMeters.add(counter(registry, "cluster.cache.load.failures", tags,
+				metrics, CacheMetrics::getLoadFailures));
+		cacheMeters.add(counter(registry, "cluster.cache.invalidations", tags.and("direction", "sent"),
+				metrics, CacheMetrics::getInvalidationsSent));
+		cacheMeters.add(counter(registry, "cluster.cache.invalidations", tags.and("direction", "received"),
+				metrics, CacheMetrics::getInvalidationsReceived));
+		cacheMeters.add(timer(registry, "cluster.cache.redis", tags.and("operation", "get"), metrics.getRedisGet()));
+		cacheMeters.add(timer(registry, "cluster.cache.redis", tags.and("operation", "set"), metrics.getRedisSet()));
+		cacheMeters.add(timer(registry, "cluster.cache.redis", tags.and("operation", "batch_get"), metrics.getRedisBatchGet()));
+		cacheMeters.add(timer(registry, "cluster.cache.redis", tags.and("operation", "batch_set"), metrics.getRedisBatchSet()));
+		cacheMeters.add(timer(registry, "cluster.cache.load", tags, metrics.getLoad()));
+		cacheMeters.add(timer(registry, "cluster.cache.invalidation.delay", tags, metrics.getInvalidationDelay()));
+		Cache<Object, Object> caffeineCache = clusterCache.getCaffeineCache();
+		if (caffeineCache != null) {
+			cacheMeters.add(Gauge.builder("cluster.cache.size", caffeineCache, Cache::estimatedSize)
+					.tags(tags.and("tier", "l1"))
+					.description("1级缓存的估计条数")
+					.register(registry));
+		}
+		meters.put(name, cacheMeters);
+	}
+
+	@Override
+	public void onCacheRemoved(ClusterCache clusterCache) {
+		List<Meter> cacheMeters = meters.remove(clusterCache.getName());
+		MeterRegistry registry = this.registry;
+		if (cacheMeters == null || registry == null) {
+			return;
+		}
+		CacheMetrics metrics = clusterCache.getMetrics();
+		metrics.getRedisGet().setRecorder(null);
+		metrics.getRedisSet().setRecorder(null);
+		metrics.getRedisBatchGet().setRecorder(null);
+		metrics.getRedisBatchSet().setRecorder(null);
+		metrics.getLoad().setRecorder(null);
+		metrics.getInvalidationDelay().setRecorder(null);
+		for (Meter meter : cacheMeters) {
+			registry.remove(meter);
+		}
+	}
+
+	private static Meter counter(MeterRegistry registry, String name, Tags tags,
+								 CacheMetrics metrics, ToDoubleFunction<CacheMetrics> count) {
+		return FunctionCounter.builder(name, metrics, count).tags(tags).register(registry);
+	}
+
+	private Meter timer(MeterRegistry registry, String name, Tags tags, CacheMetrics.Latency latency) {
+		Timer timer = Timer.builder(name)
+				.tags(tags)
+				.publishPercentileHistogram(percentileHistogram)
+				.register(registry);
+		latency.setRecorder(nanos -> timer.record(nanos, TimeUnit.NANOSECONDS));
+		return timer;
+	}
+}
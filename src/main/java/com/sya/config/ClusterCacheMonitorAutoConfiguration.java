@@ -0,0 +1,54 @@
+package com.sya.config;
+
+import com.sya.code.ClusterCacheManager;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/19 10:20
+ * @description：监控指标和actuator端点的自动装配
+ *               ClusterCacheManager由ClusterCacheAutoConfiguration的@Bean方法注册 嵌套的配置类先于外部类的@Bean方法处理
+ *               所以单独作为一个自动装配类 在ClusterCacheAutoConfiguration之后处理 @ConditionalOnBean才能找到ClusterCacheManager
+ * @modified By：
+ * @version: 1.0.0$
+ */
+@Configuration
+@AutoConfigureAfter(ClusterCacheAutoConfiguration.class)
+public class ClusterCacheMonitorAutoConfiguration {
+
+	/**
+	 * classpath中有micrometer时注册每个缓存的监控指标
+	 */
+	@Configuration
+	@ConditionalOnClass(name = "io.micrometer.core.instrument.binder.MeterBinder")
+	static class ClusterCacheMetricsConfiguration {
+
+		@Bean
+		@ConditionalOnBean(ClusterCacheManager.class)
+		@ConditionalOnMissingBean
+		public ClusterCacheMeterBinder clusterCacheMeterBinder(ClusterCacheManager clusterCacheManager,
+															   ClusterCacheProperties clusterCacheProperties) {
+			return new ClusterCacheMeterBinder(clusterCacheManager, clusterCacheProperties);
+		}
+	}
+
+	/**
+	 * classpath中有actuator时提供clustercache端点
+	 */
+	@Configuration
+	@ConditionalOnClass(name = "org.springframework.boot.actuate.endpoint.annotation.Endpoint")
+	static class ClusterCacheEndpointConfiguration {
+
+		@Bean
+		@ConditionalOnBean(ClusterCacheManager.class)
+		@ConditionalOnMissingBean
+		public ClusterCacheEndpoint clusterCacheEndpoint(ClusterCacheManager clusterCacheManager) {
+			return new ClusterCacheEndpoint(clusterCacheManager);
+		}
+	}
+}
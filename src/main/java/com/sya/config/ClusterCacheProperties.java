@@ -2,8 +2,12 @@ package com.sya.config;
 
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 /**
  * @author     ：shishuai
  * @date       ：Created in 2021/11/17 14:54
@@ -31,6 +35,11 @@ public class ClusterCacheProperties {
 	 * 缓存的实例个数限制 就是有多少个ClusterCache
 	 */
 	private int cacheInstanceNum = 1000;
+	/***
+	 * 所有1级缓存共享的内存预算，单位字节，按序列化后的大小估算，0表示不限制（按maximumSize个数限制）
+	 * 开启后预算在各个cache之间平均分配，设置了maximumWeight的cache不超过自己的maximumWeight，剩余的分给其他cache
+	 */
+	private long caffeineMaximumWeight = 0;
 	/***
 	 * 对于redis 缓存的一些限制
 	 */
@@ -39,6 +48,26 @@ public class ClusterCacheProperties {
 	 * 只是针对 caffeine 缓存的一些限制  对redis没有用
 	 */
 	private CacheDefault cacheDefault = new CacheDefault();
+	/***
+	 * 写入redis的缓存值的编码方式
+	 */
+	private Codec codec = new Codec();
+	/***
+	 * 热点key识别 热点key额外放入1级缓存的热点区 不会被普通key挤出
+	 */
+	private HotKey hotKey = new HotKey();
+	/***
+	 * 堆外的1级缓存 位于caffeine和redis之间
+	 */
+	private OffHeap offHeap = new OffHeap();
+	/***
+	 * 布隆过滤器 在访问redis之前排除一定不存在的key 防止缓存穿透
+	 */
+	private BloomFilter bloomFilter = new BloomFilter();
+	/***
+	 * 监控指标 micrometer和actuator端点
+	 */
+	private Metrics metrics = new Metrics();
 	/***
 	 * 为了方便一些共用全局的过期配置 对redis  caffeine都有用
 	 */
@@ -60,6 +89,258 @@ public class ClusterCacheProperties {
 		/** 缓存更新时通知其他节点的topic名称*/
 		private String topic = "cache:redis:caffeine:topic";
 
+		/** 是否启用分布式加载租约，开启后同一个key在集群内同一时刻只有一个节点执行valueLoader，默认false*/
+		private boolean loadLeaseEnable = false;
+
+		/** 加载租约的持有时间，单位毫秒，应大于valueLoader的最长执行时间*/
+		private long loadLeaseTime = 10000;
+
+		/** 未获得租约的节点等待其他节点加载结果的最长时间，单位毫秒，超时后自行加载*/
+		private long loadLeaseWaitTime = 3000;
+
+		/** 提前刷新比例，redis中的数据已经过去的过期时间达到该比例后被命中时，返回当前值并在后台重新加载，
+		 * 例如0.8表示过期时间过去80%后开始刷新，0表示不提前刷新*/
+		private double refreshAheadFraction = 0;
+
+		/** 过期时间随机抖动比例，写入redis的过期时间在[expire, expire * (1 + expireJitter)]之间随机，
+		 * 避免同一批写入的key在同一时刻集中过期，0表示不抖动*/
+		private double expireJitter = 0;
+
+		/** 每个cacheName的过期时间抖动比例，优先于expireJitter*/
+		private Map<String, Double> expireJitters = new HashMap<>();
+
+		/** 概率提前过期(XFetch)的系数beta，越接近过期、加载耗时越长，命中时提前在后台重新加载的概率越大，
+		 * 1为推荐值，大于1更倾向于提前刷新，0表示不开启*/
+		private double earlyExpirationBeta = 0;
+
+		/** 每个cacheName的概率提前过期系数，优先于earlyExpirationBeta*/
+		private Map<String, Double> earlyExpirationBetas = new HashMap<>();
+
+		/** 缓存变更通知合并发送的时间窗口，单位毫秒，小于等于0时每次变更立即发送*/
+		private long publishFlushInterval = 10;
+
+		/** 单次合并发送的最大通知条数*/
+		private int publishBatchSize = 200;
+
+		/** 待发送通知队列的容量，队列满时直接发送*/
+		private int publishQueueCapacity = 10000;
+
+		/** 合并发送失败的通知在之后的发送中重试的最长时间，单位毫秒，超过后丢弃并记录到droppedMessageCount*/
+		private long publishRetryTimeout = 5000;
+
+		/** 发布订阅通知的格式：json 每条通知单独发送一次json（默认），与旧版本节点兼容；binary 合并成一条二进制通知发送。
+		 * 旧版本节点无法解析binary，升级时先把所有节点升级到新版本并保持json，全部完成后再改为binary逐个重启。
+		 * messageTransport为stream时总是使用binary*/
+		private String messageFormat = "json";
+
+		/** 是否启用命名空间版本号，启用后clear只需要版本号加1，旧数据依靠过期时间淘汰，默认false
+		 * 各节点通过变更通知刷新本地的版本号，需要开启caffeineEnable才会订阅变更通知*/
+		private boolean namespaceVersionEnable = false;
+
+		/** 命名空间版本号与redis同步的间隔，单位秒，只在messageTransport为topic时生效，
+		 * 丢失了其他节点的清除通知时版本号落后，同步后清除1级缓存，redis中的版本号丢失时以本地的为准重新写入，0表示不同步*/
+		private long generationSyncInterval = 60;
+
+		/** 是否把cacheName作为redis集群的hash tag，开启后key为 前缀:{cacheName}:key，同一个cache的key在同一个slot，
+		 * 可以使用MGET等多key命令，但是单个cache的数据不再分散到多个节点，切换后旧的key只能依靠过期时间淘汰，默认false*/
+		private boolean hashTagEnable = false;
+
+		/** 使用hash tag的cacheName，hashTagEnable为false时只对这些cache生效*/
+		private Set<String> hashTagCacheNames = new HashSet<>();
+
+		/** 清除缓存时每次SCAN的COUNT*/
+		private int scanCount = 1000;
+
+		/** 清除缓存时每次UNLINK的key个数*/
+		private int deleteBatchSize = 500;
+
+		/** getAll、putAll等批量操作中每条MGET、每个pipeline的最大key个数，集群模式下按slot分组后再按该值拆分*/
+		private int batchSize = 500;
+
+		/** 集群模式下批量操作等待所有节点返回结果的最长时间，单位毫秒*/
+		private long batchTimeout = 10000;
+
+		/** 是否开启redis熔断，redis失败或变慢的比例过高时只使用1级缓存，不存在的key直接执行valueLoader，默认false*/
+		private boolean circuitBreakerEnable = false;
+
+		/** 熔断的失败比例阈值，百分比，慢调用同样视为失败*/
+		private int circuitBreakerFailureRateThreshold = 50;
+
+		/** 超过该耗时的redis调用视为慢调用，单位毫秒*/
+		private long circuitBreakerSlowCallDuration = 1000;
+
+		/** 统计失败比例的最近调用次数*/
+		private int circuitBreakerWindowSize = 100;
+
+		/** 最近调用次数达到该值后才计算失败比例*/
+		private int circuitBreakerMinimumCalls = 20;
+
+		/** 熔断后经过该时间开始探测redis，单位毫秒*/
+		private long circuitBreakerOpenDuration = 30000;
+
+		/** 探测调用的次数，全部成功后恢复，任意一次失败重新熔断*/
+		private int circuitBreakerHalfOpenCalls = 5;
+
+		/** 熔断期间在本地写入或删除的key最多记录的个数，恢复后从redis中删除并通知其他节点，
+		 * 超过后恢复时清除整个cache，0表示不记录 */
+		private int circuitBreakerPendingSize = 10000;
+
+		/** 熔断期间是否返回1级缓存和堆外缓存中已经过期的值*/
+		private boolean circuitBreakerServeStale = true;
+
+		/** 1级缓存过期后继续保留的时间，单位秒，期间的值只在熔断时返回，熔断器关闭时按未命中处理，
+		 * 需要开启circuitBreakerServeStale并设置expireAfterWrite，0表示不保留，没有开启堆外缓存时熔断期间只能返回未过期的值*/
+		private long circuitBreakerStaleTime = 0;
+
+		/** 1级缓存的失效方式：topic 通过topic发送变更通知（默认）；tracking 使用redis 6的CLIENT TRACKING由redis推送变更的key，
+		 * 不经过本组件的写入同样会清除1级缓存，单个key的变更不再发送通知；both 同时使用两种方式。
+		 * tracking只支持lettuce的单机和哨兵模式，不支持时退回topic*/
+		private String invalidationMode = "topic";
+
+		/** tracking是否使用广播模式（BCAST），广播模式下redis推送trackingPrefixes下所有key的变更。
+		 * 已废弃：只支持广播模式，非广播模式下读取和登记key之间其他节点的写入不会产生通知，设置为false时忽略*/
+		@Deprecated
+		private boolean trackingBroadcast = true;
+
+		/** 广播模式订阅的key前缀，为空时使用 cachePrefix: ，cachePrefix也为空时订阅所有key的变更*/
+		private Set<String> trackingPrefixes = new HashSet<>();
+
+		/** tracking连接断开后重新连接的间隔，单位毫秒，断开期间无法得知key的变更，连接断开和恢复时清除所有1级缓存*/
+		private long trackingReconnectInterval = 1000;
+
+		/** 本节点写入的key在该时间内收到的失效通知按写入次数视为自己的写入引起的，不清除刚写入1级缓存的值，单位毫秒，
+		 * 写入失败时撤销，同一个key有并发写入时仍然清除，0表示不区分*/
+		private long trackingSelfWriteWindow = 1000;
+
+		/** 变更通知的传输方式：topic 使用发布订阅（默认），断线期间的通知会丢失；stream 使用redis stream，
+		 * 每个节点记录已处理的消息id，断线或停顿后从该位置继续读取，消息已被裁剪时只清除期间有变更的cache。
+		 * 所有节点需要使用相同的传输方式*/
+		private String messageTransport = "topic";
+
+		/** stream的key，每个cache最近一次变更的消息id记录在 streamKey:caches 中，
+		 * 两个key使用同一个hash tag以便在redis集群中用同一个脚本写入*/
+		private String streamKey = "cache:redis:caffeine:{stream}";
+
+		/** stream保留的最大消息条数（近似裁剪），节点落后超过该条数时按cache重新同步*/
+		private long streamMaxLength = 100000;
+
+		/** 每次读取stream的最大消息条数*/
+		private int streamReadCount = 500;
+
+		/** 读取stream时没有新消息的最长阻塞时间，单位毫秒，应小于redis命令的超时时间*/
+		private long streamBlockTime = 1000;
+
+		/** 读取stream失败后重试的间隔，单位毫秒*/
+		private long streamRetryInterval = 1000;
+
+	}
+
+	/****
+	 * 缓存值的编码方式 读取时根据头部识别格式 可以先升级所有节点再切换编码方式
+	 */
+	@Data
+	public class Codec {
+
+		/** 写入时使用的编码，jackson（默认，与旧版本格式相同）或kryo，自定义ValueCodec的bean优先*/
+		private String type = "jackson";
+
+		/** 编码后超过该字节数的值使用LZ4压缩，0表示不压缩，大于0时需要依赖org.lz4:lz4-java 否则启动失败*/
+		private int compressThreshold = 0;
+
+		/** kryo按顺序注册的类名，注册后只写入类的编号，所有节点的配置必须一致*/
+		private List<String> kryoRegistrations = new ArrayList<>();
+	}
+
+	/****
+	 * 热点key识别 需要开启caffeineEnable
+	 */
+	@Data
+	public class HotKey {
+
+		/** 是否开启热点key识别，默认false*/
+		private boolean enable = false;
+
+		/** 每个cache的热点key个数上限，也是热点区的容量*/
+		private int capacity = 32;
+
+		/** 一个统计窗口内访问次数达到该值的key视为热点*/
+		private int threshold = 64;
+
+		/** 统计窗口的访问次数，每个cache每访问这么多次所有计数减半，只反映最近的热度*/
+		private int windowSize = 10000;
+
+		/** 热点区中数据写入后的过期时间，单位秒，比普通的1级缓存更长，redis中的数据更新时同样会通知清除*/
+		private long expireAfterWrite = 600;
+
+		/** 是否把各节点识别出的热点key上报到redis，可以通过ClusterCacheManager查看整个集群的热点key*/
+		private boolean reportEnable = false;
+	}
+
+	/****
+	 * 堆外的1级缓存 存放序列化后的值 不占用堆内存 需要开启caffeineEnable
+	 * 读取顺序为caffeine、堆外、redis，堆外命中时反序列化后放回caffeine
+	 */
+	@Data
+	public class OffHeap {
+
+		/** 是否所有cache都使用堆外缓存，默认false*/
+		private boolean enable = false;
+
+		/** 使用堆外缓存的cacheName，enable为false时只对这些cache生效*/
+		private Set<String> cacheNames = new HashSet<>();
+
+		/** 每个cache的堆外内存上限，单位字节，按segmentSize分段，用到时才分配*/
+		private long capacity = 64 * 1024 * 1024;
+
+		/** 所有cache共享的堆外内存上限，单位字节，预算用完后各cache只循环使用已经分配的段，cache实例被淘汰时归还，0表示不限制*/
+		private long totalCapacity = 256 * 1024 * 1024;
+
+		/** 每段的大小，单位字节，写满后循环使用最早的段，超过该大小的值不放入堆外*/
+		private int segmentSize = 4 * 1024 * 1024;
+
+		/** 堆外数据写入后的过期时间，单位秒，redis中的数据更新时同样会通知清除，0表示只依赖redis的过期时间*/
+		private long expireAfterWrite = 600;
+	}
+
+	/****
+	 * 每个cache一个布隆过滤器 记录redis中可能存在的key 只用于get(key, valueLoader)：1级缓存未命中并且一定不存在的key
+	 * 不先取redis 直接进入加载 加载前再取一次redis确认 其他节点刚写入、通知还没有到达的key不会被漏掉
+	 * 依赖变更通知同步其他节点的写入 需要开启caffeineEnable，启动时、误判率过高时和每隔rebuildInterval（需要开启）通过SCAN重建
+	 * 连接断开可能丢失了通知时重建完成之前不排除任何key，invalidationMode为tracking时不发送单个key的通知，不使用布隆过滤器
+	 */
+	@Data
+	public class BloomFilter {
+
+		/** 是否所有cache都使用布隆过滤器，默认false*/
+		private boolean enable = false;
+
+		/** 使用布隆过滤器的cacheName，enable为false时只对这些cache生效*/
+		private Set<String> cacheNames = new HashSet<>();
+
+		/** 每个cache预计的key个数，决定过滤器占用的内存，默认约1.2MB*/
+		private long expectedInsertions = 1000000;
+
+		/** key个数达到expectedInsertions时的误判率，估算的误判率超过2倍时重建*/
+		private double fpp = 0.01;
+
+		/** 定期重建的间隔，单位秒，清掉已经删除的key，每次重建都会SCAN整个cache，0表示不定期重建（默认）*/
+		private long rebuildInterval = 0;
+	}
+
+	/****
+	 * 监控指标 每个cache的命中率和耗时始终在本地统计，classpath中有micrometer时注册为指标，有actuator时提供clustercache端点
+	 */
+	@Data
+	public class Metrics {
+
+		/** redis读写、valueLoader、变更通知传播的耗时是否输出直方图（用于计算百分位），默认false*/
+		private boolean percentileHistogram = false;
+
+		/** actuator端点返回的key样本的最大个数*/
+		private int maxSampleKeys = 100;
+
+		/** 读写的debug日志每多少次记录一次，小于等于1时每次都记录*/
+		private int traceSampleRate = 100;
 	}
 
 	/****
@@ -73,15 +354,22 @@ public class ClusterCacheProperties {
 		protected long expireAfterAccess;
 		/** 写入后过期时间，单位秒*/
 		protected long expireAfterWrite = 120;
-		/** 写入后刷新时间，单位秒*/
+		/** 写入后刷新时间，单位秒，1级缓存写入超过该时间后被命中时，返回当前值并在后台重新加载，0表示不刷新*/
 		protected long refreshAfterWrite;
+		/** 软过期后仍然返回旧值的时间，单位秒，大于0时expireAfterWrite为软过期时间，超过后命中时立即返回旧值，
+		 * 并在后台从redis重新读取（redis中没有时使用valueLoader加载），expireAfterWrite+staleWhileRevalidate后才真正过期，0表示不开启*/
+		protected long staleWhileRevalidate;
+		/** 重新验证的时间，单位秒，大于0时1级缓存超过expireAfterWrite（开启staleWhileRevalidate时再加上该时间）后仍保留该时间，
+		 * 期间命中时只比较redis中值的SHA1摘要，没有变化时重新计时继续使用本地的值，有变化时使用同一次调用返回的新值，
+		 * 避免重新读取和反序列化没有变化的大value，0表示不开启*/
+		protected long revalidateWindow;
 		/** 初始化大小,默认50*/
 		protected int initialCapacity = 50;
 		/** 最大缓存对象key-value 个数*/
 		protected long maximumSize = 50;
-		
-		/** 由于权重需要缓存对象来提供，对于使用spring cache这种场景不是很适合，所以暂不支持配置*/
-//		private long maximumWeight;
+
+		/** 最大内存，单位字节，按序列化后的大小估算（读取redis时直接使用返回的字节数），大于0时代替maximumSize*/
+		protected long maximumWeight;
 	}
 	public class Cache15m extends CacheDefault{}
 	public class Cache30m extends CacheDefault{}
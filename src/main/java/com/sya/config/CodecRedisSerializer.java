@@ -0,0 +1,199 @@
+package com.sya.config;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.util.ClassUtils;
+
+import java.util.Collection;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 17:00
+ * @description：按ValueCodec编码缓存值 并在超过阈值时使用LZ4压缩
+ *               格式：魔数(1字节) + 标志(1字节，低4位为编码编号，0x10表示LZ4压缩) [+ 原始长度(4字节)] + 内容
+ *               jackson编码且不压缩时不写头部 与旧版本格式相同；读取时没有魔数的值按旧版本的jackson格式解析
+ *               json的第一个字节一定是ascii字符 不会与魔数冲突
+ *               lz4-java是可选依赖 只在开启压缩或者读到压缩的值时使用
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class CodecRedisSerializer implements RedisSerializer<Object> {
+
+    private static final byte MAGIC = (byte) 0xC5;
+
+    private static final int FLAG_LZ4 = 0x10;
+
+    private static final int CODEC_MASK = 0x0F;
+
+    private static final int HEADER_LENGTH = 2;
+
+    private static final int LENGTH_FIELD = 4;
+
+    private static final boolean LZ4_PRESENT = ClassUtils.isPresent("net.jpountz.lz4.LZ4Factory",
+            CodecRedisSerializer.class.getClassLoader());
+
+    /** 写入使用的编码*/
+    private final ValueCodec codec;
+
+    /** 按编号索引的可读取的编码*/
+    private final ValueCodec[] codecs = new ValueCodec[CODEC_MASK + 1];
+
+    /** 旧版本没有头部的值使用的编码*/
+    private final ValueCodec legacyCodec;
+
+    /** 编码后超过该字节数时压缩，0表示不压缩*/
+    private final int compressThreshold;
+
+    /** classpath中没有lz4-java时为null*/
+    private final Lz4 lz4;
+
+    /**
+     * @param codec 写入使用的编码
+     * @param readableCodecs 读取时可以识别的编码 包含codec
+     * @param legacyCodec 旧版本没有头部的值使用的编码
+     * @param compressThreshold 编码后超过该字节数时压缩，0表示不压缩
+     */
+    public CodecRedisSerializer(ValueCodec codec, Collection<ValueCodec> readableCodecs, ValueCodec legacyCodec,
+                                int compressThreshold) {
+        if (compressThreshold > 0 && !LZ4_PRESENT) {
+            throw new IllegalStateException("compressThreshold大于0时需要依赖org.lz4:lz4-java");
+        }
+        this.codec = codec;
+        this.legacyCodec = legacyCodec;
+        for (ValueCodec readable : readableCodecs) {
+            register(readable);
+        }
+        register(codec);
+        register(legacyCodec);
+        this.compressThreshold = compressThreshold;
+        this.lz4 = LZ4_PRESENT ? new Lz4() : null;
+    }
+
+    private void register(ValueCodec readable) {
+        int id = readable.id();
+        if (id <= 0 || id > CODEC_MASK) {
+            throw new IllegalArgumentException("ValueCodec的编号必须在1~15之间: " + readable.getClass().getName());
+        }
+        ValueCodec registered = codecs[id];
+        if (registered != null && registered.getClass() != readable.getClass()) {
+            throw new IllegalArgumentException("ValueCodec的编号重复: " + id);
+        }
+        if (registered == null || readable == codec) {
+            codecs[id] = readable;
+        }
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        byte[] encoded = codec.encode(value);
+        if (compressThreshold > 0 && encoded.length > compressThreshold) {
+            byte[] compressed = compress(encoded);
+            if (compressed != null) {
+                return compressed;
+            }
+        }
+        if (codec == legacyCodec) {
+            return encoded;
+        }
+        byte[] bytes = new byte[HEADER_LENGTH + encoded.length];
+        bytes[0] = MAGIC;
+        bytes[1] = codec.id();
+        System.arraycopy(encoded, 0, bytes, HEADER_LENGTH, encoded.length);
+        return bytes;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != MAGIC) {
+            return legacyCodec.decode(bytes, 0, bytes.length);
+        }
+        if (bytes.length < HEADER_LENGTH) {
+            throw new SerializationException("缓存值头部不完整");
+        }
+        int flags = bytes[1];
+        ValueCodec readable = codecs[flags & CODEC_MASK];
+        if (readable == null) {
+            throw new SerializationException("不能识别的缓存值编码: " + (flags & CODEC_MASK));
+        }
+        if ((flags & FLAG_LZ4) == 0) {
+            return readable.decode(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+        }
+        if (bytes.length < HEADER_LENGTH + LENGTH_FIELD) {
+            throw new SerializationException("压缩的缓存值头部不完整");
+        }
+        if (lz4 == null) {
+            throw new SerializationException("缓存值使用了LZ4压缩，需要依赖org.lz4:lz4-java");
+        }
+        int length = readLength(bytes);
+        byte[] decompressed = new byte[length];
+        try {
+            lz4.decompress(bytes, HEADER_LENGTH + LENGTH_FIELD, decompressed, length);
+        } catch (RuntimeException e) {
+            throw new SerializationException("LZ4解压失败", e);
+        }
+        return readable.decode(decompressed, 0, length);
+    }
+
+    /**
+     * 压缩后没有变小时返回null
+     */
+    private byte[] compress(byte[] encoded) {
+        int offset = HEADER_LENGTH + LENGTH_FIELD;
+        int maxLength = lz4.maxCompressedLength(encoded.length);
+        byte[] bytes = new byte[offset + maxLength];
+        int compressedLength = lz4.compress(encoded, bytes, offset, maxLength);
+        if (offset + compressedLength >= HEADER_LENGTH + encoded.length) {
+            return null;
+        }
+        bytes[0] = MAGIC;
+        bytes[1] = (byte) (codec.id() | FLAG_LZ4);
+        bytes[2] = (byte) (encoded.length >>> 24);
+        bytes[3] = (byte) (encoded.length >>> 16);
+        bytes[4] = (byte) (encoded.length >>> 8);
+        bytes[5] = (byte) encoded.length;
+        byte[] result = new byte[offset + compressedLength];
+        System.arraycopy(bytes, 0, result, 0, result.length);
+        return result;
+    }
+
+    private static int readLength(byte[] bytes) {
+        return ((bytes[2] & 0xFF) << 24) | ((bytes[3] & 0xFF) << 16) | ((bytes[4] & 0xFF) << 8) | (bytes[5] & 0xFF);
+    }
+
+    /**
+     * LZ4的压缩器和解压器 单独放在内部类中 外部类不引用lz4-java的类型 没有lz4-java时不加载
+     */
+    private static final class Lz4 {
+
+        private final LZ4Compressor compressor;
+
+        private final LZ4FastDecompressor decompressor;
+
+        private Lz4() {
+            LZ4Factory factory = LZ4Factory.fastestInstance();
+            this.compressor = factory.fastCompressor();
+            this.decompressor = factory.fastDecompressor();
+        }
+
+        int maxCompressedLength(int length) {
+            return compressor.maxCompressedLength(length);
+        }
+
+        int compress(byte[] src, byte[] dest, int destOffset, int maxLength) {
+            return compressor.compress(src, 0, src.length, dest, destOffset, maxLength);
+        }
+
+        void decompress(byte[] src, int srcOffset, byte[] dest, int length) {
+            decompressor.decompress(src, srcOffset, dest, 0, length);
+        }
+    }
+}
@@ -41,7 +41,8 @@ public class FastJsonRedisSerializer<T> implements RedisSerializer<T> {
         if (null == t) {
             return new byte[0];
         }
-        return JSON.toJSONString(t).getBytes(DEFAULT_CHARSET);
+        // 直接输出UTF-8字节 fastjson内部复用线程本地的缓冲区 不生成中间的String
+        return JSON.toJSONBytes(t);
     }
 
     @Override
@@ -49,7 +50,6 @@ public class FastJsonRedisSerializer<T> implements RedisSerializer<T> {
         if (null == bytes || bytes.length <= 0) {
             return null;
         }
-        String str = new String(bytes, DEFAULT_CHARSET);
-        return JSON.parseObject(str, clazz, Feature.IgnoreAutoType);
+        return JSON.parseObject(bytes, 0, bytes.length, DEFAULT_CHARSET, clazz, Feature.IgnoreAutoType);
     }
 }
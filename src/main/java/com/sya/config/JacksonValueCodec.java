@@ -0,0 +1,45 @@
+package com.sya.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.IOException;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 16:45
+ * @description：jackson编码 不压缩时与旧版本写入的格式完全相同 直接在字节数组的指定范围上解析 不复制
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class JacksonValueCodec implements ValueCodec {
+
+    private final ObjectMapper objectMapper;
+
+    public JacksonValueCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public byte id() {
+        return JACKSON;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new SerializationException("jackson编码失败: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Object decode(byte[] bytes, int offset, int length) {
+        try {
+            return objectMapper.readValue(bytes, offset, length, Object.class);
+        } catch (IOException e) {
+            throw new SerializationException("jackson解码失败: " + e.getMessage(), e);
+        }
+    }
+}
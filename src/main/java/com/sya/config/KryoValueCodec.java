@@ -0,0 +1,108 @@
+package com.sya.config;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import com.esotericsoftware.kryo.util.Pool;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.util.ClassUtils;
+
+import java.util.List;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 16:50
+ * @description：kryo二进制编码 比带类名的json小且快 kryo实例不是线程安全的 通过对象池复用
+ *               没有注册的类写入类名 注册过的类只写入编号
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class KryoValueCodec implements ValueCodec {
+
+    /** 自定义注册的起始编号 避开kryo默认注册的基础类型*/
+    private static final int REGISTRATION_BASE_ID = 100;
+
+    private static final int OUTPUT_BUFFER_SIZE = 256;
+
+    /** 复用的输出缓冲区超过该大小时不再保留*/
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    /** 每个线程复用的输出缓冲区*/
+    private final ThreadLocal<Output> output = ThreadLocal.withInitial(() -> new Output(OUTPUT_BUFFER_SIZE, -1));
+
+    private final Pool<Kryo> pool;
+
+    /**
+     * @param registrations 按顺序注册的类名
+     */
+    public KryoValueCodec(List<String> registrations) {
+        ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+        this.pool = new Pool<Kryo>(true, false) {
+            @Override
+            protected Kryo create() {
+                Kryo kryo = new Kryo();
+                kryo.setClassLoader(classLoader);
+                kryo.setRegistrationRequired(false);
+                kryo.setReferences(true);
+                kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+                // 缓存的null值必须反序列化为同一个实例 否则不会被识别为null
+                kryo.addDefaultSerializer(NullValue.class, new NullValueSerializer());
+                for (int i = 0; i < registrations.size(); i++) {
+                    kryo.register(ClassUtils.resolveClassName(registrations.get(i), classLoader), REGISTRATION_BASE_ID + i);
+                }
+                return kryo;
+            }
+        };
+    }
+
+    @Override
+    public byte id() {
+        return KRYO;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        Kryo kryo = pool.obtain();
+        Output buffer = output.get();
+        buffer.reset();
+        try {
+            kryo.writeClassAndObject(buffer, value);
+            return buffer.toBytes();
+        } catch (RuntimeException e) {
+            throw new SerializationException("kryo编码失败: " + value.getClass().getName(), e);
+        } finally {
+            pool.free(kryo);
+            if (buffer.getBuffer().length > MAX_RETAINED_BUFFER) {
+                output.remove();
+            }
+        }
+    }
+
+    @Override
+    public Object decode(byte[] bytes, int offset, int length) {
+        Kryo kryo = pool.obtain();
+        try (Input input = new Input(bytes, offset, length)) {
+            return kryo.readClassAndObject(input);
+        } catch (RuntimeException e) {
+            throw new SerializationException("kryo解码失败", e);
+        } finally {
+            pool.free(kryo);
+        }
+    }
+
+    private static class NullValueSerializer extends Serializer<Object> {
+
+        @Override
+        public void write(Kryo kryo, Output output, Object object) {
+        }
+
+        @Override
+        public Object read(Kryo kryo, Input input, Class<?> type) {
+            return NullValue.INSTANCE;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.sya.config;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 16:40
+ * @description：缓存值编码的扩展点 注册为bean后替换配置的编码方式
+ *               编号写入每个值的头部 读取时按编号选择编码 所以同一个编号在所有节点上必须是同一种编码
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public interface ValueCodec {
+
+    /** jackson编码的编号*/
+    byte JACKSON = 1;
+
+    /** kryo编码的编号*/
+    byte KRYO = 2;
+
+    /**
+     * 编码的编号 1~15，1和2已被内置编码占用
+     */
+    byte id();
+
+    /**
+     * 编码缓存值
+     * @param value 缓存值 不为null
+     * @return 编码后的字节
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 解码缓存值
+     * @param bytes 字节数组
+     * @param offset 编码内容的起始位置
+     * @param length 编码内容的长度
+     * @return 缓存值
+     */
+    Object decode(byte[] bytes, int offset, int length);
+}
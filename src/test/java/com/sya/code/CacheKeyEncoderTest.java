@@ -0,0 +1,65 @@
+package com.sya.code;
+
+import org.junit.Test;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/19 15:30
+ * @description：key的编码结果与 StringRedisSerializer 序列化字符串形式的结果完全相同
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class CacheKeyEncoderTest {
+
+	private final StringRedisSerializer stringSerializer = new StringRedisSerializer();
+
+	private static final List<Object> KEYS = Arrays.asList("key", "", "中文", "emoji😀", "lone\uD800surrogate",
+			"tail\uDC00", 0L, 7L, -7L, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE, 0, -1, Integer.MAX_VALUE,
+			Integer.MIN_VALUE, UUID.randomUUID(), new UUID(0, 0), new UUID(-1, -1), 3.5D, Arrays.asList("a", 1));
+
+	@Test
+	public void matchesStringRedisSerializer() {
+		assertEncodings(new CacheKeyEncoder("prefix", "users", false, false), 0, "prefix:users:");
+	}
+
+	@Test
+	public void matchesStringRedisSerializerWithoutPrefix() {
+		assertEncodings(new CacheKeyEncoder("", "users", false, false), 0, "users:");
+		assertEncodings(new CacheKeyEncoder(null, "users", false, false), 0, "users:");
+	}
+
+	@Test
+	public void wrapsNameInHashTag() {
+		assertEncodings(new CacheKeyEncoder("prefix", "users", true, false), 0, "prefix:{users}:");
+	}
+
+	@Test
+	public void followsGeneration() {
+		CacheKeyEncoder encoder = new CacheKeyEncoder("prefix", "users", false, true);
+		assertEncodings(encoder, 0, "prefix:users:v0:");
+		assertEncodings(encoder, 3, "prefix:users:v3:");
+		assertEncodings(encoder, 0, "prefix:users:v0:");
+	}
+
+	@Test
+	public void ignoresGenerationWhenNotVersioned() {
+		assertEncodings(new CacheKeyEncoder("prefix", "users", false, false), 3, "prefix:users:");
+	}
+
+	private void assertEncodings(CacheKeyEncoder encoder, long generation, String prefix) {
+		assertEquals(prefix, encoder.getPrefix(generation));
+		for (Object key : KEYS) {
+			String expected = prefix + key;
+			assertEquals(expected, encoder.toString(key, generation));
+			assertArrayEquals("key: " + key, stringSerializer.serialize(expected), encoder.encode(key, generation));
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package com.sya.code;
+
+import com.sya.config.ClusterCacheAutoConfiguration;
+import org.junit.Test;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/19 14:30
+ * @description：缓存变更通知二进制编码的往返和容错
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class CacheMessageCodecTest {
+
+	private final RedisSerializer<Object> valueSerializer = ClusterCacheAutoConfiguration.jackson2JsonRedisSerializer();
+
+	private final CacheMessageCodec codec = new CacheMessageCodec(valueSerializer);
+
+	@Test
+	public void roundTripsAllKeyTypes() {
+		List<Object> keys = Arrays.asList("key", "中文key", 42L, Long.MIN_VALUE, 7, UUID.randomUUID(), (short) 3,
+				(byte) 1, true, TimeUnit.SECONDS, new SimpleKey("a", 1L), new ArrayList<>(Arrays.asList("x", "y")));
+		List<CacheMessage> messages = new ArrayList<>();
+		for (Object key : keys) {
+			messages.add(new CacheMessage("users", key));
+		}
+		CacheMessageBatch batch = codec.decode(codec.encode("node-a", messages), null);
+
+		assertEquals("node-a", batch.getNodeId());
+		assertEquals(keys.size(), batch.getMessages().size());
+		for (int i = 0; i < keys.size(); i++) {
+			CacheMessage decoded = batch.getMessages().get(i);
+			assertEquals("users", decoded.getCacheName());
+			assertEquals(keys.get(i), decoded.getKey());
+			assertEquals(messages.get(i).getTimestamp(), decoded.getTimestamp());
+			assertNull(decoded.getGeneration());
+		}
+	}
+
+	@Test
+	public void roundTripsClearAndGeneration() {
+		CacheMessage clear = new CacheMessage("users", null);
+		clear.setGeneration(5L);
+		CacheMessage clearAll = new CacheMessage(null, null);
+		CacheMessageBatch batch = codec.decode(codec.encode("node-a", Arrays.asList(clear, clearAll)), null);
+
+		CacheMessage decodedClear = batch.getMessages().get(0);
+		assertEquals("users", decodedClear.getCacheName());
+		assertNull(decodedClear.getKey());
+		assertEquals(Long.valueOf(5L), decodedClear.getGeneration());
+		CacheMessage decodedClearAll = batch.getMessages().get(1);
+		assertNull(decodedClearAll.getCacheName());
+		assertNull(decodedClearAll.getKey());
+	}
+
+	@Test
+	public void skipsOwnMessages() {
+		byte[] body = codec.encode("node-a", Collections.singletonList(new CacheMessage("users", "key")));
+		assertNull(codec.decode(body, "node-a"));
+		assertEquals(1, codec.decode(body, "node-b").getMessages().size());
+	}
+
+	@Test
+	public void distinguishesLegacyJson() {
+		byte[] binary = codec.encode("node-a", Collections.singletonList(new CacheMessage("users", "key")));
+		byte[] json = valueSerializer.serialize(new CacheMessage("users", "key"));
+		assertTrue(CacheMessageCodec.isBinary(binary));
+		assertFalse(CacheMessageCodec.isBinary(json));
+		assertFalse(CacheMessageCodec.isBinary(new byte[0]));
+		assertFalse(CacheMessageCodec.isBinary(null));
+	}
+
+	@Test
+	public void undecodableKeyClearsItsCache() {
+		List<CacheMessage> messages = Arrays.asList(new CacheMessage("users", "a"),
+				new CacheMessage("orders", new ArrayList<>(Collections.singletonList("x"))), new CacheMessage("users", "b"));
+		byte[] body = codec.encode("node-a", messages);
+		CacheMessageCodec failing = new CacheMessageCodec(new RedisSerializer<Object>() {
+			@Override
+			public byte[] serialize(Object value) {
+				return value.toString().getBytes(StandardCharsets.UTF_8);
+			}
+
+			@Override
+			public Object deserialize(byte[] bytes) {
+				throw new SerializationException("unknown class");
+			}
+		});
+		List<CacheMessage> decoded = failing.decode(body, null).getMessages();
+
+		assertEquals(3, decoded.size());
+		assertEquals("a", decoded.get(0).getKey());
+		assertEquals("orders", decoded.get(1).getCacheName());
+		assertNull(decoded.get(1).getKey());
+		assertEquals("b", decoded.get(2).getKey());
+	}
+
+	@Test(expected = SerializationException.class)
+	public void rejectsTruncatedBody() {
+		byte[] body = codec.encode("node-a", Collections.singletonList(new CacheMessage("users", "key")));
+		codec.decode(Arrays.copyOf(body, body.length / 2), null);
+	}
+}
@@ -0,0 +1,97 @@
+package com.sya.code;
+
+import com.sya.config.ClusterCacheAutoConfiguration;
+import com.sya.config.ClusterCacheProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/19 14:50
+ * @description：变更通知的接收 二进制格式和旧版本节点发送的json格式都能清除1级缓存 忽略自己发送的通知
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class CacheMessageListenerTest {
+
+	private static final byte[] CHANNEL = "cache:redis:caffeine:topic".getBytes(StandardCharsets.UTF_8);
+
+	private RedisTemplate<String, Object> redisTemplate;
+
+	private ClusterCacheManager manager;
+
+	private ClusterCache cache;
+
+	private CacheMessageListener listener;
+
+	/** 与redisTemplate相同的值序列化器*/
+	private final RedisSerializer<Object> valueSerializer = ClusterCacheAutoConfiguration.jackson2JsonRedisSerializer();
+
+	private final CacheMessageCodec codec = new CacheMessageCodec(valueSerializer);
+
+	@Before
+	public void setUp() {
+		redisTemplate = new InMemoryRedisConnectionFactory().newRedisTemplate();
+		ClusterCacheProperties properties = new ClusterCacheProperties();
+		properties.setCachePrefix("test");
+		properties.getRedis().setPublishFlushInterval(0);
+		manager = new ClusterCacheManager(properties, redisTemplate);
+		cache = (ClusterCache) manager.getCache("users");
+		listener = new CacheMessageListener(redisTemplate, manager);
+		cache.put("k", "v");
+		assertNotNull(cache.getCaffeineCache().getIfPresent("k"));
+	}
+
+	@After
+	public void tearDown() {
+		manager.destroy();
+	}
+
+	@Test
+	public void clearsOnLegacyJsonMessage() {
+		// 旧版本节点使用缓存值的序列化器发送的CacheMessage 没有nodeId和timestamp
+		String json = "{\"@class\":\"com.sya.code.CacheMessage\",\"cacheName\":\"users\",\"key\":\"k\"}";
+		listener.onMessage(new DefaultMessage(CHANNEL, json.getBytes(StandardCharsets.UTF_8)), null);
+		assertNull(cache.getCaffeineCache().getIfPresent("k"));
+	}
+
+	@Test
+	public void clearsOnJsonMessageFromOtherNode() {
+		CacheMessage message = new CacheMessage("users", "k");
+		message.setNodeId("other-node");
+		listener.onMessage(new DefaultMessage(CHANNEL, valueSerializer.serialize(message)), null);
+		assertNull(cache.getCaffeineCache().getIfPresent("k"));
+	}
+
+	@Test
+	public void ignoresOwnJsonMessage() {
+		CacheMessage message = new CacheMessage("users", "k");
+		message.setNodeId(manager.getNodeId());
+		listener.onMessage(new DefaultMessage(CHANNEL, valueSerializer.serialize(message)), null);
+		assertNotNull(cache.getCaffeineCache().getIfPresent("k"));
+	}
+
+	@Test
+	public void clearsOnBinaryMessageFromOtherNode() {
+		byte[] body = codec.encode("other-node", Collections.singletonList(new CacheMessage("users", "k")));
+		listener.onMessage(new DefaultMessage(CHANNEL, body), null);
+		assertNull(cache.getCaffeineCache().getIfPresent("k"));
+	}
+
+	@Test
+	public void ignoresOwnBinaryMessage() {
+		byte[] body = codec.encode(manager.getNodeId(), Collections.singletonList(new CacheMessage("users", "k")));
+		listener.onMessage(new DefaultMessage(CHANNEL, body), null);
+		assertNotNull(cache.getCaffeineCache().getIfPresent("k"));
+	}
+}
@@ -0,0 +1,124 @@
+package com.sya.code;
+
+import com.sya.config.ClusterCacheProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/19 14:10
+ * @description：get(key, valueLoader)的单飞加载 同一个key并发未命中时只执行一次valueLoader
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class ClusterCacheSingleFlightTest {
+
+	private static final int THREADS = 16;
+
+	private ClusterCacheManager manager;
+
+	private ClusterCache cache;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		InMemoryRedisConnectionFactory connectionFactory = new InMemoryRedisConnectionFactory();
+		ClusterCacheProperties properties = new ClusterCacheProperties();
+		properties.setCachePrefix("test");
+		properties.getRedis().setPublishFlushInterval(0);
+		manager = new ClusterCacheManager(properties, connectionFactory.newRedisTemplate());
+		cache = (ClusterCache) manager.getCache("single-flight");
+		executor = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+		manager.destroy();
+	}
+
+	@Test
+	public void concurrentMissesLoadOnce() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		List<Future<String>> results = getConcurrently("k", () -> {
+			loads.incrementAndGet();
+			Thread.sleep(200);
+			return "v";
+		});
+		for (Future<String> result : results) {
+			assertEquals("v", result.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(1, loads.get());
+		assertEquals("v", cache.get("k", () -> "other"));
+	}
+
+	@Test
+	public void loaderFailureIsSharedAndNotCached() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		List<Future<String>> results = getConcurrently("k", () -> {
+			loads.incrementAndGet();
+			Thread.sleep(200);
+			throw new IllegalStateException("load failed");
+		});
+		for (Future<String> result : results) {
+			try {
+				result.get(5, TimeUnit.SECONDS);
+				fail("等待中的线程也应该收到加载失败");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof Cache.ValueRetrievalException);
+			}
+		}
+		assertEquals(1, loads.get());
+		// 失败不会留下正在加载的记录 下一次get重新加载
+		assertEquals("v", cache.get("k", () -> "v"));
+	}
+
+	@Test
+	public void differentKeysLoadIndependently() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch bothLoading = new CountDownLatch(2);
+		Callable<String> loader = () -> {
+			loads.incrementAndGet();
+			bothLoading.countDown();
+			// 两个key互不等待 否则这里会超时
+			assertTrue(bothLoading.await(5, TimeUnit.SECONDS));
+			return "v";
+		};
+		Future<String> first = executor.submit(() -> cache.get("a", loader));
+		Future<String> second = executor.submit(() -> cache.get("b", loader));
+		assertEquals("v", first.get(10, TimeUnit.SECONDS));
+		assertEquals("v", second.get(10, TimeUnit.SECONDS));
+		assertEquals(2, loads.get());
+	}
+
+	private List<Future<String>> getConcurrently(String key, Callable<String> loader) {
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<String>> results = new ArrayList<>();
+		for (int i = 0; i < THREADS; i++) {
+			results.add(executor.submit(() -> {
+				start.await();
+				return cache.get(key, loader);
+			}));
+		}
+		start.countDown();
+		return results;
+	}
+}
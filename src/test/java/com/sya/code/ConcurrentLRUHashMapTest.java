@@ -0,0 +1,120 @@
+package com.sya.code;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/19 15:45
+ * @description：ClusterCache实例注册表的LRU淘汰
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class ConcurrentLRUHashMapTest {
+
+	private final List<String> evicted = Collections.synchronizedList(new ArrayList<>());
+
+	@Test
+	public void evictsLeastRecentlyUsed() {
+		ConcurrentLRUHashMap<String, String> map = new ConcurrentLRUHashMap<>(3, (k, v) -> evicted.add(k));
+		map.putIfAbsent("a", "A");
+		map.putIfAbsent("b", "B");
+		map.putIfAbsent("c", "C");
+		assertEquals("A", map.get("a"));
+		map.putIfAbsent("d", "D");
+
+		assertEquals(Collections.singletonList("b"), evicted);
+		assertNull(map.peek("b"));
+		assertEquals(3, map.size());
+	}
+
+	@Test
+	public void peekDoesNotRecordAccess() {
+		ConcurrentLRUHashMap<String, String> map = new ConcurrentLRUHashMap<>(2, (k, v) -> evicted.add(k));
+		map.putIfAbsent("a", "A");
+		map.putIfAbsent("b", "B");
+		assertEquals("A", map.peek("a"));
+		map.putIfAbsent("c", "C");
+
+		assertEquals(Collections.singletonList("a"), evicted);
+	}
+
+	@Test
+	public void removeIsNotEviction() {
+		ConcurrentLRUHashMap<String, String> map = new ConcurrentLRUHashMap<>(2, (k, v) -> evicted.add(k));
+		map.putIfAbsent("a", "A");
+		map.putIfAbsent("b", "B");
+		assertEquals("A", map.remove("a"));
+		map.putIfAbsent("c", "C");
+
+		assertTrue(evicted.isEmpty());
+		assertNull(map.remove("a"));
+		assertEquals(2, map.size());
+	}
+
+	@Test
+	public void computeIfAbsentCreatesOnce() {
+		ConcurrentLRUHashMap<String, String> map = new ConcurrentLRUHashMap<>(2, null);
+		AtomicInteger creations = new AtomicInteger();
+		assertEquals("A1", map.computeIfAbsent("a", k -> "A" + creations.incrementAndGet()));
+		assertEquals("A1", map.computeIfAbsent("a", k -> "A" + creations.incrementAndGet()));
+		assertEquals(1, creations.get());
+		assertNull(map.computeIfAbsent("b", k -> null));
+		assertEquals(1, map.size());
+	}
+
+	@Test
+	public void concurrentInsertsKeepCapacity() throws Exception {
+		int capacity = 4;
+		int threads = 8;
+		ConcurrentLRUHashMap<Integer, Integer> map = new ConcurrentLRUHashMap<>(capacity, (k, v) -> evicted.add(String.valueOf(k)));
+		ConcurrentHashMap<Integer, Boolean> created = new ConcurrentHashMap<>();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<?>> results = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				int base = t * 1000;
+				results.add(executor.submit(() -> {
+					start.await();
+					for (int i = 0; i < 1000; i++) {
+						int key = base + i;
+						assertNotNull(map.computeIfAbsent(key, k -> {
+							created.put(k, true);
+							return k;
+						}));
+					}
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> result : results) {
+				result.get(30, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// 每个实例只创建一次 超出容量的实例各被淘汰一次
+		assertEquals(threads * 1000, created.size());
+		assertEquals(capacity, map.size());
+		assertEquals(threads * 1000 - capacity, evicted.size());
+		assertEquals(evicted.size(), new HashSet<>(evicted).size());
+	}
+}
@@ -0,0 +1,259 @@
+package com.sya.code;
+
+import com.sya.config.ClusterCacheAutoConfiguration;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/18 15:20
+ * @description：单元测试和基准测试使用的内存版redis连接工厂 只实现ClusterCache用到的字符串命令、pipeline和发布
+ *               发布的消息在调用线程上同步投递给注册的监听器 用于模拟其他节点收到变更通知
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class InMemoryRedisConnectionFactory implements RedisConnectionFactory {
+
+	private final ConcurrentMap<ByteBuffer, Entry> data = new ConcurrentHashMap<>();
+
+	private final List<MessageListener> listeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * 注册发布消息的监听器 相当于订阅了所有频道
+	 */
+	public void addListener(MessageListener listener) {
+		listeners.add(listener);
+	}
+
+	public int size() {
+		return data.size();
+	}
+
+	public void flushAll() {
+		data.clear();
+	}
+
+	/**
+	 * 与自动配置的cacheRedisTemplate相同的序列化方式
+	 */
+	public RedisTemplate<String, Object> newRedisTemplate() {
+		RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
+		redisTemplate.setConnectionFactory(this);
+		redisTemplate.setKeySerializer(new StringRedisSerializer());
+		redisTemplate.setValueSerializer(ClusterCacheAutoConfiguration.jackson2JsonRedisSerializer());
+		redisTemplate.setHashKeySerializer(new StringRedisSerializer());
+		redisTemplate.setHashValueSerializer(ClusterCacheAutoConfiguration.jackson2JsonRedisSerializer());
+		redisTemplate.afterPropertiesSet();
+		return redisTemplate;
+	}
+
+	@Override
+	public RedisConnection getConnection() {
+		return (RedisConnection) Proxy.newProxyInstance(RedisConnection.class.getClassLoader(),
+				new Class<?>[]{RedisConnection.class}, new ConnectionHandler());
+	}
+
+	@Override
+	public RedisClusterConnection getClusterConnection() {
+		throw new UnsupportedOperationException("cluster is not supported");
+	}
+
+	@Override
+	public boolean getConvertPipelineAndTxResults() {
+		return false;
+	}
+
+	@Override
+	public RedisSentinelConnection getSentinelConnection() {
+		throw new UnsupportedOperationException("sentinel is not supported");
+	}
+
+	@Override
+	public DataAccessException translateExceptionIfPossible(RuntimeException ex) {
+		return null;
+	}
+
+	private static final class Entry {
+
+		private final byte[] value;
+
+		/** 过期时间戳，0表示不过期*/
+		private final long expireAt;
+
+		private Entry(byte[] value, long expireAt) {
+			this.value = value;
+			this.expireAt = expireAt;
+		}
+
+		private boolean isExpired(long now) {
+			return expireAt > 0 && expireAt <= now;
+		}
+	}
+
+	/**
+	 * 按方法名分派命令 接口中的default方法同样会进入这里
+	 */
+	private final class ConnectionHandler implements InvocationHandler {
+
+		/** 非null时处于pipeline中 命令结果在closePipeline时返回*/
+		private List<Object> pipelineResults;
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			switch (method.getName()) {
+				case "isPipelined":
+					return pipelineResults != null;
+				case "openPipeline":
+					pipelineResults = new ArrayList<>();
+					return null;
+				case "closePipeline":
+					List<Object> results = pipelineResults == null ? new ArrayList<>() : pipelineResults;
+					pipelineResults = null;
+					return results;
+				case "isQueueing":
+				case "isClosed":
+					return false;
+				case "close":
+					return null;
+				case "getNativeConnection":
+					return data;
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				case "equals":
+					return proxy == args[0];
+				case "toString":
+					return "InMemoryRedisConnection";
+				default:
+					Object result = execute(method.getName(), args);
+					if (pipelineResults != null) {
+						pipelineResults.add(result);
+						return null;
+					}
+					return result;
+			}
+		}
+
+		private Object execute(String command, Object[] args) {
+			long now = System.currentTimeMillis();
+			switch (command) {
+				case "get":
+					return get((byte[]) args[0], now);
+				case "mGet":
+					List<byte[]> values = new ArrayList<>();
+					for (byte[] key : (byte[][]) args[0]) {
+						values.add(get(key, now));
+					}
+					return values;
+				case "set":
+					if (args.length == 2) {
+						data.put(ByteBuffer.wrap((byte[]) args[0]), new Entry((byte[]) args[1], 0));
+						return true;
+					}
+					return set((byte[]) args[0], (byte[]) args[1], (Expiration) args[2],
+							(RedisStringCommands.SetOption) args[3], now);
+				case "setEx":
+					data.put(ByteBuffer.wrap((byte[]) args[0]), new Entry((byte[]) args[2], now + (Long) args[1] * 1000));
+					return true;
+				case "pSetEx":
+					data.put(ByteBuffer.wrap((byte[]) args[0]), new Entry((byte[]) args[2], now + (Long) args[1]));
+					return true;
+				case "setNX":
+					return set((byte[]) args[0], (byte[]) args[1], Expiration.persistent(),
+							RedisStringCommands.SetOption.ifAbsent(), now);
+				case "del":
+				case "unlink":
+					long deleted = 0;
+					for (byte[] key : (byte[][]) args[0]) {
+						if (data.remove(ByteBuffer.wrap(key)) != null) {
+							deleted++;
+						}
+					}
+					return deleted;
+				case "exists":
+					return get((byte[]) args[0], now) != null;
+				case "pTtl":
+					return pTtl((byte[]) args[0], now);
+				case "incr":
+					return incr((byte[]) args[0]);
+				case "publish":
+					DefaultMessage message = new DefaultMessage((byte[]) args[0], (byte[]) args[1]);
+					for (MessageListener listener : listeners) {
+						listener.onMessage(message, null);
+					}
+					return (long) listeners.size();
+				default:
+					throw new UnsupportedOperationException(command);
+			}
+		}
+
+		private byte[] get(byte[] key, long now) {
+			ByteBuffer wrapped = ByteBuffer.wrap(key);
+			Entry entry = data.get(wrapped);
+			if (entry == null) {
+				return null;
+			}
+			if (entry.isExpired(now)) {
+				data.remove(wrapped, entry);
+				return null;
+			}
+			return entry.value;
+		}
+
+		private Boolean set(byte[] key, byte[] value, Expiration expiration, RedisStringCommands.SetOption option, long now) {
+			long expireAt = expiration == null || expiration.isPersistent() ? 0 : now + expiration.getExpirationTimeInMilliseconds();
+			ByteBuffer wrapped = ByteBuffer.wrap(key);
+			Entry entry = new Entry(value, expireAt);
+			switch (option) {
+				case SET_IF_ABSENT:
+					if (get(key, now) != null) {
+						return false;
+					}
+					return data.putIfAbsent(wrapped, entry) == null;
+				case SET_IF_PRESENT:
+					if (get(key, now) == null) {
+						return false;
+					}
+					return data.replace(wrapped, entry) != null;
+				default:
+					data.put(wrapped, entry);
+					return true;
+			}
+		}
+
+		private Long pTtl(byte[] key, long now) {
+			Entry entry = data.get(ByteBuffer.wrap(key));
+			if (entry == null || entry.isExpired(now)) {
+				return -2L;
+			}
+			return entry.expireAt == 0 ? -1L : entry.expireAt - now;
+		}
+
+		private Long incr(byte[] key) {
+			Entry updated = data.compute(ByteBuffer.wrap(key), (k, entry) -> {
+				long current = entry == null ? 0 : Long.parseLong(new String(entry.value, StandardCharsets.UTF_8));
+				return new Entry(String.valueOf(current + 1).getBytes(StandardCharsets.UTF_8), entry == null ? 0 : entry.expireAt);
+			});
+			return Long.parseLong(new String(updated.value, StandardCharsets.UTF_8));
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package com.sya.code;
+
+import com.sya.config.ClusterCacheProperties;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/19 16:00
+ * @description：redis熔断器的状态切换 CLOSED -> OPEN -> HALF_OPEN -> CLOSED/OPEN
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class RedisCircuitBreakerTest {
+
+	private static final long OPEN_DURATION = 100;
+
+	private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final List<RedisCircuitBreaker.State> transitions = new ArrayList<>();
+
+	private RedisCircuitBreaker breaker;
+
+	@Before
+	public void setUp() {
+		ClusterCacheProperties.Redis redis = new ClusterCacheProperties().getRedis();
+		redis.setCircuitBreakerWindowSize(10);
+		redis.setCircuitBreakerMinimumCalls(4);
+		redis.setCircuitBreakerFailureRateThreshold(50);
+		redis.setCircuitBreakerSlowCallDuration(100);
+		redis.setCircuitBreakerOpenDuration(OPEN_DURATION);
+		redis.setCircuitBreakerHalfOpenCalls(2);
+		breaker = new RedisCircuitBreaker(redis, transitions::add);
+	}
+
+	@Test
+	public void staysClosedBelowMinimumCalls() {
+		for (int i = 0; i < 3; i++) {
+			breaker.onError(FAST, new QueryTimeoutException("timeout"));
+		}
+		assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+		assertTrue(breaker.tryAcquirePermission());
+	}
+
+	@Test
+	public void opensAtFailureRateThreshold() {
+		breaker.onSuccess(FAST);
+		breaker.onSuccess(FAST);
+		breaker.onError(FAST, new QueryTimeoutException("timeout"));
+		assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+		breaker.onError(FAST, new QueryTimeoutException("timeout"));
+
+		assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+		assertFalse(breaker.tryAcquirePermission());
+		assertEquals(1L, breaker.getStats().get("notPermittedCount"));
+		assertEquals(Arrays.asList(RedisCircuitBreaker.State.OPEN), transitions);
+	}
+
+	@Test
+	public void countsSlowCallsAsFailures() {
+		long slow = TimeUnit.MILLISECONDS.toNanos(200);
+		for (int i = 0; i < 4; i++) {
+			breaker.onSuccess(slow);
+		}
+		assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+		assertEquals(4L, breaker.getStats().get("slowCallCount"));
+	}
+
+	@Test
+	public void ignoresNonRedisErrors() {
+		for (int i = 0; i < 10; i++) {
+			breaker.onError(FAST, new SerializationException("bad value"));
+		}
+		assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+		// 异步调用的异常包装在CompletionException中
+		for (int i = 0; i < 10; i++) {
+			breaker.onError(FAST, new CompletionException(new QueryTimeoutException("timeout")));
+		}
+		assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+	}
+
+	@Test
+	public void recoversAfterSuccessfulProbes() throws InterruptedException {
+		open();
+		Thread.sleep(OPEN_DURATION + 20);
+
+		assertTrue(breaker.tryAcquirePermission());
+		assertEquals(RedisCircuitBreaker.State.HALF_OPEN, breaker.getState());
+		assertTrue(breaker.tryAcquirePermission());
+		// 探测次数用完 等待探测结果
+		assertFalse(breaker.tryAcquirePermission());
+		breaker.onSuccess(FAST);
+		breaker.onSuccess(FAST);
+
+		assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+		assertEquals(Arrays.asList(RedisCircuitBreaker.State.OPEN, RedisCircuitBreaker.State.HALF_OPEN,
+				RedisCircuitBreaker.State.CLOSED), transitions);
+		// 恢复后重新统计 之前的失败不再计入
+		breaker.onError(FAST, new QueryTimeoutException("timeout"));
+		assertEquals(RedisCircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	@Test
+	public void reopensOnFailedProbe() throws InterruptedException {
+		open();
+		Thread.sleep(OPEN_DURATION + 20);
+
+		assertTrue(breaker.tryAcquirePermission());
+		breaker.onSuccess(FAST);
+		breaker.onError(FAST, new QueryTimeoutException("timeout"));
+
+		assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+		assertFalse(breaker.tryAcquirePermission());
+	}
+
+	@Test
+	public void reopensWhenProbesNeverComplete() throws InterruptedException {
+		open();
+		Thread.sleep(OPEN_DURATION + 20);
+		assertTrue(breaker.tryAcquirePermission());
+		assertTrue(breaker.tryAcquirePermission());
+		Thread.sleep(OPEN_DURATION + 20);
+
+		assertFalse(breaker.tryAcquirePermission());
+		assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+	}
+
+	private void open() {
+		for (int i = 0; i < 4; i++) {
+			breaker.onError(FAST, new QueryTimeoutException("timeout"));
+		}
+		assertEquals(RedisCircuitBreaker.State.OPEN, breaker.getState());
+	}
+}
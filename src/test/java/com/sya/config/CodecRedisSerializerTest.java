@@ -0,0 +1,104 @@
+package com.sya.config;
+
+import org.junit.Test;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author     ：shishuai
+ * @date       ：Created in 2026/10/19 15:10
+ * @description：缓存值序列化的往返、旧版本jackson格式的兼容、编码切换期间的混合读取和LZ4压缩
+ * @modified By：
+ * @version: 1.0.0$
+ */
+public class CodecRedisSerializerTest {
+
+    private static final byte MAGIC = (byte) 0xC5;
+
+    private final Jackson2JsonRedisSerializer<Object> legacySerializer = ClusterCacheAutoConfiguration.jackson2JsonRedisSerializer();
+
+    private final ValueCodec jackson = new JacksonValueCodec(ClusterCacheAutoConfiguration.cacheObjectMapper());
+
+    private final ValueCodec kryo = new KryoValueCodec(Collections.emptyList());
+
+    @Test
+    public void jacksonWithoutCompressionKeepsLegacyFormat() {
+        CodecRedisSerializer serializer = new CodecRedisSerializer(jackson, Collections.emptyList(), jackson, 0);
+        Map<String, Object> value = sampleValue();
+        byte[] bytes = serializer.serialize(value);
+        assertArrayEquals(legacySerializer.serialize(value), bytes);
+        assertEquals(value, serializer.deserialize(bytes));
+    }
+
+    @Test
+    public void readsLegacyJacksonValues() {
+        Map<String, Object> value = sampleValue();
+        byte[] legacy = legacySerializer.serialize(value);
+        assertEquals(value, new CodecRedisSerializer(jackson, Collections.emptyList(), jackson, 0).deserialize(legacy));
+        assertEquals(value, new CodecRedisSerializer(kryo, Collections.emptyList(), jackson, 0).deserialize(legacy));
+    }
+
+    @Test
+    public void readsBothCodecsDuringMigration() {
+        CodecRedisSerializer kryoWriter = new CodecRedisSerializer(kryo, Collections.emptyList(), jackson, 0);
+        CodecRedisSerializer jacksonWriter = new CodecRedisSerializer(jackson, Collections.singletonList(kryo), jackson, 0);
+        Map<String, Object> value = sampleValue();
+        byte[] kryoBytes = kryoWriter.serialize(value);
+        assertEquals(MAGIC, kryoBytes[0]);
+        assertEquals(ValueCodec.KRYO, kryoBytes[1]);
+        assertEquals(value, kryoWriter.deserialize(kryoBytes));
+        assertEquals(value, jacksonWriter.deserialize(kryoBytes));
+        assertEquals(value, kryoWriter.deserialize(jacksonWriter.serialize(value)));
+    }
+
+    @Test
+    public void compressesAboveThreshold() {
+        CodecRedisSerializer serializer = new CodecRedisSerializer(jackson, Collections.emptyList(), jackson, 64);
+        String value = String.join("", Collections.nCopies(200, "cluster-cache "));
+        byte[] bytes = serializer.serialize(value);
+        assertEquals(MAGIC, bytes[0]);
+        assertTrue((bytes[1] & 0x10) != 0);
+        assertTrue(bytes.length < legacySerializer.serialize(value).length);
+        assertEquals(value, serializer.deserialize(bytes));
+        // 没有开启压缩的节点也能读取
+        assertEquals(value, new CodecRedisSerializer(jackson, Collections.emptyList(), jackson, 0).deserialize(bytes));
+    }
+
+    @Test
+    public void keepsSmallValuesUncompressed() {
+        CodecRedisSerializer serializer = new CodecRedisSerializer(jackson, Collections.emptyList(), jackson, 64);
+        assertArrayEquals(legacySerializer.serialize("short"), serializer.serialize("short"));
+    }
+
+    @Test
+    public void handlesNull() {
+        CodecRedisSerializer serializer = new CodecRedisSerializer(jackson, Collections.emptyList(), jackson, 0);
+        assertEquals(0, serializer.serialize(null).length);
+        assertNull(serializer.deserialize(new byte[0]));
+        assertNull(serializer.deserialize(null));
+    }
+
+    @Test(expected = SerializationException.class)
+    public void rejectsUnknownCodec() {
+        new CodecRedisSerializer(jackson, Collections.emptyList(), jackson, 0).deserialize(new byte[]{MAGIC, 0x0F, '1'});
+    }
+
+    private static Map<String, Object> sampleValue() {
+        Map<String, Object> value = new HashMap<>();
+        value.put("id", 42);
+        value.put("name", "中文名称");
+        value.put("tags", new ArrayList<>(Arrays.asList("a", "b")));
+        return value;
+    }
+}